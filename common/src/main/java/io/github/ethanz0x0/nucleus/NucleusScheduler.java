@@ -0,0 +1,449 @@
+package io.github.ethanz0x0.nucleus;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+import static io.github.ethanz0x0.nucleus.Checks.checkState;
+
+/**
+ * The scheduler runtime shared by all nucleus components, such as the sweeps of expirable
+ * maps, the removal notifications and the loads of loading maps, and the workers of the
+ * password verification service.
+ * <p>
+ * The runtime is started lazily by the first component which needs it, and runs on daemon
+ * threads, so it never keeps the JVM alive. Its pool size and backend can be configured
+ * before it starts. Applications which are reloaded without restarting the JVM, such as
+ * plugins, should call {@link #shutdown()} when they are disabled. The periodic tasks of
+ * the components which are still reachable, such as the sweeps of existing maps, pause
+ * during the shutdown and resume when the runtime is started again.
+ * <p>
+ * Usage example:
+ * <pre>{@code
+ * NucleusScheduler.setPoolSize(2);
+ * NucleusScheduler.setVirtualThreads(true);
+ * ...
+ * NucleusScheduler.shutdown();
+ * }</pre>
+ */
+public final class NucleusScheduler {
+
+    private static final Object lock = new Object();
+
+    private static int poolSize = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+
+    private static boolean virtualThreads;
+
+    private static volatile ScheduledThreadPoolExecutor scheduler;
+
+    private static volatile ExecutorService executor;
+
+    /**
+     * The periodic tasks of live targets, scheduled again when the runtime restarts.
+     * Guarded by the lock.
+     */
+    private static final Set<PeriodicTask<?>> periodicTasks = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private static final Executor SHARED_EXECUTOR = task -> {
+        checkNotNull(task, "task cannot be null");
+        for (;;) {
+            ExecutorService executor = NucleusScheduler.executor;
+            if (executor == null) {
+                synchronized (lock) {
+                    startScheduler();
+                    executor = NucleusScheduler.executor;
+                }
+            }
+            try {
+                executor.execute(task);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Submitted to the next runtime if this one was shut down meanwhile
+                if (!executor.isShutdown()) {
+                    throw e;
+                }
+            }
+        }
+    };
+
+    /**
+     * Sets the number of threads of the scheduler, defaults to a quarter of the available
+     * processors. The scheduled tasks of nucleus are short, so a small pool is enough.
+     *
+     * @param poolSize
+     *        The number of threads
+     * @throws IllegalStateException
+     *         If the runtime has already started
+     */
+    public static void setPoolSize(int poolSize) {
+        checkArgument(poolSize > 0, "pool size must be larger than 0");
+
+        synchronized (lock) {
+            checkState(scheduler == null, "scheduler has already started");
+            NucleusScheduler.poolSize = poolSize;
+        }
+    }
+
+    /**
+     * Sets whether the tasks submitted to {@link #executor()} run on virtual threads. This
+     * is ignored on JDKs without virtual threads, where they run on a cached pool of daemon
+     * threads.
+     *
+     * @param virtualThreads
+     *        True to use virtual threads when they are available
+     * @throws IllegalStateException
+     *         If the runtime has already started
+     */
+    public static void setVirtualThreads(boolean virtualThreads) {
+        synchronized (lock) {
+            checkState(scheduler == null, "scheduler has already started");
+            NucleusScheduler.virtualThreads = virtualThreads;
+        }
+    }
+
+    /**
+     * Returns the shared scheduler, starting the runtime if needed. Its threads are daemon
+     * threads, and cancelled tasks are removed from its queue immediately.
+     *
+     * @return
+     *         The shared scheduler
+     */
+    public static ScheduledExecutorService scheduler() {
+        return startScheduler();
+    }
+
+    /**
+     * Returns the shared executor of asynchronous tasks. Tasks run on virtual threads if
+     * they are enabled and available, otherwise on a cached pool of daemon threads, never
+     * on the scheduler threads, so they may block.
+     * <p>
+     * The returned executor stays valid across shutdowns: each task is submitted to the
+     * current runtime, which is started if needed.
+     *
+     * @return
+     *         The shared executor
+     */
+    public static Executor executor() {
+        return SHARED_EXECUTOR;
+    }
+
+    /**
+     * Returns a factory of daemon threads for the dedicated workers of a component. The
+     * threads do not inherit the context class loader of their creator, so they never pin
+     * the class loader of a reloaded application.
+     *
+     * @param prefix
+     *        The prefix of the thread names, followed by the number of the thread
+     * @return
+     *         The thread factory
+     */
+    public static ThreadFactory threadFactory(String prefix) {
+        return new DaemonThreadFactory(checkNotNull(prefix, "prefix cannot be null"));
+    }
+
+    /**
+     * Runs an action on a target periodically with a fixed delay, starting the runtime if
+     * needed. The task only holds a weak reference to the target and is cancelled once the
+     * target is collected, so the action must not capture the target. Exceptions thrown by
+     * the action are passed to the uncaught exception handler of the thread, and do not
+     * cancel the task. Unlike the tasks submitted to {@link #scheduler()}, the task survives
+     * {@link #shutdown()}: it pauses, and is scheduled again when the runtime restarts.
+     *
+     * @param target
+     *        The target
+     * @param action
+     *        The action run on the target
+     * @param delay
+     *        The delay between the end of a run and the start of the next one
+     * @param unit
+     *        The unit of the delay
+     */
+    public static <T> void schedulePeriodically(T target, Consumer<? super T> action, long delay, TimeUnit unit) {
+        checkNotNull(target, "target cannot be null");
+        checkNotNull(action, "action cannot be null");
+        checkNotNull(unit, "unit cannot be null");
+        checkArgument(delay > 0, "delay must be larger than 0");
+
+        PeriodicTask<T> task = new PeriodicTask<>(target, action, delay, unit);
+        synchronized (lock) {
+            periodicTasks.add(task);
+            task.schedule(startScheduler());
+        }
+    }
+
+    /**
+     * Returns whether the runtime is running.
+     *
+     * @return
+     *         True if the runtime has started and has not been shut down
+     */
+    public static boolean isRunning() {
+        return scheduler != null;
+    }
+
+    /**
+     * Returns whether the tasks of {@link #executor()} run on virtual threads.
+     *
+     * @return
+     *         True if the runtime is running on virtual threads
+     */
+    public static boolean isUsingVirtualThreads() {
+        return NucleusScheduler.executor instanceof ThreadPerTaskExecutor;
+    }
+
+    /**
+     * Returns the number of tasks waiting in the queue of the scheduler, including the
+     * periodic tasks waiting for their next run.
+     *
+     * @return
+     *         The queue depth, or 0 if the runtime is not running
+     */
+    public static int getQueueDepth() {
+        ScheduledThreadPoolExecutor scheduler = NucleusScheduler.scheduler;
+        return scheduler == null ? 0 : scheduler.getQueue().size();
+    }
+
+    /**
+     * Returns the approximate number of scheduler threads running a task.
+     *
+     * @return
+     *         The number of active threads, or 0 if the runtime is not running
+     */
+    public static int getActiveCount() {
+        ScheduledThreadPoolExecutor scheduler = NucleusScheduler.scheduler;
+        return scheduler == null ? 0 : scheduler.getActiveCount();
+    }
+
+    /**
+     * Returns the approximate number of task runs completed by the scheduler since it started.
+     *
+     * @return
+     *         The number of completed runs, or 0 if the runtime is not running
+     */
+    public static long getCompletedTaskCount() {
+        ScheduledThreadPoolExecutor scheduler = NucleusScheduler.scheduler;
+        return scheduler == null ? 0L : scheduler.getCompletedTaskCount();
+    }
+
+    /**
+     * Starts the runtime if it is not running, and schedules again the periodic tasks
+     * paused by the last {@link #shutdown()}. The runtime is also started by the first
+     * use of {@link #scheduler()} or {@link #executor()}.
+     */
+    public static void start() {
+        startScheduler();
+    }
+
+    /**
+     * Stops the runtime. Waiting tasks are dropped, and running tasks are interrupted.
+     * <p>
+     * The periodic tasks of {@link #schedulePeriodically} pause until the runtime is started
+     * again, by {@link #start()} or by the next use of the runtime. Until then, the sweeps of
+     * existing maps and rate limiters do not run; their expired entries stay hidden from
+     * reads, and can still be removed by ticking them. The other tasks scheduled before the
+     * shutdown are not run again.
+     */
+    public static void shutdown() {
+        ScheduledThreadPoolExecutor previous;
+        ExecutorService previousExecutor;
+        synchronized (lock) {
+            previous = scheduler;
+            previousExecutor = executor;
+            scheduler = null;
+            executor = null;
+        }
+        if (previous != null) {
+            previous.shutdownNow();
+        }
+        if (previousExecutor != null) {
+            previousExecutor.shutdownNow();
+        }
+    }
+
+    private static ScheduledExecutorService startScheduler() {
+        ScheduledThreadPoolExecutor scheduler = NucleusScheduler.scheduler;
+        if (scheduler != null) {
+            return scheduler;
+        }
+        synchronized (lock) {
+            scheduler = NucleusScheduler.scheduler;
+            if (scheduler != null) {
+                return scheduler;
+            }
+            scheduler = new ScheduledThreadPoolExecutor(poolSize, new DaemonThreadFactory("nucleus-scheduler-"));
+            scheduler.setRemoveOnCancelPolicy(true);
+            scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            scheduler.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+
+            ThreadFactory factory = virtualThreads ? virtualThreadFactory() : null;
+            NucleusScheduler.executor = factory == null
+                    ? new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                            new DaemonThreadFactory("nucleus-worker-"))
+                    : new ThreadPerTaskExecutor(factory);
+            NucleusScheduler.scheduler = scheduler;
+            for (PeriodicTask<?> task : periodicTasks) {
+                task.schedule(scheduler);
+            }
+            return scheduler;
+        }
+    }
+
+    /**
+     * Returns a factory of virtual threads, or null if the JDK has no virtual threads. The
+     * factory is looked up reflectively, since this library targets Java 8.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Object virtual = builder.getMethod("name", String.class, long.class)
+                    .invoke(ofVirtual.invoke(null), "nucleus-virtual-", 0L);
+            return (ThreadFactory) builder.getMethod("factory").invoke(virtual);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private NucleusScheduler() {
+        throw new UnsupportedOperationException("This class cannot be instantiated");
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            // Avoids pinning the class loader of the thread which started the runtime
+            thread.setContextClassLoader(null);
+            return thread;
+        }
+    }
+
+    /**
+     * Runs each task on a new thread. Shutting it down only rejects the tasks submitted
+     * afterwards, running tasks are left to complete.
+     */
+    private static final class ThreadPerTaskExecutor extends AbstractExecutorService {
+
+        private final ThreadFactory factory;
+
+        private volatile boolean shutdown;
+
+        ThreadPerTaskExecutor(ThreadFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            checkNotNull(task, "task cannot be null");
+            if (shutdown) {
+                throw new RejectedExecutionException("executor has been shut down");
+            }
+            factory.newThread(task).start();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return shutdown;
+        }
+    }
+
+    /**
+     * A task run periodically on behalf of a target, which it only references weakly.
+     * Guarded by the lock, except for {@link #run()}.
+     */
+    private static final class PeriodicTask<T> implements Runnable {
+
+        private final WeakReference<T> target;
+
+        private final Consumer<? super T> action;
+
+        private final long delay;
+
+        private final TimeUnit unit;
+
+        private volatile ScheduledFuture<?> future;
+
+        PeriodicTask(T target, Consumer<? super T> action, long delay, TimeUnit unit) {
+            this.target = new WeakReference<>(target);
+            this.action = action;
+            this.delay = delay;
+            this.unit = unit;
+        }
+
+        void schedule(ScheduledExecutorService scheduler) {
+            future = scheduler.scheduleWithFixedDelay(this, delay, delay, unit);
+        }
+
+        @Override
+        public void run() {
+            T target = this.target.get();
+            if (target == null) {
+                synchronized (lock) {
+                    periodicTasks.remove(this);
+                    ScheduledFuture<?> future = this.future;
+                    if (future != null) {
+                        future.cancel(false);
+                    }
+                }
+                return;
+            }
+            try {
+                action.accept(target);
+            } catch (Throwable e) {
+                // A periodic task whose run throws is never run again by the scheduler
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,999 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import io.github.ethanz0x0.nucleus.NucleusScheduler;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+import static io.github.ethanz0x0.nucleus.Checks.checkState;
+
+/**
+ * Skeletal implementation of expirable map, backed by a map of expirable nodes.
+ * <p>
+ * Each node carries its own deadline and is linked into a hierarchical timer wheel,
+ * so scheduling and cancelling an expiration is O(1) and does not allocate a task.
+ * Expired entries are hidden from reads as soon as their deadline passes, and are
+ * removed in batches whenever the wheel is advanced.
+ * <p>
+ * Maps whose writes may be concurrent split their wheels and tag indexes into stripes picked
+ * by the hash of the key, each guarded by its own lock, so expiring puts of different keys
+ * rarely wait for each other.
+ * <p>
+ * Entries that are put without an expiration never expire. Since expired entries are
+ * removed in batches, {@link #size()} may include entries which have expired but have
+ * not been removed yet.
+ * <p>
+ * Maps built with {@link ExpirableMapBuilder#softValues()} or
+ * {@link ExpirableMapBuilder#weakValues()} let the garbage collector reclaim values before
+ * they expire. Collected entries are hidden from reads at once, and are removed in batches
+ * on the next write or sweep with {@link RemovalCause#COLLECTED}.
+ *
+ * @see ExpirableHashMap
+ * @see ExpirableConcurrentHashMap
+ * @param <K>
+ *        The type of keys maintained by this map
+ * @param <V>
+ *        The type of mapped values
+ */
+public abstract class AbstractExpirableMap<K, V> extends AbstractMap<K, V> implements ExpirableMap<K, V> {
+
+    /**
+     * The delay in milliseconds between two scheduled sweeps of expired entries.
+     */
+    static final long SWEEP_INTERVAL = 50L;
+
+    /**
+     * The number of stripes of the maps whose writes may be concurrent.
+     */
+    static final int CONCURRENT_STRIPES =
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+
+    final Map<K, ExpirableNode<K, V>> data;
+
+    private final Stripe<K, V>[] stripes;
+
+    private final RemovalNotifier<K, V> notifier;
+
+    private final StatsCounter stats;
+
+    /**
+     * The queue of the collected values, or null if this map holds strong values.
+     */
+    private final ReferenceQueue<V> references;
+
+    private final boolean softValues;
+
+    private transient Set<Entry<K, V>> entrySet;
+
+    AbstractExpirableMap(Map<K, ExpirableNode<K, V>> data, ExpirableMapBuilder<K, V> builder) {
+        this(data, builder, 1);
+    }
+
+    /**
+     * Creates a map whose wheels and tag indexes are split into the specified number of
+     * stripes, a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    AbstractExpirableMap(Map<K, ExpirableNode<K, V>> data, ExpirableMapBuilder<K, V> builder, int stripes) {
+        this.data = data;
+        this.stripes = (Stripe<K, V>[]) new Stripe<?, ?>[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe<>(i);
+        }
+        this.notifier = builder.removalListener == null ? null :
+                new RemovalNotifier<>((RemovalListener<K, V>) builder.removalListener, builder.getExecutor());
+        this.stats = builder.recordStats ? new StatsCounter() : null;
+        this.references = builder.softValues || builder.weakValues ? new ReferenceQueue<>() : null;
+        this.softValues = builder.softValues;
+    }
+
+    /**
+     * Acquires the lock guarding the timer wheel and the tag index of the specified stripe.
+     *
+     * @param stripe
+     *        The index of the stripe
+     */
+    abstract void lock(int stripe);
+
+    /**
+     * Releases the lock guarding the timer wheel and the tag index of the specified stripe.
+     *
+     * @param stripe
+     *        The index of the stripe
+     */
+    abstract void unlock(int stripe);
+
+    /**
+     * Validates a value before it is stored.
+     *
+     * @param value
+     *        The value to validate
+     */
+    void checkValue(V value) {
+        if (references != null) {
+            checkNotNull(value, "value cannot be null");
+        }
+    }
+
+    /**
+     * Schedules a periodic sweep of this map on the {@link NucleusScheduler}. The task only
+     * holds a weak reference to the map and cancels itself once the map is collected.
+     */
+    final void scheduleSweep() {
+        NucleusScheduler.schedulePeriodically(this, AbstractExpirableMap::tick, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key
+     *        Key with which the specified value is to be associated
+     * @param value
+     *        Value to be associated with the specified key
+     * @param expiration
+     *        The time in milliseconds after which the data will be automatically removed
+     * @return
+     *         The previous value associated with key, or null if there was no mapping for key.
+     *         (A null return can also indicate that the map previously associated null with key.)
+     */
+    @Override
+    public V put(K key, V value, long expiration) {
+        checkNotNull(key, "key cannot be null");
+        checkArgument(expiration > 0, "expiration must be larger than 0");
+        checkValue(value);
+
+        return doPut(key, value, TimeUnit.MILLISECONDS.toNanos(expiration), false, null);
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map, using the specified
+     * expiration policy.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     * <p>
+     * Reads of an entry that expires after access only push back its deadline, the entry is
+     * rescheduled lazily when the timer wheel reaches its previous deadline.
+     *
+     * @param key
+     *        Key with which the specified value is to be associated
+     * @param value
+     *        Value to be associated with the specified key
+     * @param expiration
+     *        The time in milliseconds after which the data will be automatically removed
+     * @param policy
+     *        The policy determining when the expiration starts counting
+     * @return
+     *         The previous value associated with key, or null if there was no mapping for key.
+     *         (A null return can also indicate that the map previously associated null with key.)
+     */
+    @Override
+    public V put(K key, V value, long expiration, ExpirationPolicy policy) {
+        checkNotNull(key, "key cannot be null");
+        checkArgument(expiration > 0, "expiration must be larger than 0");
+        checkNotNull(policy, "policy cannot be null");
+        checkValue(value);
+
+        return doPut(key, value, TimeUnit.MILLISECONDS.toNanos(expiration), policy == ExpirationPolicy.AFTER_ACCESS, null);
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map, using the specified
+     * expiration policy, and tags the mapping so it can be removed together with the other
+     * mappings of a tag by {@link #invalidateTag(Object)}.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced, along with its tags.
+     * <p>
+     * The tags are kept by the mapping and by an index of the mappings of each tag, which is
+     * cleaned up when the mapping is removed for any reason, including its expiration.
+     *
+     * @param key
+     *        Key with which the specified value is to be associated
+     * @param value
+     *        Value to be associated with the specified key
+     * @param expiration
+     *        The time in milliseconds after which the data will be automatically removed
+     * @param policy
+     *        The policy determining when the expiration starts counting
+     * @param tags
+     *        The tags of the mapping, such as the id of a player or the name of a world
+     * @return
+     *         The previous value associated with key, or null if there was no mapping for key.
+     *         (A null return can also indicate that the map previously associated null with key.)
+     */
+    @Override
+    public V put(K key, V value, long expiration, ExpirationPolicy policy, Object... tags) {
+        checkNotNull(key, "key cannot be null");
+        checkArgument(expiration > 0, "expiration must be larger than 0");
+        checkNotNull(policy, "policy cannot be null");
+        checkValue(value);
+
+        return doPut(key, value, TimeUnit.MILLISECONDS.toNanos(expiration), policy == ExpirationPolicy.AFTER_ACCESS,
+                copyTags(tags));
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map, the mapping never
+     * expires, and tags the mapping so it can be removed together with the other mappings
+     * of a tag by {@link #invalidateTag(Object)}.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced, along with its tags.
+     *
+     * @param key
+     *        Key with which the specified value is to be associated
+     * @param value
+     *        Value to be associated with the specified key
+     * @param tags
+     *        The tags of the mapping, such as the id of a player or the name of a world
+     * @return
+     *         The previous value associated with key, or null if there was no mapping for key.
+     *         (A null return can also indicate that the map previously associated null with key.)
+     */
+    @Override
+    public V putTagged(K key, V value, Object... tags) {
+        checkNotNull(key, "key cannot be null");
+        checkValue(value);
+
+        return doPut(key, value, 0L, false, copyTags(tags));
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map, the mapping
+     * never expires.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key
+     *        Key with which the specified value is to be associated
+     * @param value
+     *        Value to be associated with the specified key
+     * @return
+     *         The previous value associated with key, or null if there was no mapping for key.
+     *         (A null return can also indicate that the map previously associated null with key.)
+     */
+    @Override
+    public V put(K key, V value) {
+        checkNotNull(key, "key cannot be null");
+        checkValue(value);
+
+        return doPut(key, value, 0L, false, null);
+    }
+
+    private static Object[] copyTags(Object[] tags) {
+        checkNotNull(tags, "tags cannot be null");
+        for (Object tag : tags) {
+            checkNotNull(tag, "tag cannot be null");
+        }
+        return tags.length == 0 ? null : tags.clone();
+    }
+
+    private V doPut(K key, V value, long expiration, boolean accessExpiring, Object[] tags) {
+        long now = System.nanoTime();
+        ExpirableNode<K, V> node = newNode(key, value, expiration, accessExpiring, now);
+        node.tags = tags;
+        ExpirableNode<K, V> previous = data.put(key, node);
+        schedule(node, previous);
+        recordPut();
+        if (previous == null) {
+            return null;
+        }
+        boolean expired = previous.isExpired(now);
+        // Read before retiring, the value of a node may not be readable once it is retired
+        V previousValue = expired ? null : previous.getValue();
+        retire(previous, expired ? expiredCause(previous) : RemovalCause.REPLACED);
+        return previousValue;
+    }
+
+    @Override
+    public V get(Object key) {
+        ExpirableNode<K, V> node = getNode(key);
+        return node == null ? null : node.getValue();
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        ExpirableNode<K, V> node = getNode(key);
+        return node == null ? defaultValue : node.getValue();
+    }
+
+    /**
+     * Returns the live node mapped to the specified key, recording the read.
+     */
+    final ExpirableNode<K, V> getNode(Object key) {
+        ExpirableNode<K, V> node = data.get(key);
+        if (node == null) {
+            if (stats != null) {
+                stats.recordMiss();
+            }
+            return null;
+        }
+        long now = System.nanoTime();
+        if (node.isExpired(now)) {
+            onExpiredRead(node);
+            if (stats != null) {
+                stats.recordMiss();
+            }
+            return null;
+        }
+        node.touch(now);
+        onAccess(node);
+        if (stats != null) {
+            stats.recordHit();
+        }
+        return node;
+    }
+
+    /**
+     * Returns the live node mapped to the specified key, without recording the read.
+     */
+    final ExpirableNode<K, V> peekNode(Object key) {
+        ExpirableNode<K, V> node = data.get(key);
+        return node == null || node.isExpired(System.nanoTime()) ? null : node;
+    }
+
+    /**
+     * Replaces the specified node by a mapping of the specified value with a fresh
+     * expiration, if the node is still mapped.
+     *
+     * @return
+     *         True if the node was replaced
+     */
+    final boolean refresh(ExpirableNode<K, V> node, V value) {
+        checkValue(value);
+
+        ExpirableNode<K, V> replacement = newNode(node.key, value, node.expiration, node.accessExpiring, System.nanoTime());
+        replacement.tags = node.tags;
+        if (!data.replace(node.key, node, replacement)) {
+            return false;
+        }
+        schedule(replacement, node);
+        recordPut();
+        retire(node, RemovalCause.REPLACED);
+        return true;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        ExpirableNode<K, V> node = data.get(key);
+        if (node == null) {
+            return false;
+        }
+        if (node.isExpired(System.nanoTime())) {
+            onExpiredRead(node);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        checkNotNull(key, "key cannot be null");
+        checkValue(value);
+
+        long now = System.nanoTime();
+        ExpirableNode<K, V> node = newNode(key, value, 0L, false, now);
+        for (;;) {
+            ExpirableNode<K, V> current = data.putIfAbsent(key, node);
+            if (current == null) {
+                schedule(node, null);
+                recordPut();
+                return null;
+            }
+            if (!current.isExpired(now)) {
+                return current.getValue();
+            }
+            if (data.replace(key, current, node)) {
+                schedule(node, current);
+                recordPut();
+                retire(current, expiredCause(current));
+                return null;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException
+     *         If the specified key is null
+     */
+    @Override
+    public V remove(Object key) {
+        checkNotNull(key, "key cannot be null");
+        checkWritable();
+
+        ExpirableNode<K, V> node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+        boolean expired = node.isExpired(System.nanoTime());
+        V value = expired ? null : node.getValue();
+        retire(node, expired ? expiredCause(node) : RemovalCause.EXPLICIT);
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException
+     *         If the specified key is null
+     */
+    @Override
+    public boolean remove(Object key, Object value) {
+        checkNotNull(key, "key cannot be null");
+        checkWritable();
+
+        for (;;) {
+            ExpirableNode<K, V> node = data.get(key);
+            if (node == null || node.isExpired(System.nanoTime()) || !Objects.equals(node.getValue(), value)) {
+                return false;
+            }
+            if (data.remove(key, node)) {
+                retire(node, RemovalCause.EXPLICIT);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The replaced mapping keeps its expiration deadline.
+     */
+    @Override
+    public V replace(K key, V value) {
+        checkNotNull(key, "key cannot be null");
+        checkValue(value);
+
+        for (;;) {
+            ExpirableNode<K, V> node = data.get(key);
+            if (node == null || node.isExpired(System.nanoTime())) {
+                return null;
+            }
+            ExpirableNode<K, V> replacement = withValue(node, value);
+            if (data.replace(key, node, replacement)) {
+                schedule(replacement, node);
+                recordPut();
+                V previous = node.getValue();
+                retire(node, RemovalCause.REPLACED);
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The replaced mapping keeps its expiration deadline.
+     */
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        checkNotNull(key, "key cannot be null");
+        checkValue(newValue);
+
+        for (;;) {
+            ExpirableNode<K, V> node = data.get(key);
+            if (node == null || node.isExpired(System.nanoTime()) || !Objects.equals(node.getValue(), oldValue)) {
+                return false;
+            }
+            ExpirableNode<K, V> replacement = withValue(node, newValue);
+            if (data.replace(key, node, replacement)) {
+                schedule(replacement, node);
+                recordPut();
+                retire(node, RemovalCause.REPLACED);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+
+        long now = System.nanoTime();
+        // Copied since the backing map may not support removals while it is iterated
+        for (ExpirableNode<K, V> node : new ArrayList<>(data.values())) {
+            // Nodes replaced or removed concurrently are retired by their writer
+            if (data.remove(node.key, node)) {
+                retire(node, node.isExpired(now) ? expiredCause(node) : RemovalCause.EXPLICIT);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Mappings tagged concurrently with the invalidation may be kept.
+     */
+    @Override
+    public int invalidateTag(Object tag) {
+        checkNotNull(tag, "tag cannot be null");
+        checkWritable();
+
+        int removed = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            Set<ExpirableNode<K, V>> nodes;
+            lock(stripe.index);
+            try {
+                nodes = stripe.tagIndex == null ? null : stripe.tagIndex.remove(tag);
+            } finally {
+                unlock(stripe.index);
+            }
+            if (nodes == null) {
+                continue;
+            }
+
+            long now = System.nanoTime();
+            for (ExpirableNode<K, V> node : nodes) {
+                if (data.remove(node.key, node)) {
+                    if (node.isExpired(now)) {
+                        retire(node, expiredCause(node));
+                    } else {
+                        retire(node, RemovalCause.EXPLICIT);
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> entrySet = this.entrySet;
+        return entrySet == null ? (this.entrySet = new EntrySet()) : entrySet;
+    }
+
+    /**
+     * Returns whether this map records statistics.
+     *
+     * @return
+     *         True if statistics are recorded
+     * @see ExpirableMapBuilder#recordStats()
+     */
+    public boolean isRecordingStats() {
+        return stats != null;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this map. If this map does not record
+     * statistics, all the counters of the snapshot are 0.
+     *
+     * @return
+     *         The statistics of this map
+     */
+    public ExpirableMapStats stats() {
+        if (stats == null) {
+            return new ExpirableMapStats(0L, 0L, 0L, 0L, 0L, 0L, size());
+        }
+        return stats.snapshot(size());
+    }
+
+    /**
+     * Removes all the expired entries from this map.
+     * <p>
+     * Maps that are not swept by a scheduler should call this method periodically from
+     * the thread that owns them, for example once per server tick.
+     *
+     * @return
+     *         The number of removed entries
+     */
+    public int tick() {
+        return drainExpired(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most the specified number of expired entries from this map, in the
+     * order of their deadline within each stripe. The entries left over are removed by
+     * the next call.
+     *
+     * @param budget
+     *        The maximum number of entries to remove
+     * @return
+     *         The number of removed entries
+     * @throws IllegalArgumentException
+     *         If the budget is negative
+     */
+    public int drainExpired(int budget) {
+        checkArgument(budget >= 0, "budget cannot be negative");
+
+        drainReferences();
+        int removed = 0;
+        for (int i = 0; i < stripes.length && removed < budget; i++) {
+            lock(i);
+            try {
+                TimerWheel<K, V> wheel = stripes[i].wheel;
+                if (wheel != null) {
+                    removed += drainExpired(wheel, budget - removed);
+                }
+            } finally {
+                unlock(i);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes at most the specified number of expired entries of a wheel, under the lock of
+     * its stripe.
+     */
+    private int drainExpired(TimerWheel<K, V> wheel, int budget) {
+        int removed = 0;
+        long now = System.nanoTime();
+        wheel.advance(now);
+        while (removed < budget) {
+            ExpirableNode<K, V> node = wheel.pollExpired();
+            if (node == null) {
+                break;
+            }
+            if (!node.isExpired(now)) {
+                if (node.alive) {
+                    wheel.schedule(node);
+                }
+                continue;
+            }
+            if (data.remove(node.key, node)) {
+                node.alive = false;
+                onRemoved(node);
+                notifyRemoval(node, expiredCause(node));
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void recordPut() {
+        if (stats != null) {
+            stats.recordPut();
+        }
+    }
+
+    private void expire(ExpirableNode<K, V> node) {
+        if (data.remove(node.key, node)) {
+            retire(node, expiredCause(node));
+        }
+    }
+
+    /**
+     * Returns the cause of the removal of a node which reads as expired.
+     */
+    private static RemovalCause expiredCause(ExpirableNode<?, ?> node) {
+        return node.isCollected() ? RemovalCause.COLLECTED : RemovalCause.EXPIRED;
+    }
+
+    /**
+     * Removes the nodes whose value was collected, if this map holds soft or weak values.
+     */
+    private void drainReferences() {
+        if (references == null) {
+            return;
+        }
+        Reference<? extends V> reference;
+        while ((reference = references.poll()) != null) {
+            ExpirableNode<K, V> node = ReferenceNode.nodeOf(reference);
+            if (data.remove(node.key, node)) {
+                retire(node, RemovalCause.COLLECTED);
+            }
+        }
+    }
+
+    /**
+     * Creates a node, subclasses may return a subclass of node holding extra state.
+     */
+    ExpirableNode<K, V> newNode(K key, V value, long expiration, boolean accessExpiring, long now) {
+        if (references != null) {
+            return new ReferenceNode<>(key, value, expiration, accessExpiring, now, softValues, references);
+        }
+        return new ExpirableNode<>(key, value, expiration, accessExpiring, now);
+    }
+
+    /**
+     * Creates a node holding the specified value that keeps the expiration and deadline of the specified node.
+     */
+    final ExpirableNode<K, V> withValue(ExpirableNode<K, V> node, V value) {
+        ExpirableNode<K, V> replacement = newNode(node.key, value, node.expiration, node.accessExpiring, 0L);
+        replacement.deadline = node.deadline;
+        replacement.tags = node.tags;
+        return replacement;
+    }
+
+    /**
+     * Registers a node after it has been mapped in place of the specified node, or of no
+     * node. If the registration fails, the mapping is undone before the failure is thrown.
+     */
+    final void schedule(ExpirableNode<K, V> node, ExpirableNode<K, V> replaced) {
+        drainReferences();
+        if (!isTracked(node)) {
+            return;
+        }
+        int stripe = stripeOf(node);
+        lock(stripe);
+        try {
+            if (node.alive) {
+                onAdded(node);
+            }
+        } catch (RuntimeException | Error e) {
+            node.alive = false;
+            if (replaced == null) {
+                data.remove(node.key, node);
+            } else {
+                data.replace(node.key, node, replaced);
+            }
+            throw e;
+        } finally {
+            unlock(stripe);
+        }
+    }
+
+    /**
+     * Unregisters a node after it has been unmapped, and notifies the removal listener.
+     */
+    final void retire(ExpirableNode<K, V> node, RemovalCause cause) {
+        node.alive = false;
+        if (isTracked(node)) {
+            int stripe = stripeOf(node);
+            lock(stripe);
+            try {
+                onRemoved(node);
+            } finally {
+                unlock(stripe);
+            }
+        }
+        notifyRemoval(node, cause);
+    }
+
+    /**
+     * Records a removal in the statistics, and queues a removal notification if this map has
+     * a removal listener.
+     */
+    final void notifyRemoval(ExpirableNode<K, V> node, RemovalCause cause) {
+        if (stats != null) {
+            if (cause == RemovalCause.EXPIRED) {
+                stats.recordExpiration(System.nanoTime() - node.deadline);
+            } else if (cause == RemovalCause.EVICTED || cause == RemovalCause.COLLECTED) {
+                stats.recordEviction();
+            }
+        }
+        if (notifier != null) {
+            notifier.notify(node.key, node.getValue(), cause);
+        }
+    }
+
+    /**
+     * Returns whether the values of removed nodes are passed to a removal listener.
+     */
+    final boolean hasRemovalListener() {
+        return notifier != null;
+    }
+
+    /**
+     * Returns the index of the stripe of the specified node.
+     */
+    final int stripeOf(ExpirableNode<K, V> node) {
+        if (stripes.length == 1) {
+            return 0;
+        }
+        int hash = node.key.hashCode() * 0x9e3779b9;
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    /**
+     * Returns whether the specified node needs to be registered under the lock.
+     */
+    boolean isTracked(ExpirableNode<K, V> node) {
+        return node.isExpiring() || node.tags != null;
+    }
+
+    /**
+     * Called under the lock when a live node has been mapped.
+     */
+    void onAdded(ExpirableNode<K, V> node) {
+        Stripe<K, V> stripe = stripes[stripeOf(node)];
+        if (node.isExpiring()) {
+            if (stripe.wheel == null) {
+                stripe.wheel = new TimerWheel<>(System.nanoTime());
+            }
+            stripe.wheel.schedule(node);
+        }
+        if (node.tags != null) {
+            if (stripe.tagIndex == null) {
+                stripe.tagIndex = new HashMap<>();
+            }
+            for (Object tag : node.tags) {
+                stripe.tagIndex.computeIfAbsent(tag, t -> Collections.newSetFromMap(new IdentityHashMap<>())).add(node);
+            }
+        }
+    }
+
+    /**
+     * Called under the lock when a node has been unmapped. This may be called more than once
+     * for the same node.
+     */
+    void onRemoved(ExpirableNode<K, V> node) {
+        TimerWheel.deschedule(node);
+        Map<Object, Set<ExpirableNode<K, V>>> tagIndex = stripes[stripeOf(node)].tagIndex;
+        if (node.tags != null && tagIndex != null) {
+            for (Object tag : node.tags) {
+                Set<ExpirableNode<K, V>> nodes = tagIndex.get(tag);
+                if (nodes != null && nodes.remove(node) && nodes.isEmpty()) {
+                    tagIndex.remove(tag);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called without the lock when a read hits a live node.
+     */
+    void onAccess(ExpirableNode<K, V> node) {
+    }
+
+    /**
+     * Called without the lock before mappings are removed explicitly, throws if this map
+     * cannot be modified.
+     */
+    void checkWritable() {
+    }
+
+    /**
+     * Called without the lock when a read hits an expired node, removes the node by default.
+     */
+    void onExpiredRead(ExpirableNode<K, V> node) {
+        expire(node);
+    }
+
+    /**
+     * A timer wheel and a tag index, guarded by the lock of the stripe.
+     */
+    private static final class Stripe<K, V> {
+
+        final int index;
+
+        /**
+         * The wheel of the expiring nodes, created by the first expiring put.
+         */
+        TimerWheel<K, V> wheel;
+
+        /**
+         * The live nodes of each tag, created by the first tagged put.
+         */
+        Map<Object, Set<ExpirableNode<K, V>>> tagIndex;
+
+        Stripe(int index) {
+            this.index = index;
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            ExpirableNode<K, V> node = data.get(entry.getKey());
+            return node != null && !node.isExpired(System.nanoTime()) && Objects.equals(node.getValue(), entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            return entry.getKey() != null && AbstractExpirableMap.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public int size() {
+            return AbstractExpirableMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            AbstractExpirableMap.this.clear();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private final Iterator<ExpirableNode<K, V>> iterator = data.values().iterator();
+
+        /**
+         * Whether the backing map supports removals while it is iterated.
+         */
+        private final boolean concurrent = data instanceof ConcurrentMap;
+
+        private final long now = System.nanoTime();
+
+        private ExpirableNode<K, V> next;
+
+        private V nextValue;
+
+        private ExpirableNode<K, V> current;
+
+        private ExpirableNode<K, V> last;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && iterator.hasNext()) {
+                ExpirableNode<K, V> node = last = iterator.next();
+                if (!node.isExpired(now)) {
+                    // A node retired meanwhile may no longer hold its value
+                    V value = node.getValue();
+                    if (node.alive) {
+                        next = node;
+                        nextValue = value;
+                    }
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            next = null;
+            return new WriteThroughEntry(current.key, nextValue);
+        }
+
+        @Override
+        public void remove() {
+            checkState(current != null, "next() has not been called");
+            checkWritable();
+
+            if (!concurrent && last == current) {
+                // The backing iterator still points at the current node, no other thread maps the key
+                iterator.remove();
+                retire(current, RemovalCause.EXPLICIT);
+            } else if (data.remove(current.key, current)) {
+                // Only removes the node if it was not replaced since it was returned
+                retire(current, RemovalCause.EXPLICIT);
+            }
+            current = null;
+        }
+    }
+
+    private final class WriteThroughEntry extends SimpleEntry<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        WriteThroughEntry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            checkValue(value);
+
+            V previous = super.setValue(value);
+            AbstractExpirableMap.this.replace(getKey(), value);
+            return previous;
+        }
+    }
+}
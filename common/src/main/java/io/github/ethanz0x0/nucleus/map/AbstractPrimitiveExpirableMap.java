@@ -0,0 +1,276 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+
+/**
+ * Skeletal implementation of expirable maps with primitive keys.
+ * <p>
+ * Entries are stored by open addressing with linear probing over parallel arrays: the keys
+ * are stored by the subclass, while this class stores the values and the deadlines. A put
+ * or a get therefore never allocates, and an entry costs a few array slots instead of
+ * a boxed key, a map node and an expiration task.
+ * <p>
+ * These maps are not thread safe and do not use any scheduler. Expired entries are hidden
+ * from reads as soon as their deadline passes, and are removed when they are read, when the
+ * table grows, or when {@link #tick()} or {@link #drainExpired(int)} is called. Null values
+ * are not allowed.
+ *
+ * @see Long2ObjectExpirableMap
+ * @see Uuid2ObjectExpirableMap
+ * @param <V>
+ *        The type of mapped values
+ */
+public abstract class AbstractPrimitiveExpirableMap<V> {
+
+    static final long NEVER = Long.MAX_VALUE;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The origin of the deadlines, so they are positive and {@link #NEVER} sorts last.
+     */
+    private final long origin = System.nanoTime();
+
+    Object[] values;
+
+    long[] deadlines;
+
+    int mask;
+
+    int size;
+
+    private int threshold;
+
+    /**
+     * A lower bound of the deadlines in the table, sweeps are skipped until it passes.
+     */
+    private long nextExpiration = NEVER;
+
+    private int cursor;
+
+    AbstractPrimitiveExpirableMap(int expectedSize) {
+        checkArgument(expectedSize >= 0, "expected size cannot be negative");
+
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Returns the hash of the key stored in the specified slot.
+     */
+    abstract int hashAt(int slot);
+
+    /**
+     * Moves the key stored in a slot to another slot.
+     */
+    abstract void moveKey(int from, int to);
+
+    /**
+     * Allocates the key arrays for the specified capacity. This is called by the constructor,
+     * so subclasses must not initialize their key arrays in field initializers.
+     */
+    abstract void allocateKeys(int capacity);
+
+    /**
+     * Allocates a table of the specified capacity with {@link #allocate(int)}, then moves all
+     * the live entries of the previous table into it.
+     */
+    abstract void rehash(int capacity);
+
+    /**
+     * Returns the number of entries in this map, including the expired entries which have not
+     * been removed yet.
+     *
+     * @return
+     *         The number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether this map contains no entries.
+     *
+     * @return
+     *         True if this map contains no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all the entries from this map.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+        nextExpiration = NEVER;
+        cursor = 0;
+    }
+
+    /**
+     * Removes all the expired entries from this map.
+     * <p>
+     * This should be called periodically from the thread that owns the map, for example
+     * once per server tick. It returns immediately if no entry can have expired yet.
+     *
+     * @return
+     *         The number of removed entries
+     */
+    public int tick() {
+        return drainExpired(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most the specified number of expired entries from this map. The sweep resumes
+     * where the previous one stopped, so every entry is eventually reached.
+     *
+     * @param budget
+     *        The maximum number of entries to remove
+     * @return
+     *         The number of removed entries
+     * @throws IllegalArgumentException
+     *         If the budget is negative
+     */
+    public int drainExpired(int budget) {
+        checkArgument(budget >= 0, "budget cannot be negative");
+
+        long now = now();
+        if (size == 0 || now < nextExpiration) {
+            return 0;
+        }
+
+        int removed = 0;
+        int scanned = 0;
+        long earliest = NEVER;
+        while (scanned < values.length) {
+            int slot = cursor;
+            if (values[slot] != null) {
+                long deadline = deadlines[slot];
+                if (deadline <= now) {
+                    if (removed == budget) {
+                        break;
+                    }
+                    // Another entry may be shifted into the slot, so it is checked again
+                    removeAt(slot);
+                    removed++;
+                    continue;
+                }
+                earliest = Math.min(earliest, deadline);
+            }
+            cursor = (slot + 1) & mask;
+            scanned++;
+        }
+        if (scanned == values.length) {
+            nextExpiration = earliest;
+        }
+        return removed;
+    }
+
+    final long now() {
+        return System.nanoTime() - origin;
+    }
+
+    /**
+     * Returns the deadline of an expiration in milliseconds, saturated to {@link #NEVER}.
+     */
+    final long deadline(long expiration) {
+        long now = now();
+        long nanos = TimeUnit.MILLISECONDS.toNanos(expiration);
+        return nanos >= NEVER - now ? NEVER : now + nanos;
+    }
+
+    final boolean isExpired(int slot) {
+        return deadlines[slot] <= now();
+    }
+
+    @SuppressWarnings("unchecked")
+    final V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    /**
+     * Stores a value and its deadline in the specified slot, whose key is already set.
+     */
+    final void store(int slot, V value, long deadline) {
+        values[slot] = value;
+        deadlines[slot] = deadline;
+        if (deadline < nextExpiration) {
+            nextExpiration = deadline;
+        }
+    }
+
+    /**
+     * Grows the table after an entry has been added to a new slot, if needed.
+     */
+    final void afterInsert() {
+        if (++size > threshold) {
+            resize();
+        }
+    }
+
+    /**
+     * Removes the entry in the specified slot, shifting the following entries of the probe
+     * sequence back so no tombstone is needed.
+     */
+    final void removeAt(int slot) {
+        size--;
+        int hole = slot;
+        int i = slot;
+        for (;;) {
+            i = (i + 1) & mask;
+            if (values[i] == null) {
+                break;
+            }
+            int home = hashAt(i) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                moveKey(i, hole);
+                values[hole] = values[i];
+                deadlines[hole] = deadlines[i];
+                hole = i;
+            }
+        }
+        values[hole] = null;
+    }
+
+    private void resize() {
+        int previousCapacity = values.length;
+        if (previousCapacity >= MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        rehash(previousCapacity << 1);
+    }
+
+    /**
+     * Replaces the table by an empty one of the specified capacity.
+     */
+    final void allocate(int capacity) {
+        values = new Object[capacity];
+        deadlines = new long[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * 0.75f);
+        size = 0;
+        nextExpiration = NEVER;
+        cursor = 0;
+        allocateKeys(capacity);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long capacity = Math.max(DEFAULT_CAPACITY, (long) Math.ceil(expectedSize / 0.75));
+        return (int) Math.min(MAXIMUM_CAPACITY, Long.highestOneBit(capacity - 1) << 1);
+    }
+
+    static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
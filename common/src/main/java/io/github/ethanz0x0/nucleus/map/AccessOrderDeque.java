@@ -0,0 +1,68 @@
+package io.github.ethanz0x0.nucleus.map;
+
+/**
+ * A doubly-linked deque of expirable nodes in access order, from the least recently used
+ * to the most recently used.
+ * <p>
+ * The links are stored in the nodes themselves, so a node can belong to at most one deque
+ * at a time. This class is not thread safe, the owning map must guard it.
+ *
+ * @param <K>
+ *        The type of keys maintained by the map
+ * @param <V>
+ *        The type of mapped values
+ */
+final class AccessOrderDeque<K, V> {
+
+    private final ExpirableNode<K, V> sentinel = new ExpirableNode<>(null, null, 0L, 0L);
+
+    long weight;
+
+    AccessOrderDeque() {
+        sentinel.accessPrevious = sentinel;
+        sentinel.accessNext = sentinel;
+    }
+
+    boolean isEmpty() {
+        return sentinel.accessNext == sentinel;
+    }
+
+    /**
+     * Returns the least recently used node, or null if the deque is empty.
+     */
+    ExpirableNode<K, V> peekFirst() {
+        ExpirableNode<K, V> first = sentinel.accessNext;
+        return first == sentinel ? null : first;
+    }
+
+    /**
+     * Returns the most recently used node, or null if the deque is empty.
+     */
+    ExpirableNode<K, V> peekLast() {
+        ExpirableNode<K, V> last = sentinel.accessPrevious;
+        return last == sentinel ? null : last;
+    }
+
+    void addLast(ExpirableNode<K, V> node) {
+        node.accessPrevious = sentinel.accessPrevious;
+        node.accessNext = sentinel;
+        sentinel.accessPrevious.accessNext = node;
+        sentinel.accessPrevious = node;
+        weight += node.weight;
+    }
+
+    void moveToBack(ExpirableNode<K, V> node) {
+        if (node.accessNext != sentinel) {
+            remove(node);
+            addLast(node);
+        }
+    }
+
+    void remove(ExpirableNode<K, V> node) {
+        node.accessPrevious.accessNext = node.accessNext;
+        node.accessNext.accessPrevious = node.accessPrevious;
+        node.accessPrevious = null;
+        node.accessNext = null;
+        weight -= node.weight;
+    }
+}
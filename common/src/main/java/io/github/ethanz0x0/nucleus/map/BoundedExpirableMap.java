@@ -0,0 +1,300 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+import static io.github.ethanz0x0.nucleus.Checks.checkState;
+
+/**
+ * Size bounded version of expirable concurrent hash map, based on expirable map.
+ * <p>
+ * Besides expiring entries by time, this map keeps its total weight under a maximum by
+ * evicting entries with the W-TinyLFU policy. New entries are first placed in a small
+ * admission window ordered by recency. Entries leaving the window only enter the main
+ * space, a segmented LRU made of a probation and a protected segment, if their estimated
+ * frequency is higher than the frequency of the entry they would replace. Frequencies are
+ * tracked by a count-min sketch, so a burst of unique keys cannot flush the popular ones.
+ * Reads are recorded in a striped buffer and applied to the policy in batches, so they
+ * rarely contend on the lock.
+ * <p>
+ * This map does not allow null values.
+ *
+ * @see ExpirableMap
+ * @see AbstractExpirableMap
+ * @param <K>
+ *        The type of keys maintained by this map
+ * @param <V>
+ *        The type of mapped values
+ */
+public class BoundedExpirableMap<K, V> extends AbstractExpirableMap<K, V> implements ConcurrentMap<K, V> {
+
+    private static final int WINDOW = 1;
+    private static final int PROBATION = 2;
+    private static final int PROTECTED = 3;
+
+    private static final double WINDOW_PERCENTAGE = 0.01;
+
+    private static final double PROTECTED_PERCENTAGE = 0.8;
+
+    /**
+     * The frequency above which a rejected candidate is occasionally admitted anyway, so
+     * an attacker cannot pin a victim by inflating its frequency with hash collisions.
+     */
+    private static final int ADMIT_THRESHOLD = 6;
+
+    private static final long INITIAL_SKETCH_CAPACITY = 1024L;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final long maximum;
+
+    private final long windowMaximum;
+
+    private final long protectedMaximum;
+
+    private final Weigher<? super K, ? super V> weigher;
+
+    private final AccessOrderDeque<K, V> window = new AccessOrderDeque<>();
+
+    private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<>();
+
+    private final AccessOrderDeque<K, V> protectedSegment = new AccessOrderDeque<>();
+
+    private final FrequencySketch sketch;
+
+    private final ReadBuffer<K, V> readBuffer = new ReadBuffer<>();
+
+    private final Consumer<ExpirableNode<K, V>> drainer = this::reorder;
+
+    private long weightedSize;
+
+    /**
+     * Creates a bounded expirable map holding at most the specified number of entries.
+     *
+     * @param maximumSize
+     *        The maximum number of entries
+     */
+    public BoundedExpirableMap(long maximumSize) {
+        this(ExpirableMapBuilder.newBuilder().maximumSize(maximumSize));
+    }
+
+    /**
+     * Creates a bounded expirable map whose entries weigh at most the specified weight in total.
+     *
+     * @param maximumWeight
+     *        The maximum total weight of the entries
+     * @param weigher
+     *        The weigher calculating the weight of each entry
+     */
+    public BoundedExpirableMap(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+        this(ExpirableMapBuilder.newBuilder().maximumWeight(maximumWeight, weigher));
+    }
+
+    @SuppressWarnings("unchecked")
+    BoundedExpirableMap(ExpirableMapBuilder<? super K, ? super V> builder) {
+        super(new ConcurrentHashMap<>(), (ExpirableMapBuilder<K, V>) builder);
+
+        this.maximum = builder.maximum;
+        this.weigher = (Weigher<? super K, ? super V>) builder.weigher;
+        this.windowMaximum = Math.max(1L, (long) (maximum * WINDOW_PERCENTAGE));
+        this.protectedMaximum = (long) ((maximum - windowMaximum) * PROTECTED_PERCENTAGE);
+        this.sketch = new FrequencySketch(Math.min(maximum, INITIAL_SKETCH_CAPACITY));
+        if (!builder.tickDriven) {
+            scheduleSweep();
+        }
+    }
+
+    /**
+     * Returns the maximum total weight of the entries in this map.
+     *
+     * @return
+     *         The maximum weight, which is the maximum number of entries if no weigher is used
+     */
+    public long maximum() {
+        return maximum;
+    }
+
+    /**
+     * Returns the total weight of the entries in this map.
+     *
+     * @return
+     *         The weighted size, which is the number of entries if no weigher is used
+     */
+    public long weightedSize() {
+        lock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    void lock(int stripe) {
+        lock.lock();
+    }
+
+    @Override
+    void unlock(int stripe) {
+        lock.unlock();
+    }
+
+    @Override
+    void checkValue(V value) {
+        checkNotNull(value, "value cannot be null");
+    }
+
+    @Override
+    boolean isTracked(ExpirableNode<K, V> node) {
+        return true;
+    }
+
+    @Override
+    void onAdded(ExpirableNode<K, V> node) {
+        // Weighs first, a failure leaves nothing to undo but the mapping
+        if (weigher != null) {
+            int weight = weigher.weigh(node.key, node.getValue());
+            checkState(weight >= 0, "weight cannot be negative");
+            node.weight = weight;
+        }
+        readBuffer.drainTo(drainer);
+        super.onAdded(node);
+        sketch.ensureCapacity(Math.min(data.size(), maximum));
+        node.queue = WINDOW;
+        window.addLast(node);
+        weightedSize += node.weight;
+        sketch.increment(node.key);
+        evict();
+    }
+
+    @Override
+    void onRemoved(ExpirableNode<K, V> node) {
+        super.onRemoved(node);
+        if (node.queue == 0) {
+            return;
+        }
+        segment(node.queue).remove(node);
+        weightedSize -= node.weight;
+        node.queue = 0;
+    }
+
+    @Override
+    void onAccess(ExpirableNode<K, V> node) {
+        if (readBuffer.offer(node) == ReadBuffer.FULL && lock.tryLock()) {
+            try {
+                readBuffer.drainTo(drainer);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void reorder(ExpirableNode<K, V> node) {
+        if (node.queue == 0) {
+            // Removed since the read was recorded
+            return;
+        }
+        sketch.increment(node.key);
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToBack(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedSegment.addLast(node);
+                demote();
+                break;
+            case PROTECTED:
+                protectedSegment.moveToBack(node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Moves the least recently used entries of the protected segment to the probation
+     * segment until the protected segment fits.
+     */
+    private void demote() {
+        while (protectedSegment.weight > protectedMaximum) {
+            ExpirableNode<K, V> node = protectedSegment.peekFirst();
+            protectedSegment.remove(node);
+            node.queue = PROBATION;
+            probation.addLast(node);
+        }
+    }
+
+    /**
+     * Moves the overflow of the window to the probation segment, then evicts entries until
+     * the map fits. The most recent candidate of the probation segment competes against its
+     * least recently used entry, and the one with the lower frequency is evicted.
+     */
+    private void evict() {
+        while (window.weight > windowMaximum) {
+            ExpirableNode<K, V> node = window.peekFirst();
+            window.remove(node);
+            node.queue = PROBATION;
+            probation.addLast(node);
+        }
+
+        while (weightedSize > maximum) {
+            ExpirableNode<K, V> victim = probation.peekFirst();
+            if (victim == null) {
+                victim = protectedSegment.peekFirst();
+                if (victim == null) {
+                    victim = window.peekFirst();
+                }
+                if (victim == null) {
+                    break;
+                }
+                evictEntry(victim);
+                continue;
+            }
+
+            ExpirableNode<K, V> candidate = probation.peekLast();
+            if (candidate == victim || admit(candidate, victim)) {
+                evictEntry(victim);
+            } else {
+                evictEntry(candidate);
+            }
+        }
+    }
+
+    private boolean admit(ExpirableNode<K, V> candidate, ExpirableNode<K, V> victim) {
+        int candidateFrequency = sketch.frequency(candidate.key);
+        int victimFrequency = sketch.frequency(victim.key);
+        if (candidateFrequency > victimFrequency) {
+            return true;
+        }
+        if (candidateFrequency < ADMIT_THRESHOLD) {
+            return false;
+        }
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    private void evictEntry(ExpirableNode<K, V> node) {
+        boolean removed = data.remove(node.key, node);
+        node.alive = false;
+        onRemoved(node);
+        if (removed) {
+            notifyRemoval(node, RemovalCause.EVICTED);
+        }
+    }
+
+    private AccessOrderDeque<K, V> segment(int queue) {
+        switch (queue) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedSegment;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Converts objects to bytes and back, used to store the keys and values of a persistent map.
+ *
+ * @see PersistentExpirableMap
+ * @param <T>
+ *        The type of objects converted
+ */
+public interface Codec<T> {
+
+    /**
+     * Returns a codec of strings encoded as UTF-8.
+     *
+     * @return
+     *         The string codec
+     */
+    static Codec<String> string() {
+        return new Codec<String>() {
+
+            @Override
+            public byte[] encode(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String decode(byte[] data) {
+                return new String(data, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    /**
+     * Returns a codec of UUIDs encoded as their 16 bytes.
+     *
+     * @return
+     *         The UUID codec
+     */
+    static Codec<UUID> uuid() {
+        return new Codec<UUID>() {
+
+            @Override
+            public byte[] encode(UUID value) {
+                return ByteBuffer.allocate(16)
+                        .putLong(value.getMostSignificantBits())
+                        .putLong(value.getLeastSignificantBits())
+                        .array();
+            }
+
+            @Override
+            public UUID decode(byte[] data) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                return new UUID(buffer.getLong(), buffer.getLong());
+            }
+        };
+    }
+
+    /**
+     * Encodes an object.
+     *
+     * @param value
+     *        The object to encode, never null
+     * @return
+     *         The encoded bytes
+     */
+    byte[] encode(T value);
+
+    /**
+     * Decodes an object.
+     *
+     * @param data
+     *        The bytes returned by {@link #encode(Object)}
+     * @return
+     *         The decoded object
+     */
+    T decode(byte[] data);
+}
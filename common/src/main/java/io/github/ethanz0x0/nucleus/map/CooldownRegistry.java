@@ -0,0 +1,330 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * A registry of cooldowns of actions per key, such as the abilities and commands of players.
+ * <p>
+ * Actions are registered up front with their cooldown and receive small int ids. Each key
+ * owns an array of deadlines indexed by action id, so checking or acquiring a cooldown is
+ * a hash lookup of the key and a comparison against the clock: nothing is allocated, boxed
+ * or scheduled. Only the first acquisition of a key allocates its array.
+ * <p>
+ * By default the clock is read on each check; use {@link #tickDriven()} to create a registry
+ * comparing against a cached clock, which only advances when {@link #tick()} is called, for
+ * example once per server tick. Keys are kept until they are cleared, which should be done
+ * when a player logs out.
+ * <p>
+ * Usage example:
+ * <pre>{@code
+ * CooldownRegistry<UUID> cooldowns = new CooldownRegistry<>();
+ * int fireball = cooldowns.register("fireball", 5000);
+ * ...
+ * if (cooldowns.tryAcquire(player.getUniqueId(), fireball)) {
+ *     castFireball(player);
+ * }
+ * }</pre>
+ *
+ * @param <K>
+ *        The type of keys owning cooldowns
+ */
+public class CooldownRegistry<K> {
+
+    /**
+     * The deadline marking the slots of an array replaced by a larger one. Writers seeing it
+     * retry on the new array, so no update is lost while the array is copied.
+     */
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final ConcurrentHashMap<K, AtomicLongArray> deadlines = new ConcurrentHashMap<>();
+
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * The cooldowns in nanoseconds indexed by action id, replaced when an action is registered.
+     */
+    private volatile long[] cooldowns = new long[0];
+
+    /**
+     * The origin of the clock, so the deadlines of actions never acquired, which are 0, have passed.
+     */
+    private final long origin = System.nanoTime();
+
+    private final boolean tickDriven;
+
+    /**
+     * The cached clock of tick driven registries.
+     */
+    private volatile long now;
+
+    /**
+     * Creates a registry whose clock only advances when {@link #tick()} is called.
+     *
+     * @return
+     *         A tick driven registry
+     * @param <K>
+     *        The type of keys owning cooldowns
+     */
+    public static <K> CooldownRegistry<K> tickDriven() {
+        return new CooldownRegistry<>(true);
+    }
+
+    public CooldownRegistry() {
+        this(false);
+    }
+
+    private CooldownRegistry(boolean tickDriven) {
+        this.tickDriven = tickDriven;
+    }
+
+    /**
+     * Registers an action.
+     *
+     * @param name
+     *        The unique name of the action
+     * @param cooldown
+     *        The cooldown in milliseconds of the action
+     * @return
+     *         The id of the action
+     * @throws IllegalArgumentException
+     *         If an action with the same name is already registered
+     */
+    public synchronized int register(String name, long cooldown) {
+        checkNotNull(name, "name cannot be null");
+        checkArgument(cooldown >= 0, "cooldown cannot be negative");
+        checkArgument(!names.contains(name), "action " + name + " is already registered");
+
+        int id = names.size();
+        names.add(name);
+        long[] cooldowns = Arrays.copyOf(this.cooldowns, id + 1);
+        cooldowns[id] = TimeUnit.MILLISECONDS.toNanos(cooldown);
+        this.cooldowns = cooldowns;
+        return id;
+    }
+
+    /**
+     * Returns the id of a registered action.
+     *
+     * @param name
+     *        The name of the action
+     * @return
+     *         The id of the action, or -1 if no action has this name
+     */
+    public synchronized int getId(String name) {
+        return names.indexOf(name);
+    }
+
+    /**
+     * Returns the number of registered actions.
+     *
+     * @return
+     *         The number of actions
+     */
+    public int getActionCount() {
+        return cooldowns.length;
+    }
+
+    /**
+     * Returns whether the cooldown of an action has passed for the specified key.
+     *
+     * @param key
+     *        The key
+     * @param action
+     *        The id of the action
+     * @return
+     *         True if the action can be performed
+     */
+    public boolean isReady(K key, int action) {
+        return getRemaining(key, action) == 0L;
+    }
+
+    /**
+     * Returns the time left before an action can be performed again by the specified key.
+     *
+     * @param key
+     *        The key
+     * @param action
+     *        The id of the action
+     * @return
+     *         The remaining time in milliseconds, or 0 if the action is ready
+     */
+    public long getRemaining(K key, int action) {
+        checkAction(action);
+
+        AtomicLongArray deadlines = this.deadlines.get(key);
+        long deadline;
+        while (true) {
+            if (deadlines == null || action >= deadlines.length()) {
+                return 0L;
+            }
+            deadline = deadlines.get(action);
+            if (deadline != RETIRED) {
+                break;
+            }
+            deadlines = current(key);
+        }
+        long remaining = deadline - now();
+        return remaining <= 0L ? 0L : Math.max(1L, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+
+    /**
+     * Starts the registered cooldown of an action for the specified key, if it has passed.
+     *
+     * @param key
+     *        The key
+     * @param action
+     *        The id of the action
+     * @return
+     *         True if the cooldown has passed and was started again, false if the action
+     *         is still cooling down
+     */
+    public boolean tryAcquire(K key, int action) {
+        checkAction(action);
+
+        return acquire(key, action, cooldowns[action]);
+    }
+
+    /**
+     * Starts a cooldown of an action for the specified key, if the previous one has passed.
+     *
+     * @param key
+     *        The key
+     * @param action
+     *        The id of the action
+     * @param cooldown
+     *        The cooldown in milliseconds, overriding the registered one
+     * @return
+     *         True if the cooldown has passed and was started again, false if the action
+     *         is still cooling down
+     */
+    public boolean tryAcquire(K key, int action, long cooldown) {
+        checkAction(action);
+        checkArgument(cooldown >= 0, "cooldown cannot be negative");
+
+        return acquire(key, action, TimeUnit.MILLISECONDS.toNanos(cooldown));
+    }
+
+    /**
+     * Resets the cooldown of an action for the specified key, so it is ready again.
+     *
+     * @param key
+     *        The key
+     * @param action
+     *        The id of the action
+     */
+    public void reset(K key, int action) {
+        checkAction(action);
+
+        AtomicLongArray deadlines = this.deadlines.get(key);
+        while (deadlines != null && action < deadlines.length()) {
+            long deadline = deadlines.get(action);
+            if (deadline != RETIRED) {
+                if (deadlines.compareAndSet(action, deadline, 0L)) {
+                    return;
+                }
+            } else {
+                deadlines = current(key);
+            }
+        }
+    }
+
+    /**
+     * Removes all the cooldowns of the specified key, for example when a player logs out.
+     *
+     * @param key
+     *        The key
+     */
+    public void clear(K key) {
+        deadlines.remove(key);
+    }
+
+    /**
+     * Removes all the cooldowns of all keys.
+     */
+    public void clear() {
+        deadlines.clear();
+    }
+
+    /**
+     * Advances the cached clock of this registry to the current time. Registries that are
+     * not tick driven read the clock on each check, and do not need to be ticked.
+     */
+    public void tick() {
+        now = System.nanoTime() - origin;
+    }
+
+    private long now() {
+        return tickDriven ? now : System.nanoTime() - origin;
+    }
+
+    private boolean acquire(K key, int action, long cooldown) {
+        checkNotNull(key, "key cannot be null");
+
+        AtomicLongArray deadlines = this.deadlines.get(key);
+        if (deadlines == null || action >= deadlines.length()) {
+            deadlines = grow(key, action);
+        }
+        long now = now();
+        for (;;) {
+            long deadline = deadlines.get(action);
+            if (deadline == RETIRED) {
+                deadlines = grow(key, action);
+                continue;
+            }
+            if (deadline - now > 0L) {
+                return false;
+            }
+            if (deadlines.compareAndSet(action, deadline, now + cooldown)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the deadlines of the specified key, creating or enlarging them so they hold
+     * the specified action. Arrays are created large enough for all the registered actions,
+     * so they are only enlarged when actions are registered after the key was first seen.
+     * <p>
+     * The slots of the replaced array are retired while they are copied, so a concurrent
+     * update of the replaced array either is copied or fails and is retried on the new one.
+     */
+    private AtomicLongArray grow(K key, int action) {
+        return deadlines.compute(key, (k, deadlines) -> {
+            int length = Math.max(action + 1, cooldowns.length);
+            if (deadlines == null) {
+                return new AtomicLongArray(length);
+            }
+            if (action < deadlines.length()) {
+                return deadlines;
+            }
+            AtomicLongArray grown = new AtomicLongArray(length);
+            for (int i = 0; i < deadlines.length(); i++) {
+                grown.set(i, deadlines.getAndSet(i, RETIRED));
+            }
+            return grown;
+        });
+    }
+
+    /**
+     * Returns the current deadlines of the specified key, waiting for the array being
+     * enlarged under the lock of the key to be replaced.
+     */
+    private AtomicLongArray current(K key) {
+        return deadlines.computeIfPresent(key, (k, deadlines) -> deadlines);
+    }
+
+    private void checkAction(int action) {
+        // The message is only built on failure, so checks stay allocation free
+        if (action < 0 || action >= cooldowns.length) {
+            throw new IllegalArgumentException("unknown action id " + action);
+        }
+    }
+}
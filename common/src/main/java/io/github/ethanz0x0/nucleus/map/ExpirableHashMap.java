@@ -1,92 +1,58 @@
 package io.github.ethanz0x0.nucleus.map;
 
 import java.util.HashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-
-import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
-import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
 
 /**
  * Expirable version of hash map, based on expirable map.
+ * <p>
+ * This map is not thread safe, and no other thread ever touches it: there is no scheduled
+ * sweep. Expired entries are hidden from reads as soon as their deadline passes, and are
+ * removed a few at a time by each expiring put, or when {@link #tick()} or
+ * {@link #drainExpired(int)} is called, for example once per server tick. Reads never
+ * remove entries, so they are safe while iterating over the map.
  *
  * @see ExpirableMap
+ * @see AbstractExpirableMap
  * @param <K>
  *        The type of keys maintained by this map
  * @param <V>
  *        The type of mapped values
  */
-public class ExpirableHashMap<K, V> extends HashMap<K, V> implements ExpirableMap<K, V> {
-
-    private static final ScheduledExecutorService scheduler =
-            Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
-
-    private final HashMap<K, ScheduledFuture<?>> toRemove = new HashMap<>();
+public class ExpirableHashMap<K, V> extends AbstractExpirableMap<K, V> {
 
     /**
-     * Associates the specified value with the specified key in this map.
-     * If the map previously contained a mapping for the key, the old
-     * value is replaced.
-     *
-     * @param key
-     *        Key with which the specified value is to be associated
-     * @param value
-     *        Value to be associated with the specified key
-     * @param expiration
-     *        The time in milliseconds after which the data will be automatically removed
-     * @return
-     *         The previous value associated with key, or null if there was no mapping for key.
-     *         (A null return can also indicate that the map previously associated null with key.)
+     * The maximum number of expired entries removed by an expiring put.
      */
-    @Override
-    public V put(K key, V value, long expiration) {
-        checkNotNull(key, "key cannot be null");
-        checkArgument(expiration > 0, "expiration must be larger than 0");
+    private static final int PUT_DRAIN_BUDGET = 8;
 
-        if (toRemove.containsKey(key)) {
-            toRemove.remove(key).cancel(true);
-        }
-        V put = super.put(key, value);
-        ScheduledFuture<?> future = scheduler.schedule(() -> {
-            super.remove(key);
-            toRemove.remove(key);
-        }, expiration, TimeUnit.MILLISECONDS);
-        toRemove.put(key, future);
-        return put;
+    public ExpirableHashMap() {
+        this(ExpirableMapBuilder.newBuilder());
     }
 
-    /**
-     * {@inheritDoc}
-     *
-     * @throws NullPointerException
-     *         If the specified key is null
-     */
-    @Override
-    public V remove(Object key) {
-        checkNotNull(key, "key cannot be null");
+    @SuppressWarnings("unchecked")
+    ExpirableHashMap(ExpirableMapBuilder<? super K, ? super V> builder) {
+        super(new HashMap<>(), (ExpirableMapBuilder<K, V>) builder);
+    }
 
-        V value = super.remove(key);
-        toRemove.remove(key);
-        return value;
+    @Override
+    void lock(int stripe) {
     }
 
-    /**
-     * {@inheritDoc}
-     *
-     * @throws NullPointerException
-     *         If the specified key is null
-     */
     @Override
-    public boolean remove(Object key, Object value) {
-        checkNotNull(key, "key cannot be null");
+    void unlock(int stripe) {
+    }
 
-        boolean success = super.remove(key, value);
-        if (success) {
-            toRemove.remove(key);
+    @Override
+    void onAdded(ExpirableNode<K, V> node) {
+        super.onAdded(node);
+        if (node.isExpiring()) {
+            // Amortizes the sweep over the puts, so maps which are never ticked stay bounded
+            drainExpired(PUT_DRAIN_BUDGET);
         }
-        return success;
     }
 
+    @Override
+    void onExpiredRead(ExpirableNode<K, V> node) {
+        // Removing the node would break the iterators over the map
+    }
 }
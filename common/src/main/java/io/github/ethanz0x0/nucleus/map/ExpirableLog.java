@@ -0,0 +1,254 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of puts and removes, written through a memory mapped file.
+ * <p>
+ * The file starts with a magic number and a version, followed by records made of their
+ * length, the CRC32 of their body and the body. The mapping grows by doubling, and the
+ * bytes after the last record are zeros, so a replay stops at the first record which is
+ * empty or fails its checksum, such as a record torn by a crash. A log being created has no
+ * magic number until it is sealed, so a crash while writing it leaves a file which is not
+ * mistaken for a complete log.
+ * <p>
+ * This class is not thread safe, the owning map guards it with its lock.
+ */
+final class ExpirableLog implements Closeable {
+
+    private static final int MAGIC = 0x4e55434c;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private static final byte PUT = 1;
+
+    private static final byte REMOVE = 2;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    private final CRC32 crc = new CRC32();
+
+    private final File file;
+
+    private MappedByteBuffer buffer;
+
+    private int records;
+
+    private ExpirableLog(File file, boolean truncate) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        try {
+            if (truncate) {
+                channel.truncate(0L);
+            }
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("log is too large: " + file);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, Math.max(INITIAL_CAPACITY, size));
+            if (size < HEADER_SIZE) {
+                buffer.putInt(truncate ? 0 : MAGIC).putInt(VERSION);
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("not an expirable map log: " + file);
+            } else {
+                buffer.position(HEADER_SIZE);
+            }
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the log stored in the specified file, creating it if needed, and replays its
+     * records into the specified visitor. Appended records follow the last valid record.
+     */
+    static ExpirableLog open(File file, Visitor visitor) throws IOException {
+        ExpirableLog log = new ExpirableLog(file, false);
+        try {
+            log.replay(visitor);
+        } catch (IOException | RuntimeException e) {
+            log.raf.close();
+            throw e;
+        }
+        return log;
+    }
+
+    /**
+     * Creates an empty log in the specified file, replacing its previous content. The log
+     * cannot be opened until it is sealed.
+     */
+    static ExpirableLog create(File file) throws IOException {
+        return new ExpirableLog(file, true);
+    }
+
+    /**
+     * Returns whether the specified file starts with the header of a sealed log.
+     */
+    static boolean isSealed(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.length() >= HEADER_SIZE && raf.readInt() == MAGIC && raf.readInt() == VERSION;
+        }
+    }
+
+    /**
+     * Returns the file storing this log.
+     */
+    File file() {
+        return file;
+    }
+
+    /**
+     * Returns the number of records in this log.
+     */
+    int records() {
+        return records;
+    }
+
+    void appendPut(long sequence, long deadline, long expiration, boolean accessExpiring,
+                   byte[] key, byte[] value) throws IOException {
+        int length = 1 + 8 + 8 + 8 + 1 + 4 + key.length + 4 + value.length;
+        int start = begin(length);
+        buffer.put(PUT)
+                .putLong(sequence)
+                .putLong(deadline)
+                .putLong(expiration)
+                .put((byte) (accessExpiring ? 1 : 0))
+                .putInt(key.length)
+                .put(key)
+                .putInt(value.length)
+                .put(value);
+        end(start, length);
+    }
+
+    void appendRemove(long sequence, byte[] key) throws IOException {
+        int length = 1 + 8 + 4 + key.length;
+        int start = begin(length);
+        buffer.put(REMOVE)
+                .putLong(sequence)
+                .putInt(key.length)
+                .put(key);
+        end(start, length);
+    }
+
+    /**
+     * Writes the mapped content to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Writes the records of a created log to the storage device, then its magic number, so
+     * the log can be opened.
+     */
+    void seal() {
+        buffer.force();
+        buffer.putInt(0, MAGIC);
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        raf.close();
+    }
+
+    private void replay(Visitor visitor) throws IOException {
+        int position = HEADER_SIZE;
+        while (position <= buffer.capacity() - RECORD_HEADER_SIZE) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.capacity() - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            ByteBuffer body = buffer.duplicate();
+            body.limit(position + RECORD_HEADER_SIZE + length).position(position + RECORD_HEADER_SIZE);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+
+            byte type = body.get();
+            long sequence = body.getLong();
+            if (type == PUT) {
+                long deadline = body.getLong();
+                long expiration = body.getLong();
+                boolean accessExpiring = body.get() != 0;
+                byte[] key = read(body);
+                byte[] value = read(body);
+                visitor.put(sequence, deadline, expiration, accessExpiring, key, value);
+            } else if (type == REMOVE) {
+                visitor.remove(sequence, read(body));
+            } else {
+                throw new IOException("unknown record type " + type + " in " + file);
+            }
+            position += RECORD_HEADER_SIZE + length;
+            records++;
+        }
+        buffer.position(position);
+    }
+
+    private static byte[] read(ByteBuffer body) {
+        byte[] bytes = new byte[body.getInt()];
+        body.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reserves space for a record and returns its start, the body is then written at the
+     * position of the buffer.
+     */
+    private int begin(int length) throws IOException {
+        int required = RECORD_HEADER_SIZE + length;
+        if (buffer.remaining() < required) {
+            long capacity = Math.max((long) buffer.capacity() << 1, (long) buffer.position() + required);
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IOException("log is full: " + file);
+            }
+            int position = buffer.position();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, capacity);
+            buffer.position(position);
+        }
+        int start = buffer.position();
+        buffer.position(start + RECORD_HEADER_SIZE);
+        return start;
+    }
+
+    private void end(int start, int length) {
+        ByteBuffer body = buffer.duplicate();
+        body.limit(start + RECORD_HEADER_SIZE + length).position(start + RECORD_HEADER_SIZE);
+        crc.reset();
+        crc.update(body);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        // The length is written last, so an interrupted record reads as the end of the log
+        buffer.putInt(start, length);
+        records++;
+    }
+
+    /**
+     * Receives the records of a log being replayed.
+     */
+    interface Visitor {
+
+        void put(long sequence, long deadline, long expiration, boolean accessExpiring, byte[] key, byte[] value);
+
+        void remove(long sequence, byte[] key);
+    }
+}
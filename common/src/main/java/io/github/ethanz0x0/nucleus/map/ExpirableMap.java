@@ -7,6 +7,7 @@ import java.util.Map;
  *
  * @see ExpirableHashMap
  * @see ExpirableConcurrentHashMap
+ * @see AbstractExpirableMap
  * @param <K>
  *        The type of keys maintained by this map
  * @param <V>
@@ -30,4 +31,113 @@ public interface ExpirableMap<K, V> extends Map<K, V> {
      *         (A null return can also indicate that the map previously associated null with key.)
      */
     V put(K key, V value, long expiration);
+
+    /**
+     * Associates the specified value with the specified key in this map, using the specified
+     * expiration policy.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     * <p>
+     * The default implementation supports {@link ExpirationPolicy#AFTER_WRITE} only, by
+     * calling {@link #put(Object, Object, long)}.
+     *
+     * @param key
+     *        Key with which the specified value is to be associated
+     * @param value
+     *        Value to be associated with the specified key
+     * @param expiration
+     *        The time in milliseconds after which the data will be automatically removed
+     * @param policy
+     *        The policy determining when the expiration starts counting
+     * @return
+     *         The previous value associated with key, or null if there was no mapping for key.
+     *         (A null return can also indicate that the map previously associated null with key.)
+     * @throws UnsupportedOperationException
+     *         If this map does not support the policy
+     */
+    default V put(K key, V value, long expiration, ExpirationPolicy policy) {
+        if (policy != ExpirationPolicy.AFTER_WRITE) {
+            throw new UnsupportedOperationException("expiration policy " + policy + " is not supported");
+        }
+        return put(key, value, expiration);
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map, using the specified
+     * expiration policy, and tags the mapping so it can be removed together with the other
+     * mappings of a tag by {@link #invalidateTag(Object)}.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced, along with its tags.
+     * <p>
+     * The default implementation supports untagged mappings only, by calling
+     * {@link #put(Object, Object, long, ExpirationPolicy)}.
+     *
+     * @param key
+     *        Key with which the specified value is to be associated
+     * @param value
+     *        Value to be associated with the specified key
+     * @param expiration
+     *        The time in milliseconds after which the data will be automatically removed
+     * @param policy
+     *        The policy determining when the expiration starts counting
+     * @param tags
+     *        The tags of the mapping, such as the id of a player or the name of a world
+     * @return
+     *         The previous value associated with key, or null if there was no mapping for key.
+     *         (A null return can also indicate that the map previously associated null with key.)
+     * @throws UnsupportedOperationException
+     *         If this map does not support tags
+     */
+    default V put(K key, V value, long expiration, ExpirationPolicy policy, Object... tags) {
+        if (tags.length > 0) {
+            throw new UnsupportedOperationException("tags are not supported");
+        }
+        return put(key, value, expiration, policy);
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map, the mapping never
+     * expires, and tags the mapping so it can be removed together with the other mappings
+     * of a tag by {@link #invalidateTag(Object)}.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced, along with its tags.
+     * <p>
+     * The default implementation supports untagged mappings only, by calling
+     * {@link #put(Object, Object)}.
+     *
+     * @param key
+     *        Key with which the specified value is to be associated
+     * @param value
+     *        Value to be associated with the specified key
+     * @param tags
+     *        The tags of the mapping, such as the id of a player or the name of a world
+     * @return
+     *         The previous value associated with key, or null if there was no mapping for key.
+     *         (A null return can also indicate that the map previously associated null with key.)
+     * @throws UnsupportedOperationException
+     *         If this map does not support tags
+     */
+    default V putTagged(K key, V value, Object... tags) {
+        if (tags.length > 0) {
+            throw new UnsupportedOperationException("tags are not supported");
+        }
+        return put(key, value);
+    }
+
+    /**
+     * Removes all the mappings tagged with the specified tag, in time proportional to their
+     * number rather than to the size of the map.
+     * <p>
+     * The default implementation throws an {@link UnsupportedOperationException}.
+     *
+     * @param tag
+     *        The tag
+     * @return
+     *         The number of removed mappings
+     * @throws UnsupportedOperationException
+     *         If this map does not support tags
+     */
+    default int invalidateTag(Object tag) {
+        throw new UnsupportedOperationException("tags are not supported");
+    }
 }
@@ -0,0 +1,302 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import io.github.ethanz0x0.nucleus.NucleusScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+import static io.github.ethanz0x0.nucleus.Checks.checkState;
+
+/**
+ * A builder of expirable maps with optional features.
+ * <p>
+ * Usage example:
+ * <pre>{@code
+ * ExpirableConcurrentHashMap<UUID, Session> sessions = ExpirableMapBuilder.newBuilder()
+ *         .removalListener((UUID id, Session session, RemovalCause cause) -> session.close())
+ *         .buildConcurrentHashMap();
+ * }</pre>
+ *
+ * @param <K>
+ *        The base type of keys of the maps built
+ * @param <V>
+ *        The base type of values of the maps built
+ */
+public final class ExpirableMapBuilder<K, V> {
+
+    /**
+     * Creates a builder with the default settings: expired entries of thread safe maps are
+     * removed by a shared scheduler, the size is unbounded, no listener is notified and no statistics are recorded.
+     *
+     * @return
+     *         A new builder
+     */
+    public static ExpirableMapBuilder<Object, Object> newBuilder() {
+        return new ExpirableMapBuilder<>();
+    }
+
+    boolean tickDriven;
+
+    boolean recordStats;
+
+    long maximum = -1L;
+
+    Weigher<? super K, ? super V> weigher;
+
+    RemovalListener<? super K, ? super V> removalListener;
+
+    Executor executor;
+
+    boolean softValues;
+
+    boolean weakValues;
+
+    private ExpirableMapBuilder() {
+    }
+
+    /**
+     * Disables the scheduled sweep of expired entries. Expired entries are then removed when
+     * they are read, or by {@link AbstractExpirableMap#tick()} and
+     * {@link AbstractExpirableMap#drainExpired(int)}. Expirable hash maps are never swept by
+     * a scheduler, with or without this setting.
+     *
+     * @return
+     *         This builder
+     */
+    public ExpirableMapBuilder<K, V> tickDriven() {
+        this.tickDriven = true;
+        return this;
+    }
+
+    /**
+     * Enables recording statistics of hits, misses, puts, expirations and evictions, which
+     * are returned by {@link AbstractExpirableMap#stats()}.
+     *
+     * @return
+     *         This builder
+     */
+    public ExpirableMapBuilder<K, V> recordStats() {
+        this.recordStats = true;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of entries of a bounded map.
+     *
+     * @param maximumSize
+     *        The maximum number of entries
+     * @return
+     *         This builder
+     * @see BoundedExpirableMap
+     */
+    public ExpirableMapBuilder<K, V> maximumSize(long maximumSize) {
+        checkArgument(maximumSize > 0, "maximum size must be larger than 0");
+        checkState(maximum == -1L, "maximum was already set");
+
+        this.maximum = maximumSize;
+        return this;
+    }
+
+    /**
+     * Sets the maximum total weight of the entries of a bounded map.
+     *
+     * @param maximumWeight
+     *        The maximum total weight
+     * @param weigher
+     *        The weigher calculating the weight of each entry
+     * @return
+     *         This builder
+     * @param <K1>
+     *        The type of keys of the maps built
+     * @param <V1>
+     *        The type of values of the maps built
+     * @see BoundedExpirableMap
+     */
+    @SuppressWarnings("unchecked")
+    public <K1 extends K, V1 extends V> ExpirableMapBuilder<K1, V1> maximumWeight(long maximumWeight,
+                                                                                  Weigher<? super K1, ? super V1> weigher) {
+        checkArgument(maximumWeight > 0, "maximum weight must be larger than 0");
+        checkNotNull(weigher, "weigher cannot be null");
+        checkState(maximum == -1L, "maximum was already set");
+
+        ExpirableMapBuilder<K1, V1> self = (ExpirableMapBuilder<K1, V1>) this;
+        self.maximum = maximumWeight;
+        self.weigher = weigher;
+        return self;
+    }
+
+    /**
+     * Holds the values through soft references, so the garbage collector may reclaim them
+     * before they expire when the heap runs low, in a least recently used order. This suits
+     * large values which are cheap to recreate. Null values are then not allowed.
+     *
+     * @return
+     *         This builder
+     */
+    public ExpirableMapBuilder<K, V> softValues() {
+        checkState(!softValues && !weakValues, "value reference strength was already set");
+
+        this.softValues = true;
+        return this;
+    }
+
+    /**
+     * Holds the values through weak references, so they are removed as soon as no other
+     * object references them, even before they expire. Null values are then not allowed.
+     *
+     * @return
+     *         This builder
+     */
+    public ExpirableMapBuilder<K, V> weakValues() {
+        checkState(!softValues && !weakValues, "value reference strength was already set");
+
+        this.weakValues = true;
+        return this;
+    }
+
+    /**
+     * Sets the listener notified when entries are removed.
+     *
+     * @param listener
+     *        The removal listener
+     * @return
+     *         This builder
+     * @param <K1>
+     *        The type of keys of the maps built
+     * @param <V1>
+     *        The type of values of the maps built
+     */
+    @SuppressWarnings("unchecked")
+    public <K1 extends K, V1 extends V> ExpirableMapBuilder<K1, V1> removalListener(RemovalListener<? super K1, ? super V1> listener) {
+        checkNotNull(listener, "listener cannot be null");
+
+        ExpirableMapBuilder<K1, V1> self = (ExpirableMapBuilder<K1, V1>) this;
+        self.removalListener = listener;
+        return self;
+    }
+
+    /**
+     * Sets the executor delivering removal notifications, defaults to the
+     * {@linkplain NucleusScheduler#executor() shared executor} of nucleus. The executor should run tasks asynchronously, since a task may be submitted while the
+     * map holds its lock.
+     *
+     * @param executor
+     *        The executor
+     * @return
+     *         This builder
+     */
+    public ExpirableMapBuilder<K, V> executor(Executor executor) {
+        this.executor = checkNotNull(executor, "executor cannot be null");
+        return this;
+    }
+
+    /**
+     * Builds an expirable hash map, which is not thread safe.
+     *
+     * @return
+     *         A new expirable hash map
+     * @param <K1>
+     *        The type of keys of the map
+     * @param <V1>
+     *        The type of values of the map
+     * @throws IllegalStateException
+     *         If a maximum was set
+     */
+    public <K1 extends K, V1 extends V> ExpirableHashMap<K1, V1> buildHashMap() {
+        checkState(maximum == -1L, "a maximum can only be used by bounded maps");
+        return new ExpirableHashMap<>(self());
+    }
+
+    /**
+     * Builds an expirable concurrent hash map.
+     *
+     * @return
+     *         A new expirable concurrent hash map
+     * @param <K1>
+     *        The type of keys of the map
+     * @param <V1>
+     *        The type of values of the map
+     * @throws IllegalStateException
+     *         If a maximum was set
+     */
+    public <K1 extends K, V1 extends V> ExpirableConcurrentHashMap<K1, V1> buildConcurrentHashMap() {
+        checkState(maximum == -1L, "a maximum can only be used by bounded maps");
+        return new ExpirableConcurrentHashMap<>(self());
+    }
+
+    /**
+     * Builds a bounded expirable map.
+     *
+     * @return
+     *         A new bounded expirable map
+     * @param <K1>
+     *        The type of keys of the map
+     * @param <V1>
+     *        The type of values of the map
+     * @throws IllegalStateException
+     *         If neither a maximum size nor a maximum weight was set
+     */
+    public <K1 extends K, V1 extends V> BoundedExpirableMap<K1, V1> buildBoundedMap() {
+        checkState(maximum != -1L, "maximum size or maximum weight must be set");
+        return new BoundedExpirableMap<>(self());
+    }
+
+    /**
+     * Builds a persistent expirable map stored in the specified file.
+     *
+     * @param file
+     *        The file storing the log of the map
+     * @param keyCodec
+     *        The codec of keys
+     * @param valueCodec
+     *        The codec of values
+     * @return
+     *         A new persistent expirable map, holding the live entries stored in the file
+     * @param <K1>
+     *        The type of keys of the map
+     * @param <V1>
+     *        The type of values of the map
+     * @throws IOException
+     *         If the file cannot be read or is not a log of persistent map
+     * @throws IllegalStateException
+     *         If a maximum was set, or if the values are soft or weak
+     */
+    public <K1 extends K, V1 extends V> PersistentExpirableMap<K1, V1> buildPersistentMap(File file, Codec<K1> keyCodec,
+                                                                                         Codec<V1> valueCodec) throws IOException {
+        checkState(maximum == -1L, "a maximum can only be used by bounded maps");
+        checkState(!softValues && !weakValues, "persistent maps cannot hold soft or weak values");
+        return new PersistentExpirableMap<>(self(), file, keyCodec, valueCodec);
+    }
+
+    /**
+     * Builds an off-heap expirable map, storing its values in slabs of direct buffers. The
+     * listener set on this builder must accept byte buffers as values.
+     *
+     * @param slabSize
+     *        The size in bytes of a slab, a power of two of at least 4 KB
+     * @return
+     *         A new off-heap expirable map
+     * @param <K1>
+     *        The type of keys of the map
+     * @throws IllegalStateException
+     *         If a maximum was set, or if the values are soft or weak
+     * @see OffHeapExpirableMap#DEFAULT_SLAB_SIZE
+     */
+    public <K1 extends K> OffHeapExpirableMap<K1> buildOffHeapMap(int slabSize) {
+        checkState(maximum == -1L, "a maximum can only be used by bounded maps");
+        checkState(!softValues && !weakValues, "off-heap maps cannot hold soft or weak values");
+        return new OffHeapExpirableMap<>(this, slabSize);
+    }
+
+    Executor getExecutor() {
+        return executor == null ? NucleusScheduler.executor() : executor;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K1 extends K, V1 extends V> ExpirableMapBuilder<K1, V1> self() {
+        return (ExpirableMapBuilder<K1, V1>) this;
+    }
+}
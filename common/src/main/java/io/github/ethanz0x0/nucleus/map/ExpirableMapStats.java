@@ -0,0 +1,155 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable snapshot of the statistics of an expirable map.
+ * <p>
+ * Counters are cumulative since the map was created. Use {@link #minus(ExpirableMapStats)}
+ * with a previous snapshot to get the activity of an interval, for example the number of
+ * expirations per second.
+ *
+ * @see AbstractExpirableMap#stats()
+ */
+public final class ExpirableMapStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    private final long expirationCount;
+    private final long evictionCount;
+    private final long totalExpirationLag;
+    private final long size;
+
+    ExpirableMapStats(long hitCount, long missCount, long putCount, long expirationCount,
+                      long evictionCount, long totalExpirationLag, long size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.expirationCount = expirationCount;
+        this.evictionCount = evictionCount;
+        this.totalExpirationLag = totalExpirationLag;
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of reads which found a live value.
+     *
+     * @return
+     *         The hit count
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of reads which found no value or an expired one.
+     *
+     * @return
+     *         The miss count
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the ratio of reads which found a live value.
+     *
+     * @return
+     *         The hit rate between 0 and 1, or 1 if there was no read
+     */
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0L ? 1.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * Returns the number of values written.
+     *
+     * @return
+     *         The put count
+     */
+    public long getPutCount() {
+        return putCount;
+    }
+
+    /**
+     * Returns the number of entries removed because they expired.
+     *
+     * @return
+     *         The expiration count
+     */
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * Returns the number of entries evicted by a size bound.
+     *
+     * @return
+     *         The eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the average time between the deadline of expired entries and their removal.
+     *
+     * @param unit
+     *        The unit of the returned time
+     * @return
+     *         The average expiration lag, or 0 if no entry expired
+     */
+    public double getAverageExpirationLag(TimeUnit unit) {
+        if (expirationCount == 0L) {
+            return 0.0;
+        }
+        return (double) totalExpirationLag / expirationCount / unit.toNanos(1L);
+    }
+
+    /**
+     * Returns the number of entries when the snapshot was taken, including the expired entries
+     * which had not been removed yet.
+     *
+     * @return
+     *         The size
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the difference between this snapshot and an earlier one. The size is the size
+     * of this snapshot.
+     *
+     * @param other
+     *        The earlier snapshot
+     * @return
+     *         The statistics of the interval between the two snapshots
+     */
+    public ExpirableMapStats minus(ExpirableMapStats other) {
+        return new ExpirableMapStats(
+                Math.max(0L, hitCount - other.hitCount),
+                Math.max(0L, missCount - other.missCount),
+                Math.max(0L, putCount - other.putCount),
+                Math.max(0L, expirationCount - other.expirationCount),
+                Math.max(0L, evictionCount - other.evictionCount),
+                Math.max(0L, totalExpirationLag - other.totalExpirationLag),
+                size
+        );
+    }
+
+    @Override
+    public String toString() {
+        return "ExpirableMapStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", putCount=" + putCount +
+                ", expirationCount=" + expirationCount +
+                ", evictionCount=" + evictionCount +
+                ", averageExpirationLagMillis=" + getAverageExpirationLag(TimeUnit.MILLISECONDS) +
+                ", size=" + size +
+                "}";
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.ethanz0x0.nucleus.map;
+
+/**
+ * A mapping held by an expirable map.
+ * <p>
+ * The node stores the value together with its expiration deadline, and is linked
+ * directly into the {@link TimerWheel} so no separate task or index is required
+ * to expire it.
+ *
+ * @param <K>
+ *        The type of keys maintained by the map
+ * @param <V>
+ *        The type of mapped values
+ */
+class ExpirableNode<K, V> {
+
+    /**
+     * The precision in nanoseconds (~1 ms) of the deadlines refreshed by reads.
+     */
+    static final long ACCESS_TOLERANCE = 1L << 20;
+
+    final K key;
+    final V value;
+
+    /**
+     * The time to live in nanoseconds, or 0 if the node never expires.
+     */
+    final long expiration;
+
+    /**
+     * Whether reads push the deadline back, see {@link ExpirationPolicy#AFTER_ACCESS}.
+     */
+    final boolean accessExpiring;
+
+    /**
+     * The tags of the mapping, or null if it has none.
+     */
+    Object[] tags;
+
+    volatile long deadline;
+
+    /**
+     * Whether the node is still mapped. Once retired, a node is never scheduled again.
+     */
+    volatile boolean alive = true;
+
+    // Timer wheel links, guarded by the owning map's lock
+    ExpirableNode<K, V> previous;
+    ExpirableNode<K, V> next;
+
+    // Eviction policy state, guarded by the owning map's lock
+    ExpirableNode<K, V> accessPrevious;
+    ExpirableNode<K, V> accessNext;
+    int queue;
+    int weight = 1;
+
+    ExpirableNode(K key, V value, long expiration, long now) {
+        this(key, value, expiration, false, now);
+    }
+
+    ExpirableNode(K key, V value, long expiration, boolean accessExpiring, long now) {
+        this.key = key;
+        this.value = value;
+        this.expiration = expiration;
+        this.accessExpiring = accessExpiring;
+        this.deadline = now + expiration;
+    }
+
+    /**
+     * Pushes the deadline back if the node expires after access.
+     * <p>
+     * The node is not moved in the timer wheel: its deadline only ever grows, so the wheel
+     * reaches it early and then reschedules it by its new deadline. Refreshes within
+     * {@link #ACCESS_TOLERANCE} of the current deadline are skipped to avoid writing to
+     * the node on every read of a hot entry.
+     */
+    void touch(long now) {
+        if (accessExpiring) {
+            long refreshed = now + expiration;
+            if (refreshed - deadline > ACCESS_TOLERANCE) {
+                deadline = refreshed;
+            }
+        }
+    }
+
+    /**
+     * Returns the time the node was written at. This is only accurate for nodes which do not
+     * expire after access, and which were not created by {@link AbstractExpirableMap#withValue(ExpirableNode, Object)}.
+     */
+    long writeTime() {
+        return deadline - expiration;
+    }
+
+    /**
+     * Returns the value of the node, or null if it was collected.
+     */
+    V getValue() {
+        return value;
+    }
+
+    /**
+     * Returns whether the value of the node was reclaimed by the garbage collector.
+     */
+    boolean isCollected() {
+        return false;
+    }
+
+    boolean isExpiring() {
+        return expiration > 0L;
+    }
+
+    boolean isExpired(long now) {
+        return expiration > 0L && now - deadline >= 0L;
+    }
+
+    boolean isScheduled() {
+        return next != null;
+    }
+}
@@ -0,0 +1,20 @@
+package io.github.ethanz0x0.nucleus.map;
+
+/**
+ * Determines when the expiration of an entry in an expirable map starts counting.
+ *
+ * @see ExpirableMap#put(Object, Object, long, ExpirationPolicy)
+ */
+public enum ExpirationPolicy {
+
+    /**
+     * The entry is removed once the expiration has elapsed since it was written.
+     */
+    AFTER_WRITE,
+
+    /**
+     * The entry is removed once the expiration has elapsed since it was last read or written,
+     * so an entry that keeps being used never expires.
+     */
+    AFTER_ACCESS
+}
@@ -0,0 +1,65 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+
+/**
+ * Rate limiter allowing each key a number of permits per fixed window of time.
+ * <p>
+ * This is the cheapest limiter, but a key may acquire up to twice the limit across the
+ * boundary of two windows; use a {@link SlidingWindowRateLimiter} to smooth it.
+ * <p>
+ * The state packs the index of the current window in the high 40 bits and the number of
+ * permits acquired in it in the low 24 bits.
+ *
+ * @see RateLimiter
+ * @param <K>
+ *        The type of keys being limited
+ */
+public class FixedWindowRateLimiter<K> extends RateLimiter<K> {
+
+    /**
+     * The maximum number of permits per window.
+     */
+    public static final int MAXIMUM_LIMIT = (1 << 24) - 1;
+
+    private static final int COUNT_BITS = 24;
+
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int limit;
+
+    private final long window;
+
+    /**
+     * Creates a fixed window rate limiter.
+     *
+     * @param limit
+     *        The number of permits per window, at most {@link #MAXIMUM_LIMIT}
+     * @param window
+     *        The length in milliseconds of a window
+     */
+    public FixedWindowRateLimiter(int limit, long window) {
+        checkArgument(limit > 0 && limit <= MAXIMUM_LIMIT, "limit must be between 1 and " + MAXIMUM_LIMIT);
+        checkArgument(window > 0, "window must be larger than 0");
+
+        this.limit = limit;
+        this.window = TimeUnit.MILLISECONDS.toNanos(window);
+    }
+
+    @Override
+    long acquire(long state, int permits, long now) {
+        long index = now / window;
+        long count = state >>> COUNT_BITS == index ? state & COUNT_MASK : 0L;
+        if (count + permits > limit) {
+            return REJECTED;
+        }
+        return index << COUNT_BITS | (count + permits);
+    }
+
+    @Override
+    boolean isIdle(long state, long now) {
+        return state >>> COUNT_BITS < now / window;
+    }
+}
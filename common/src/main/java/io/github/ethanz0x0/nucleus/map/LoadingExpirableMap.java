@@ -0,0 +1,349 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import io.github.ethanz0x0.nucleus.NucleusScheduler;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * A cache which loads missing values into an expirable map.
+ * <p>
+ * Concurrent loads of the same key are coalesced: the first caller runs the loader, and the
+ * others wait for the same {@link CompletableFuture} instead of loading the value again.
+ * With a refresh interval, a value older than the interval is still returned while a new
+ * value is loaded in the background, so popular keys never block on a reload.
+ * <p>
+ * Values are loaded by the function passed to each call, a loader returning null stores
+ * nothing. If a loader throws an exception, the callers waiting for the load receive it and
+ * nothing is stored.
+ *
+ * @see ExpirableMap
+ * @param <K>
+ *        The type of keys maintained by this cache
+ * @param <V>
+ *        The type of cached values
+ */
+public class LoadingExpirableMap<K, V> {
+
+    private final AbstractExpirableMap<K, V> map;
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    private final long expiration;
+
+    private final long refreshAfterWrite;
+
+    private final Executor executor;
+
+    /**
+     * Creates a loading map whose values expire after the specified time, loaded
+     * asynchronously on the {@linkplain NucleusScheduler#executor() shared executor}.
+     *
+     * @param expiration
+     *        The time in milliseconds after which loaded values are removed
+     */
+    public LoadingExpirableMap(long expiration) {
+        this(new ExpirableConcurrentHashMap<>(), expiration, 0L, NucleusScheduler.executor());
+    }
+
+    /**
+     * Creates a loading map whose values expire after the specified time, and are reloaded
+     * in the background on the {@linkplain NucleusScheduler#executor() shared executor}
+     * once they are older than the refresh interval.
+     *
+     * @param expiration
+     *        The time in milliseconds after which loaded values are removed
+     * @param refreshAfterWrite
+     *        The time in milliseconds after which a read reloads the value in the background
+     */
+    public LoadingExpirableMap(long expiration, long refreshAfterWrite) {
+        this(new ExpirableConcurrentHashMap<>(), expiration, refreshAfterWrite, NucleusScheduler.executor());
+    }
+
+    /**
+     * Creates a loading map storing its values into the specified expirable map.
+     *
+     * @param map
+     *        The thread safe expirable map storing the values, such as an
+     *        {@link ExpirableConcurrentHashMap} or a {@link BoundedExpirableMap}
+     * @param expiration
+     *        The time in milliseconds after which loaded values are removed
+     * @param refreshAfterWrite
+     *        The time in milliseconds after which a read reloads the value in the background,
+     *        or 0 to disable refreshing
+     * @param executor
+     *        The executor running background refreshes and asynchronous loads
+     */
+    public LoadingExpirableMap(AbstractExpirableMap<K, V> map, long expiration, long refreshAfterWrite, Executor executor) {
+        checkNotNull(map, "map cannot be null");
+        checkArgument(map instanceof ConcurrentMap, "map must be thread safe");
+        checkArgument(expiration > 0, "expiration must be larger than 0");
+        checkArgument(refreshAfterWrite >= 0 && refreshAfterWrite < expiration,
+                "refresh interval cannot be negative and must be smaller than the expiration");
+        checkNotNull(executor, "executor cannot be null");
+
+        this.map = map;
+        this.expiration = expiration;
+        this.refreshAfterWrite = TimeUnit.MILLISECONDS.toNanos(refreshAfterWrite);
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the value associated with the key, loading it if it is absent.
+     * If the key is already being loaded, waits for that load instead.
+     *
+     * @param key
+     *        The key
+     * @param loader
+     *        The function loading the value of the key
+     * @return
+     *         The current or loaded value, or null if the loader returned null
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        checkNotNull(key, "key cannot be null");
+        checkNotNull(loader, "loader cannot be null");
+
+        ExpirableNode<K, V> node = map.getNode(key);
+        V value = node == null ? null : node.getValue();
+        if (value != null) {
+            refreshIfNeeded(node, loader);
+            return value;
+        }
+        return join(load(key, loader, false));
+    }
+
+    /**
+     * Returns the value associated with the key, loading it on the executor if it is absent.
+     *
+     * @param key
+     *        The key
+     * @param loader
+     *        The function loading the value of the key
+     * @return
+     *         A future completed with the current or loaded value
+     */
+    public CompletableFuture<V> getAsync(K key, Function<? super K, ? extends V> loader) {
+        checkNotNull(key, "key cannot be null");
+        checkNotNull(loader, "loader cannot be null");
+
+        ExpirableNode<K, V> node = map.getNode(key);
+        V value = node == null ? null : node.getValue();
+        if (value != null) {
+            refreshIfNeeded(node, loader);
+            return CompletableFuture.completedFuture(value);
+        }
+        return load(key, loader, true);
+    }
+
+    /**
+     * Returns the values associated with the keys, loading all the absent ones with a single
+     * call to the bulk loader. Keys which are already being loaded are not passed to the
+     * bulk loader, their loads are waited for instead.
+     *
+     * @param keys
+     *        The keys
+     * @param loader
+     *        The function loading the values of a set of keys, keys missing from the returned
+     *        map are considered to have no value
+     * @return
+     *         The values of the keys which have one, in the iteration order of the keys
+     */
+    public Map<K, V> getAll(Iterable<? extends K> keys, Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> loader) {
+        checkNotNull(keys, "keys cannot be null");
+        checkNotNull(loader, "loader cannot be null");
+
+        Map<K, V> result = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+        for (K key : keys) {
+            checkNotNull(key, "key cannot be null");
+            if (result.containsKey(key) || pending.containsKey(key)) {
+                continue;
+            }
+            ExpirableNode<K, V> node = map.getNode(key);
+            V value = node == null ? null : node.getValue();
+            if (value != null) {
+                result.put(key, value);
+                continue;
+            }
+            CompletableFuture<V> created = new CompletableFuture<>();
+            CompletableFuture<V> future = loading.putIfAbsent(key, created);
+            if (future == null) {
+                owned.put(key, created);
+                future = created;
+            }
+            pending.put(key, future);
+        }
+
+        if (!owned.isEmpty()) {
+            try {
+                Map<? extends K, ? extends V> loaded = loader.apply(Collections.unmodifiableSet(owned.keySet()));
+                for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+                    V value = loaded == null ? null : loaded.get(entry.getKey());
+                    if (value != null) {
+                        map.put(entry.getKey(), value, expiration);
+                    }
+                    entry.getValue().complete(value);
+                }
+            } catch (Throwable t) {
+                for (CompletableFuture<V> future : owned.values()) {
+                    future.completeExceptionally(t);
+                }
+            } finally {
+                for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+                    loading.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        for (Map.Entry<K, CompletableFuture<V>> entry : pending.entrySet()) {
+            V value = join(entry.getValue());
+            if (value != null) {
+                result.put(entry.getKey(), value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value associated with the key, without loading it.
+     *
+     * @param key
+     *        The key
+     * @return
+     *         The current value, or null if there is none
+     */
+    public V getIfPresent(K key) {
+        return map.get(key);
+    }
+
+    /**
+     * Stores a value, replacing the current one.
+     *
+     * @param key
+     *        The key
+     * @param value
+     *        The value
+     */
+    public void put(K key, V value) {
+        map.put(key, value, expiration);
+    }
+
+    /**
+     * Removes the value associated with the key.
+     *
+     * @param key
+     *        The key
+     */
+    public void invalidate(K key) {
+        map.remove(key);
+    }
+
+    /**
+     * Removes all the values.
+     */
+    public void invalidateAll() {
+        map.clear();
+    }
+
+    /**
+     * Returns the expirable map storing the values. Modifications of the map are visible
+     * to this cache.
+     *
+     * @return
+     *         The backing expirable map
+     */
+    public AbstractExpirableMap<K, V> asMap() {
+        return map;
+    }
+
+    private CompletableFuture<V> load(K key, Function<? super K, ? extends V> loader, boolean async) {
+        CompletableFuture<V> future = loading.get(key);
+        if (future != null) {
+            return future;
+        }
+        CompletableFuture<V> created = new CompletableFuture<>();
+        future = loading.putIfAbsent(key, created);
+        if (future != null) {
+            return future;
+        }
+
+        // Another load may have completed between the miss and the registration, the miss
+        // was already recorded
+        ExpirableNode<K, V> node = map.peekNode(key);
+        V current = node == null ? null : node.getValue();
+        if (current != null) {
+            loading.remove(key, created);
+            created.complete(current);
+            return created;
+        }
+
+        Runnable task = () -> {
+            try {
+                V value = loader.apply(key);
+                if (value != null) {
+                    map.put(key, value, expiration);
+                }
+                created.complete(value);
+            } catch (Throwable t) {
+                created.completeExceptionally(t);
+            } finally {
+                loading.remove(key, created);
+            }
+        };
+        if (async) {
+            executor.execute(task);
+        } else {
+            task.run();
+        }
+        return created;
+    }
+
+    private void refreshIfNeeded(ExpirableNode<K, V> node, Function<? super K, ? extends V> loader) {
+        if (refreshAfterWrite == 0L || System.nanoTime() - node.writeTime() < refreshAfterWrite) {
+            return;
+        }
+        CompletableFuture<V> created = new CompletableFuture<>();
+        if (loading.putIfAbsent(node.key, created) != null) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                V value = loader.apply(node.key);
+                if (value != null) {
+                    map.refresh(node, value);
+                }
+                created.complete(value);
+            } catch (Throwable t) {
+                // The stale value keeps being served until it expires
+                created.completeExceptionally(t);
+            } finally {
+                loading.remove(node.key, created);
+            }
+        });
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * Expirable map with primitive {@code long} keys, such as entity ids.
+ * <p>
+ * Keys are never boxed: they are stored in a {@code long[]} next to the values and the
+ * deadlines, so puts and gets do not allocate. This map is not thread safe and is swept
+ * by {@link #tick()}, see {@link AbstractPrimitiveExpirableMap}.
+ *
+ * @see AbstractPrimitiveExpirableMap
+ * @param <V>
+ *        The type of mapped values
+ */
+public class Long2ObjectExpirableMap<V> extends AbstractPrimitiveExpirableMap<V> {
+
+    private long[] keys;
+
+    public Long2ObjectExpirableMap() {
+        this(0);
+    }
+
+    /**
+     * Creates a map which can hold the specified number of entries without growing.
+     *
+     * @param expectedSize
+     *        The expected number of entries
+     */
+    public Long2ObjectExpirableMap(int expectedSize) {
+        super(expectedSize);
+    }
+
+    /**
+     * Returns the value associated with the key.
+     *
+     * @param key
+     *        The key
+     * @return
+     *         The value, or null if there is no mapping for the key or if it has expired
+     */
+    public V get(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        if (isExpired(slot)) {
+            removeAt(slot);
+            return null;
+        }
+        return valueAt(slot);
+    }
+
+    /**
+     * Returns whether there is a live mapping for the key.
+     *
+     * @param key
+     *        The key
+     * @return
+     *         True if this map contains a mapping for the key
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Associates the value with the key, the mapping never expires.
+     *
+     * @param key
+     *        The key
+     * @param value
+     *        The value
+     * @return
+     *         The previous value, or null if there was no live mapping for the key
+     */
+    public V put(long key, V value) {
+        checkNotNull(value, "value cannot be null");
+
+        return doPut(key, value, NEVER);
+    }
+
+    /**
+     * Associates the value with the key.
+     *
+     * @param key
+     *        The key
+     * @param value
+     *        The value
+     * @param expiration
+     *        The time in milliseconds after which the mapping will be automatically removed
+     * @return
+     *         The previous value, or null if there was no live mapping for the key
+     */
+    public V put(long key, V value, long expiration) {
+        checkNotNull(value, "value cannot be null");
+        checkArgument(expiration > 0, "expiration must be larger than 0");
+
+        return doPut(key, value, deadline(expiration));
+    }
+
+    /**
+     * Removes the mapping for the key.
+     *
+     * @param key
+     *        The key
+     * @return
+     *         The previous value, or null if there was no live mapping for the key
+     */
+    public V remove(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        V value = isExpired(slot) ? null : valueAt(slot);
+        removeAt(slot);
+        return value;
+    }
+
+    /**
+     * Performs the action for each live entry of this map.
+     *
+     * @param action
+     *        The action
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        checkNotNull(action, "action cannot be null");
+
+        long now = now();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null && deadlines[i] > now) {
+                action.accept(keys[i], valueAt(i));
+            }
+        }
+    }
+
+    private V doPut(long key, V value, long deadline) {
+        int slot = mix(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V previous = isExpired(slot) ? null : valueAt(slot);
+                store(slot, value, deadline);
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        store(slot, value, deadline);
+        afterInsert();
+        return null;
+    }
+
+    private int find(long key) {
+        int slot = mix(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    @Override
+    int hashAt(int slot) {
+        return mix(keys[slot]);
+    }
+
+    @Override
+    void moveKey(int from, int to) {
+        keys[to] = keys[from];
+    }
+
+    @Override
+    void allocateKeys(int capacity) {
+        keys = new long[capacity];
+    }
+
+    @Override
+    void rehash(int capacity) {
+        long[] previousKeys = keys;
+        Object[] previousValues = values;
+        long[] previousDeadlines = deadlines;
+        allocate(capacity);
+
+        long now = now();
+        for (int i = 0; i < previousValues.length; i++) {
+            if (previousValues[i] != null && previousDeadlines[i] > now) {
+                int slot = mix(previousKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = previousKeys[i];
+                store(slot, valueAt(previousValues, i), previousDeadlines[i]);
+                size++;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V valueAt(Object[] values, int slot) {
+        return (V) values[slot];
+    }
+
+    /**
+     * An action performed on the entries of a long keyed map.
+     *
+     * @param <V>
+     *        The type of values
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+
+        /**
+         * Performs the action on an entry.
+         *
+         * @param key
+         *        The key
+         * @param value
+         *        The value
+         */
+        void accept(long key, V value);
+    }
+}
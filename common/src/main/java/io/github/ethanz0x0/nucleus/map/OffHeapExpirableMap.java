@@ -0,0 +1,359 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * Expirable concurrent map storing its values off-heap, for large binary payloads such as
+ * serialized player states.
+ * <p>
+ * The bytes of each value are copied into a block of a direct buffer allocated from slabs,
+ * so only the keys and small nodes stay on the heap, and the garbage collector never scans
+ * or copies the payloads. The block is freed as soon as the mapping is removed, and slabs
+ * left empty by expired mappings are released. Each {@link #tick()} also compacts the slabs
+ * left sparse by expired mappings, moving their remaining values into fuller slabs so they
+ * can be released too.
+ * <p>
+ * Reads such as {@link #get(Object)} return read-only copies of the stored bytes on the
+ * heap, which stay valid however long they are kept. Use {@link #read(Object, Function)} to
+ * read the stored bytes without copying them: the block is neither freed nor moved until
+ * the reader returns.
+ * <p>
+ * This map does not allow null values. A put copies the remaining bytes of the buffer, and
+ * does not change its position.
+ *
+ * @see ExpirableMap
+ * @see AbstractExpirableMap
+ * @param <K>
+ *        The type of keys maintained by this map
+ */
+public class OffHeapExpirableMap<K> extends AbstractExpirableMap<K, ByteBuffer> implements ConcurrentMap<K, ByteBuffer> {
+
+    /**
+     * The default size in bytes of a slab.
+     */
+    public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+    /**
+     * The maximum number of values moved by a compaction of the slabs.
+     */
+    private static final int COMPACTION_BUDGET = 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by the lock
+    private final SlabAllocator allocator;
+
+    public OffHeapExpirableMap() {
+        this(ExpirableMapBuilder.newBuilder(), DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * Creates an off-heap map with the specified slab size. Values larger than a slab are
+     * stored in dedicated buffers.
+     *
+     * @param slabSize
+     *        The size in bytes of a slab, a power of two of at least 4 KB
+     */
+    public OffHeapExpirableMap(int slabSize) {
+        this(ExpirableMapBuilder.newBuilder(), slabSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    OffHeapExpirableMap(ExpirableMapBuilder<?, ?> builder, int slabSize) {
+        super(new ConcurrentHashMap<>(), (ExpirableMapBuilder<K, ByteBuffer>) builder);
+        checkArgument(slabSize >= 4096 && Integer.bitCount(slabSize) == 1, "slab size must be a power of two of at least 4 KB");
+
+        this.allocator = new SlabAllocator(slabSize);
+        if (!builder.tickDriven) {
+            scheduleSweep();
+        }
+    }
+
+    /**
+     * Passes the stored bytes of the value associated with the key to the reader, without
+     * copying them. The buffer is only valid during the call: its block is neither freed
+     * nor moved until the reader returns, even if the mapping is removed meanwhile.
+     *
+     * @param key
+     *        The key whose associated value is to be read
+     * @param reader
+     *        The function reading the value, which must not keep the buffer
+     * @return
+     *         The result of the reader, or null if there was no mapping for key
+     */
+    public <R> R read(Object key, Function<? super ByteBuffer, ? extends R> reader) {
+        checkNotNull(reader, "reader cannot be null");
+
+        ExpirableNode<K, ByteBuffer> node = getNode(key);
+        if (node == null) {
+            return null;
+        }
+        OffHeapNode<K> offHeap = (OffHeapNode<K>) node;
+        if (!offHeap.pin()) {
+            // Removed since the lookup, its value was copied if it has a removal listener
+            ByteBuffer detached = offHeap.detached;
+            return detached == null ? null : reader.apply(detached.duplicate());
+        }
+        try {
+            return reader.apply(offHeap.view.duplicate());
+        } finally {
+            unpin(offHeap);
+        }
+    }
+
+    /**
+     * Removes all the expired entries from this map, then compacts the slabs left sparse,
+     * moving a bounded number of values per call.
+     * <p>
+     * Maps that are not swept by a scheduler should call this method periodically from
+     * the thread that owns them, for example once per server tick.
+     *
+     * @return
+     *         The number of removed entries
+     */
+    @Override
+    public int tick() {
+        int removed = super.tick();
+        lock.lock();
+        try {
+            allocator.compact(COMPACTION_BUDGET, (owner, slab, block) -> ((OffHeapNode<?>) owner).move(slab, block));
+        } finally {
+            lock.unlock();
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the number of bytes of off-heap memory reserved by this map.
+     *
+     * @return
+     *         The off-heap capacity
+     */
+    public long getOffHeapCapacity() {
+        lock.lock();
+        try {
+            return allocator.capacity();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes of off-heap memory used by the stored values, including
+     * the padding of their blocks.
+     *
+     * @return
+     *         The off-heap usage
+     */
+    public long getOffHeapUsage() {
+        lock.lock();
+        try {
+            return allocator.used();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    void lock(int stripe) {
+        lock.lock();
+    }
+
+    @Override
+    void unlock(int stripe) {
+        lock.unlock();
+    }
+
+    @Override
+    void checkValue(ByteBuffer value) {
+        checkNotNull(value, "value cannot be null");
+    }
+
+    @Override
+    ExpirableNode<K, ByteBuffer> newNode(K key, ByteBuffer value, long expiration, boolean accessExpiring, long now) {
+        return new OffHeapNode<>(this, key, value, expiration, accessExpiring, now);
+    }
+
+    @Override
+    boolean isTracked(ExpirableNode<K, ByteBuffer> node) {
+        return true;
+    }
+
+    @Override
+    void onAdded(ExpirableNode<K, ByteBuffer> node) {
+        super.onAdded(node);
+        OffHeapNode<K> offHeap = (OffHeapNode<K>) node;
+        if (offHeap.slab != null) {
+            return;
+        }
+        // Only mapped nodes are copied off-heap, so nodes losing a race never hold a block
+        ByteBuffer source = offHeap.view;
+        SlabAllocator.Slab slab = allocator.allocate(source.remaining(), offHeap);
+        int block = slab.lastBlock;
+        ByteBuffer target = slab.block(block, source.remaining());
+        target.put(source.duplicate()).flip();
+        offHeap.slab = slab;
+        offHeap.block = block;
+        offHeap.view = target.asReadOnlyBuffer();
+    }
+
+    @Override
+    void onRemoved(ExpirableNode<K, ByteBuffer> node) {
+        super.onRemoved(node);
+        OffHeapNode<K> offHeap = (OffHeapNode<K>) node;
+        if (offHeap.slab == null || offHeap.retired) {
+            return;
+        }
+        offHeap.retired = true;
+        // Removers returning the value read it before the node is retired, so only the
+        // listener reads it afterwards
+        if (hasRemovalListener()) {
+            offHeap.detached = copy(offHeap.view);
+        }
+        if (offHeap.retire()) {
+            allocator.free(offHeap.slab, offHeap.block);
+        }
+    }
+
+    /**
+     * Releases a pin of a node, freeing its block if the node was removed meanwhile.
+     */
+    private void unpin(OffHeapNode<K> node) {
+        if (node.unpin()) {
+            lock.lock();
+            try {
+                allocator.free(node.slab, node.block);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static ByteBuffer copy(ByteBuffer view) {
+        ByteBuffer copy = ByteBuffer.allocate(view.remaining());
+        copy.put(view.duplicate()).flip();
+        return copy.asReadOnlyBuffer();
+    }
+
+    /**
+     * A node whose value is stored in a block. Readers pin the node while they read its
+     * block, and the block is only freed or moved once no reader holds a pin.
+     */
+    private static final class OffHeapNode<K> extends ExpirableNode<K, ByteBuffer> {
+
+        /**
+         * Added to the pin count once the node is removed, the last reader then frees the block.
+         */
+        private static final int RETIRED = Integer.MIN_VALUE;
+
+        /**
+         * The pin count while the block is being moved, readers wait for the move to end.
+         */
+        private static final int MOVING = -1;
+
+        /**
+         * A read-only view of the value, over the buffer of the caller until the node is
+         * mapped, then over its block.
+         */
+        volatile ByteBuffer view;
+
+        /**
+         * A copy of the value on the heap, taken when the node is removed if the map has a
+         * removal listener.
+         */
+        volatile ByteBuffer detached;
+
+        private final OffHeapExpirableMap<K> map;
+
+        private final AtomicInteger pins = new AtomicInteger();
+
+        // Guarded by the lock of the map
+        SlabAllocator.Slab slab;
+        int block;
+        boolean retired;
+
+        OffHeapNode(OffHeapExpirableMap<K> map, K key, ByteBuffer value, long expiration, boolean accessExpiring,
+                    long now) {
+            super(key, null, expiration, accessExpiring, now);
+            this.map = map;
+            this.view = value.slice().asReadOnlyBuffer();
+        }
+
+        @Override
+        ByteBuffer getValue() {
+            if (!pin()) {
+                ByteBuffer detached = this.detached;
+                return detached == null ? null : detached.duplicate();
+            }
+            try {
+                return copy(view);
+            } finally {
+                map.unpin(this);
+            }
+        }
+
+        /**
+         * Pins the block of this node.
+         *
+         * @return
+         *         False if this node was removed
+         */
+        boolean pin() {
+            for (;;) {
+                int pins = this.pins.get();
+                if (pins == MOVING) {
+                    Thread.yield();
+                } else if (pins < 0) {
+                    return false;
+                } else if (this.pins.compareAndSet(pins, pins + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Releases a pin of the block of this node.
+         *
+         * @return
+         *         True if the block must be freed by the caller
+         */
+        boolean unpin() {
+            return pins.decrementAndGet() == RETIRED;
+        }
+
+        /**
+         * Marks this node as removed, under the lock of the map.
+         *
+         * @return
+         *         True if the block must be freed by the caller, false if the last reader will
+         */
+        boolean retire() {
+            return pins.getAndAdd(RETIRED) == 0;
+        }
+
+        /**
+         * Points this node to a copy of its block, under the lock of the map.
+         *
+         * @return
+         *         False if a reader holds a pin
+         */
+        boolean move(SlabAllocator.Slab slab, int block) {
+            if (!pins.compareAndSet(0, MOVING)) {
+                return false;
+            }
+            this.slab = slab;
+            this.block = block;
+            this.view = slab.block(block, view.remaining()).asReadOnlyBuffer();
+            pins.set(0);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+import static io.github.ethanz0x0.nucleus.Checks.checkState;
+
+/**
+ * Expirable concurrent map which survives restarts, backed by an append-only log.
+ * <p>
+ * Every put and remove is appended to a memory mapped log file, and the deadlines are
+ * stored as wall clock times. When the map is opened again, only the entries which are
+ * still live are loaded, with the time to live they had left. The log is compacted by
+ * rewriting the live entries once most of its records are obsolete, so it stays
+ * proportional to the number of entries rather than to the history of the map. Each
+ * compaction writes a new generation of the log next to the file, named after it and
+ * followed by the generation, such as {@code map.log.1}, and deletes the previous one once
+ * the new one is complete; no file is ever replaced while it is still mapped.
+ * <p>
+ * Records are written to the mapped file under the lock of the map, so they survive a crash
+ * of the process; use {@link #flush()} to also survive a crash of the machine. Expired
+ * entries are not logged when they are removed, since their deadline is enough to skip
+ * them. Reads pushing back the deadline of entries which expire after access are not
+ * logged either, their deadline is saved when the log is compacted or the map is closed.
+ * Tags are not persisted, entries are loaded without them.
+ * <p>
+ * This map does not allow null values.
+ *
+ * @see ExpirableMap
+ * @see AbstractExpirableMap
+ * @param <K>
+ *        The type of keys maintained by this map
+ * @param <V>
+ *        The type of mapped values
+ */
+public class PersistentExpirableMap<K, V> extends AbstractExpirableMap<K, V> implements ConcurrentMap<K, V>, Closeable {
+
+    /**
+     * The number of records below which the log is never compacted.
+     */
+    private static final int COMPACTION_THRESHOLD = 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final File file;
+
+    private final Codec<K> keyCodec;
+
+    private final Codec<V> valueCodec;
+
+    // Guarded by the lock
+    private ExpirableLog log;
+    private long generation;
+    private long sequence;
+    private boolean closed;
+
+    /**
+     * Opens a persistent map stored in the specified file, creating the file if needed.
+     *
+     * @param file
+     *        The file storing the first generation of the log
+     * @param keyCodec
+     *        The codec of keys
+     * @param valueCodec
+     *        The codec of values
+     * @throws IOException
+     *         If the file cannot be read or is not a log of persistent map
+     */
+    public PersistentExpirableMap(File file, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        this(ExpirableMapBuilder.newBuilder(), file, keyCodec, valueCodec);
+    }
+
+    @SuppressWarnings("unchecked")
+    PersistentExpirableMap(ExpirableMapBuilder<? super K, ? super V> builder, File file,
+                           Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        super(new ConcurrentHashMap<>(), (ExpirableMapBuilder<K, V>) builder);
+        this.file = checkNotNull(file, "file cannot be null");
+        this.keyCodec = checkNotNull(keyCodec, "key codec cannot be null");
+        this.valueCodec = checkNotNull(valueCodec, "value codec cannot be null");
+        load();
+        if (!builder.tickDriven) {
+            scheduleSweep();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the live entries of this map. This is done automatically
+     * once most of the records of the log are obsolete.
+     *
+     * @throws IOException
+     *         If the log cannot be written
+     * @throws IllegalStateException
+     *         If this map is closed
+     */
+    public void compact() throws IOException {
+        lock.lock();
+        try {
+            checkState(!closed, "map is closed");
+            doCompact();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the records appended so far to the storage device.
+     *
+     * @throws IllegalStateException
+     *         If this map is closed
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            checkState(!closed, "map is closed");
+            log.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Compacts and closes the log. The entries stay readable, but modifying this map
+     * afterwards throws an {@link IllegalStateException}.
+     *
+     * @throws IOException
+     *         If the log cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            try {
+                doCompact();
+            } finally {
+                closed = true;
+                log.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    void lock(int stripe) {
+        lock.lock();
+    }
+
+    @Override
+    void unlock(int stripe) {
+        lock.unlock();
+    }
+
+    @Override
+    void checkValue(V value) {
+        checkNotNull(value, "value cannot be null");
+    }
+
+    @Override
+    ExpirableNode<K, V> newNode(K key, V value, long expiration, boolean accessExpiring, long now) {
+        return new PersistentNode<>(key, value, expiration, accessExpiring, now);
+    }
+
+    @Override
+    boolean isTracked(ExpirableNode<K, V> node) {
+        return true;
+    }
+
+    /**
+     * Logs the node before registering it, a failure leaves nothing to undo but the mapping.
+     */
+    @Override
+    void onAdded(ExpirableNode<K, V> node) {
+        PersistentNode<K, V> persistent = (PersistentNode<K, V>) node;
+        // Nodes loaded from the log already have a sequence
+        if (persistent.sequence == 0L) {
+            checkState(!closed, "map is closed");
+            try {
+                // Compacts first, so the new log holds every logged node and then this one
+                if (log.records() >= COMPACTION_THRESHOLD && log.records() > 2L * data.size()) {
+                    doCompact();
+                }
+                persistent.sequence = sequence + 1;
+                appendPut(log, persistent, System.nanoTime(), System.currentTimeMillis());
+                sequence = persistent.sequence;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                if (persistent.sequence != sequence) {
+                    // Not logged, the removal of the node must not be logged either
+                    persistent.sequence = 0L;
+                }
+            }
+        }
+        super.onAdded(node);
+    }
+
+    @Override
+    void checkWritable() {
+        lock.lock();
+        try {
+            checkState(!closed, "map is closed");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    void onRemoved(ExpirableNode<K, V> node) {
+        super.onRemoved(node);
+        PersistentNode<K, V> persistent = (PersistentNode<K, V>) node;
+        if (persistent.sequence <= 0L) {
+            return;
+        }
+        long sequence = persistent.sequence;
+        persistent.sequence = -1L;
+        // Only removals racing with close are dropped, the others are refused beforehand
+        if (closed || node.isExpired(System.nanoTime())) {
+            return;
+        }
+        try {
+            log.appendRemove(sequence, keyCodec.encode(node.key));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void appendPut(ExpirableLog log, PersistentNode<K, V> node, long nanos, long millis) throws IOException {
+        long deadline = node.isExpiring() ? millis + TimeUnit.NANOSECONDS.toMillis(node.deadline - nanos) : 0L;
+        log.appendPut(node.sequence, deadline, node.expiration, node.accessExpiring,
+                keyCodec.encode(node.key), valueCodec.encode(node.getValue()));
+    }
+
+    private void doCompact() throws IOException {
+        File next = generationFile(++generation);
+        ExpirableLog compacted = ExpirableLog.create(next);
+        try {
+            long nanos = System.nanoTime();
+            long millis = System.currentTimeMillis();
+            for (ExpirableNode<K, V> node : data.values()) {
+                PersistentNode<K, V> persistent = (PersistentNode<K, V>) node;
+                // Nodes not logged yet are appended to the new log once they are scheduled
+                if (persistent.sequence > 0L && node.alive && !node.isExpired(nanos)) {
+                    appendPut(compacted, persistent, nanos, millis);
+                }
+            }
+            compacted.seal();
+        } catch (IOException | RuntimeException e) {
+            compacted.close();
+            next.delete();
+            throw e;
+        }
+        ExpirableLog previous = log;
+        log = compacted;
+        previous.close();
+        // Fails on platforms which keep the file mapped until its buffer is collected, the
+        // file is then deleted by the next load
+        previous.file().delete();
+    }
+
+    private File generationFile(long generation) {
+        return generation == 0L ? file : new File(file.getPath() + "." + generation);
+    }
+
+    /**
+     * Finds the newest sealed generation of the log, and deletes the files of the other
+     * generations: the newer ones were not completely written, the older ones were compacted.
+     */
+    private long findGeneration() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        File directory = file.getAbsoluteFile().getParentFile();
+        File[] files = directory == null ? null : directory.listFiles();
+        String prefix = file.getName() + ".";
+        if (files != null) {
+            for (File candidate : files) {
+                String name = candidate.getName();
+                if (name.startsWith(prefix) && name.length() > prefix.length() && name.length() <= prefix.length() + 18) {
+                    String suffix = name.substring(prefix.length());
+                    if (suffix.chars().allMatch(Character::isDigit) && Long.parseLong(suffix) > 0L) {
+                        generations.add(Long.parseLong(suffix));
+                    }
+                }
+            }
+        }
+        generations.sort(Collections.reverseOrder());
+
+        long current = 0L;
+        for (long generation : generations) {
+            File candidate = generationFile(generation);
+            if (current == 0L && ExpirableLog.isSealed(candidate)) {
+                current = generation;
+            } else {
+                candidate.delete();
+            }
+        }
+        if (current > 0L) {
+            file.delete();
+        }
+        return current;
+    }
+
+    private void load() throws IOException {
+        Map<K, Record> records = new HashMap<>();
+        ExpirableLog.Visitor visitor = new ExpirableLog.Visitor() {
+
+            @Override
+            public void put(long sequence, long deadline, long expiration, boolean accessExpiring, byte[] key, byte[] value) {
+                K decoded = keyCodec.decode(key);
+                records.put(decoded, new Record(sequence, deadline, expiration, accessExpiring, value, records.get(decoded)));
+                PersistentExpirableMap.this.sequence = Math.max(PersistentExpirableMap.this.sequence, sequence);
+            }
+
+            @Override
+            public void remove(long sequence, byte[] key) {
+                K decoded = keyCodec.decode(key);
+                Record record = records.get(decoded);
+                Record unlinked = Record.unlink(record, sequence);
+                if (unlinked == null) {
+                    records.remove(decoded);
+                } else if (unlinked != record) {
+                    records.put(decoded, unlinked);
+                }
+            }
+        };
+
+        lock.lock();
+        try {
+            generation = findGeneration();
+            log = ExpirableLog.open(generationFile(generation), visitor);
+            long nanos = System.nanoTime();
+            long millis = System.currentTimeMillis();
+            for (Map.Entry<K, Record> entry : records.entrySet()) {
+                // Records of a key are only left over if the removal of an older one was not logged
+                Record record = entry.getValue();
+                while (record != null && record.expiration > 0L && record.deadline <= millis) {
+                    record = record.previous;
+                }
+                if (record == null) {
+                    continue;
+                }
+                PersistentNode<K, V> node = (PersistentNode<K, V>) newNode(entry.getKey(),
+                        valueCodec.decode(record.value), record.expiration, record.accessExpiring, nanos);
+                if (node.isExpiring()) {
+                    node.deadline = nanos + TimeUnit.MILLISECONDS.toNanos(record.deadline - millis);
+                }
+                node.sequence = record.sequence;
+                data.put(node.key, node);
+                schedule(node, null);
+            }
+            if (log.records() >= COMPACTION_THRESHOLD && log.records() > 2L * data.size()) {
+                doCompact();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (log != null) {
+                log.close();
+            }
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class PersistentNode<K, V> extends ExpirableNode<K, V> {
+
+        /**
+         * The sequence of the put record of this node, 0 before it is logged and -1 after its
+         * removal is logged. Guarded by the lock of the map.
+         */
+        long sequence;
+
+        PersistentNode(K key, V value, long expiration, boolean accessExpiring, long now) {
+            super(key, value, expiration, accessExpiring, now);
+        }
+    }
+
+    /**
+     * A put record of a key being replayed, linked to the older records of the key which
+     * have not been removed.
+     */
+    private static final class Record {
+
+        final long sequence;
+        final long deadline;
+        final long expiration;
+        final boolean accessExpiring;
+        final byte[] value;
+        Record previous;
+
+        Record(long sequence, long deadline, long expiration, boolean accessExpiring, byte[] value, Record previous) {
+            this.sequence = sequence;
+            this.deadline = deadline;
+            this.expiration = expiration;
+            this.accessExpiring = accessExpiring;
+            this.value = value;
+            this.previous = previous;
+        }
+
+        /**
+         * Removes the record of the specified sequence from the chain, and returns the new head.
+         */
+        static Record unlink(Record head, long sequence) {
+            if (head == null) {
+                return null;
+            }
+            if (head.sequence == sequence) {
+                return head.previous;
+            }
+            Record record = head;
+            while (record.previous != null) {
+                if (record.previous.sequence == sequence) {
+                    record.previous = record.previous.previous;
+                    break;
+                }
+                record = record.previous;
+            }
+            return head;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import io.github.ethanz0x0.nucleus.NucleusScheduler;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * Skeletal implementation of keyed rate limiters.
+ * <p>
+ * The whole state of a key is packed in a single long, updated by compare and set, so
+ * acquiring permits never locks and, once the key has been seen, never allocates. Keys
+ * whose state has returned to idle, such as a full bucket or a finished window, are
+ * removed every second by the {@link NucleusScheduler}, or by {@link #tick()}.
+ *
+ * @see TokenBucketRateLimiter
+ * @see FixedWindowRateLimiter
+ * @see SlidingWindowRateLimiter
+ * @param <K>
+ *        The type of keys being limited
+ */
+public abstract class RateLimiter<K> {
+
+    /**
+     * The delay in milliseconds between two scheduled removals of idle keys.
+     */
+    static final long SWEEP_INTERVAL = 1000L;
+
+    /**
+     * Returned by {@link #acquire(long, int, long)} when the permits are not available.
+     */
+    static final long REJECTED = -1L;
+
+    /**
+     * The state of a key being removed, acquisitions seeing it look the key up again.
+     */
+    private static final long REMOVED = Long.MIN_VALUE;
+
+    private final ConcurrentHashMap<K, AtomicLong> states = new ConcurrentHashMap<>();
+
+    /**
+     * The origin of the clock, so a state of 0 is idle.
+     */
+    private final long origin = System.nanoTime();
+
+    RateLimiter() {
+        NucleusScheduler.schedulePeriodically(this, RateLimiter::tick, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Computes the state after acquiring permits.
+     *
+     * @param state
+     *        The current state, 0 for a key never seen
+     * @param permits
+     *        The number of permits to acquire
+     * @param now
+     *        The current time in nanoseconds
+     * @return
+     *         The new state, which must be positive, or {@link #REJECTED}
+     */
+    abstract long acquire(long state, int permits, long now);
+
+    /**
+     * Returns whether the state is equivalent to the state of a key never seen.
+     */
+    abstract boolean isIdle(long state, long now);
+
+    /**
+     * Acquires a permit for the specified key if it is available.
+     *
+     * @param key
+     *        The key
+     * @return
+     *         True if the permit was acquired
+     */
+    public boolean tryAcquire(K key) {
+        return tryAcquire(key, 1);
+    }
+
+    /**
+     * Acquires permits for the specified key if they are all available. Either all the
+     * permits are acquired, or none.
+     *
+     * @param key
+     *        The key
+     * @param permits
+     *        The number of permits
+     * @return
+     *         True if the permits were acquired
+     */
+    public boolean tryAcquire(K key, int permits) {
+        checkNotNull(key, "key cannot be null");
+        checkArgument(permits > 0, "permits must be larger than 0");
+
+        for (;;) {
+            AtomicLong state = states.get(key);
+            if (state == null) {
+                state = states.computeIfAbsent(key, k -> new AtomicLong());
+            }
+            long now = now();
+            for (;;) {
+                long current = state.get();
+                if (current == REMOVED) {
+                    break;
+                }
+                long next = acquire(current, permits, now);
+                if (next == REJECTED) {
+                    return false;
+                }
+                if (state.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Resets the state of the specified key, so all its permits are available again.
+     *
+     * @param key
+     *        The key
+     */
+    public void reset(K key) {
+        AtomicLong state = states.remove(key);
+        if (state != null) {
+            state.set(REMOVED);
+        }
+    }
+
+    /**
+     * Resets the state of all keys.
+     */
+    public void clear() {
+        Iterator<AtomicLong> iterator = states.values().iterator();
+        while (iterator.hasNext()) {
+            AtomicLong state = iterator.next();
+            iterator.remove();
+            state.set(REMOVED);
+        }
+    }
+
+    /**
+     * Returns the number of keys whose state is tracked, including idle keys which have not
+     * been removed yet.
+     *
+     * @return
+     *         The number of keys
+     */
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * Removes the keys whose state is idle. This is called every second by the
+     * {@link NucleusScheduler}.
+     *
+     * @return
+     *         The number of removed keys
+     */
+    public int tick() {
+        int removed = 0;
+        long now = now();
+        for (Map.Entry<K, AtomicLong> entry : states.entrySet()) {
+            AtomicLong state = entry.getValue();
+            long current = state.get();
+            // Once marked, acquisitions racing with the removal retry on a new state
+            if (isIdle(current, now) && state.compareAndSet(current, REMOVED)) {
+                states.remove(entry.getKey(), state);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    final long now() {
+        return System.nanoTime() - origin;
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A striped, lossy buffer recording the reads of an expirable map.
+ * <p>
+ * Readers publish the node they accessed into a small ring buffer picked by their thread,
+ * without taking the map lock. The buffers are drained in batches under the lock, which
+ * turns many contended policy updates into a single one. When a ring buffer is full or
+ * contended, the read is dropped, as losing a few reads does not hurt the policy.
+ *
+ * @param <K>
+ *        The type of keys maintained by the map
+ * @param <V>
+ *        The type of mapped values
+ */
+final class ReadBuffer<K, V> {
+
+    /**
+     * The offer succeeded and the buffer does not need to be drained yet.
+     */
+    static final int SUCCESS = 0;
+
+    /**
+     * The buffer is full or the read was dropped, and should be drained.
+     */
+    static final int FULL = 1;
+
+    private static final int STRIPES =
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+
+    private static final int BUFFER_SIZE = 16;
+
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+    private final Stripe<K, V>[] stripes;
+
+    @SuppressWarnings("unchecked")
+    ReadBuffer() {
+        this.stripes = (Stripe<K, V>[]) new Stripe<?, ?>[STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+
+    /**
+     * Records a read of the specified node.
+     *
+     * @return
+     *         {@link #SUCCESS} or {@link #FULL}
+     */
+    int offer(ExpirableNode<K, V> node) {
+        Stripe<K, V> stripe = stripes[probe() & (STRIPES - 1)];
+        long head = stripe.head;
+        long tail = stripe.tail.get();
+        if (tail - head >= BUFFER_SIZE || !stripe.tail.compareAndSet(tail, tail + 1)) {
+            return FULL;
+        }
+        stripe.buffer.lazySet((int) (tail & BUFFER_MASK), node);
+        return tail + 1 - head >= BUFFER_SIZE ? FULL : SUCCESS;
+    }
+
+    /**
+     * Drains all the recorded reads, must be called under the map lock.
+     *
+     * @param consumer
+     *        The consumer applying each read
+     */
+    void drainTo(Consumer<ExpirableNode<K, V>> consumer) {
+        for (Stripe<K, V> stripe : stripes) {
+            long head = stripe.head;
+            long tail = stripe.tail.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & BUFFER_MASK);
+                ExpirableNode<K, V> node = stripe.buffer.get(index);
+                if (node == null) {
+                    // The slot has been claimed but not published yet
+                    break;
+                }
+                stripe.buffer.lazySet(index, null);
+                consumer.accept(node);
+            }
+            stripe.head = head;
+        }
+    }
+
+    private static int probe() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Stripe<K, V> {
+
+        private final AtomicReferenceArray<ExpirableNode<K, V>> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+
+        private final AtomicLong tail = new AtomicLong();
+
+        private volatile long head;
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+/**
+ * A mapping holding its value through a soft or weak reference, so the garbage collector
+ * may reclaim the value before the mapping expires.
+ * <p>
+ * Once the value is collected, the node reads as expired, and its reference is enqueued
+ * so the map can remove it with {@link RemovalCause#COLLECTED}.
+ *
+ * @param <K>
+ *        The type of keys maintained by the map
+ * @param <V>
+ *        The type of mapped values
+ */
+final class ReferenceNode<K, V> extends ExpirableNode<K, V> {
+
+    final Reference<V> reference;
+
+    ReferenceNode(K key, V value, long expiration, boolean accessExpiring, long now,
+                  boolean soft, ReferenceQueue<V> queue) {
+        super(key, null, expiration, accessExpiring, now);
+        this.reference = soft ? new SoftValueReference<>(value, queue, this) : new WeakValueReference<>(value, queue, this);
+    }
+
+    @Override
+    V getValue() {
+        return reference.get();
+    }
+
+    @Override
+    boolean isCollected() {
+        return reference.get() == null;
+    }
+
+    @Override
+    boolean isExpired(long now) {
+        return super.isExpired(now) || reference.get() == null;
+    }
+
+    /**
+     * Returns the node of a reference polled from the queue of a map.
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> ExpirableNode<K, V> nodeOf(Reference<? extends V> reference) {
+        return reference instanceof SoftValueReference
+                ? ((SoftValueReference<K, V>) reference).node
+                : ((WeakValueReference<K, V>) reference).node;
+    }
+
+    private static final class SoftValueReference<K, V> extends SoftReference<V> {
+
+        final ExpirableNode<K, V> node;
+
+        SoftValueReference(V value, ReferenceQueue<V> queue, ExpirableNode<K, V> node) {
+            super(value, queue);
+            this.node = node;
+        }
+    }
+
+    private static final class WeakValueReference<K, V> extends WeakReference<V> {
+
+        final ExpirableNode<K, V> node;
+
+        WeakValueReference(V value, ReferenceQueue<V> queue, ExpirableNode<K, V> node) {
+            super(value, queue);
+            this.node = node;
+        }
+    }
+}
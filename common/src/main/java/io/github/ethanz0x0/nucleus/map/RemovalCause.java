@@ -0,0 +1,35 @@
+package io.github.ethanz0x0.nucleus.map;
+
+/**
+ * The reason why an entry was removed from an expirable map.
+ *
+ * @see RemovalListener
+ */
+public enum RemovalCause {
+
+    /**
+     * The entry was removed because its expiration has elapsed.
+     */
+    EXPIRED,
+
+    /**
+     * The value of the entry was replaced by a write.
+     */
+    REPLACED,
+
+    /**
+     * The entry was removed explicitly, by a remove or clear operation.
+     */
+    EXPLICIT,
+
+    /**
+     * The entry was evicted to keep the map under its maximum size.
+     */
+    EVICTED,
+
+    /**
+     * The value of the entry was reclaimed by the garbage collector, which only happens to
+     * maps holding soft or weak values. The value passed to the listener is null.
+     */
+    COLLECTED
+}
@@ -0,0 +1,44 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.util.List;
+
+/**
+ * A listener notified when entries are removed from an expirable map.
+ * <p>
+ * Notifications are queued and delivered asynchronously in batches on the executor of the
+ * map, so removals never wait for the listener. Override {@link #onRemovals(List)} to handle
+ * a whole batch at once, for example to persist it in a single write.
+ *
+ * @see ExpirableMapBuilder#removalListener(RemovalListener)
+ * @param <K>
+ *        The type of keys
+ * @param <V>
+ *        The type of values
+ */
+@FunctionalInterface
+public interface RemovalListener<K, V> {
+
+    /**
+     * Called when an entry has been removed.
+     *
+     * @param key
+     *        The key of the removed entry
+     * @param value
+     *        The value of the removed entry
+     * @param cause
+     *        The reason of the removal
+     */
+    void onRemoval(K key, V value, RemovalCause cause);
+
+    /**
+     * Called with a batch of removals, in the order they happened.
+     *
+     * @param notifications
+     *        The removal notifications
+     */
+    default void onRemovals(List<RemovalNotification<K, V>> notifications) {
+        for (RemovalNotification<K, V> notification : notifications) {
+            onRemoval(notification.getKey(), notification.getValue(), notification.getCause());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import io.github.ethanz0x0.nucleus.Pair;
+
+/**
+ * A notification of the removal of an entry from an expirable map.
+ *
+ * @see RemovalListener
+ * @param <K>
+ *        The type of the key
+ * @param <V>
+ *        The type of the value
+ */
+public class RemovalNotification<K, V> extends Pair<K, V> {
+
+    private final RemovalCause cause;
+
+    public RemovalNotification(K key, V value, RemovalCause cause) {
+        super(key, value);
+        this.cause = cause;
+    }
+
+    public RemovalCause getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return "RemovalNotification{" +
+                "key=" + getKey() +
+                ", value=" + getValue() +
+                ", cause=" + cause +
+                "}";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return super.equals(obj) && cause == ((RemovalNotification<?, ?>) obj).cause;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + cause.hashCode();
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Queues removal notifications and delivers them to a listener in batches.
+ * <p>
+ * At most one flush task is pending or running on the executor at a time, so the
+ * listener is never called concurrently and always sees removals in order.
+ *
+ * @param <K>
+ *        The type of keys maintained by the map
+ * @param <V>
+ *        The type of mapped values
+ */
+final class RemovalNotifier<K, V> implements Runnable {
+
+    private static final int MAXIMUM_BATCH = 1024;
+
+    private final RemovalListener<K, V> listener;
+
+    private final Executor executor;
+
+    private final Queue<RemovalNotification<K, V>> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    RemovalNotifier(RemovalListener<K, V> listener, Executor executor) {
+        this.listener = listener;
+        this.executor = executor;
+    }
+
+    void notify(K key, V value, RemovalCause cause) {
+        pending.add(new RemovalNotification<>(key, value, cause));
+        schedule();
+    }
+
+    @Override
+    public void run() {
+        try {
+            deliver();
+        } finally {
+            scheduled.set(false);
+            // Notifications queued after the last poll, or left behind by an error, must not be stranded
+            if (!pending.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+            } catch (RuntimeException | Error e) {
+                // The notifications stay queued for the next schedule
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void deliver() {
+        for (;;) {
+            List<RemovalNotification<K, V>> batch = new ArrayList<>(Math.min(pending.size(), MAXIMUM_BATCH));
+            RemovalNotification<K, V> notification;
+            while (batch.size() < MAXIMUM_BATCH && (notification = pending.poll()) != null) {
+                batch.add(notification);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                listener.onRemovals(batch);
+            } catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * An allocator of blocks of off-heap memory, carved out of direct buffers called slabs.
+ * <p>
+ * Blocks are rounded up to a power of two size class, from {@link #MINIMUM_BLOCK} bytes to
+ * the slab size, and each slab only holds blocks of one class, tracked by its own stack of
+ * free blocks. A slab whose blocks are all freed is released, unless it is the last one of
+ * its class, so memory freed by expired entries is returned instead of being fragmented.
+ * Slabs left sparse, which are not empty, are emptied by {@link #compact(int, Mover)}
+ * moving their blocks into the other slabs of their class. Blocks larger than a slab get
+ * a dedicated buffer.
+ * <p>
+ * The memory of a released slab is reclaimed by the garbage collector along with its buffer.
+ * This class is not thread safe, the owning map guards it with its lock.
+ */
+final class SlabAllocator {
+
+    static final int MINIMUM_BLOCK = 64;
+
+    private final int slabSize;
+
+    /**
+     * The slabs with free blocks of each size class.
+     */
+    private final ArrayDeque<Slab>[] available;
+
+    /**
+     * The number of slabs of each size class.
+     */
+    private final int[] slabCounts;
+
+    /**
+     * The number of allocated blocks of each size class.
+     */
+    private final int[] usedBlocks;
+
+    private long capacity;
+
+    private long used;
+
+    @SuppressWarnings("unchecked")
+    SlabAllocator(int slabSize) {
+        this.slabSize = slabSize;
+        this.available = (ArrayDeque<Slab>[]) new ArrayDeque<?>[sizeClass(slabSize) + 1];
+        for (int i = 0; i < available.length; i++) {
+            available[i] = new ArrayDeque<>();
+        }
+        this.slabCounts = new int[available.length];
+        this.usedBlocks = new int[available.length];
+    }
+
+    /**
+     * Allocates a block of at least the specified length for an owner, and returns the slab
+     * holding it. The block is identified by its index in the slab.
+     */
+    Slab allocate(int length, Object owner) {
+        if (length > slabSize) {
+            Slab slab = new Slab(-1, length, 1);
+            capacity += length;
+            used += length;
+            slab.take(owner);
+            return slab;
+        }
+        int sizeClass = sizeClass(length);
+        ArrayDeque<Slab> slabs = available[sizeClass];
+        Slab slab = slabs.peekFirst();
+        if (slab == null) {
+            int blockSize = MINIMUM_BLOCK << sizeClass;
+            slab = new Slab(sizeClass, blockSize, slabSize / blockSize);
+            slabs.addFirst(slab);
+            capacity += slabSize;
+            slabCounts[sizeClass]++;
+        }
+        take(slab, owner);
+        return slab;
+    }
+
+    /**
+     * Frees a block of the specified slab.
+     */
+    void free(Slab slab, int block) {
+        used -= slab.blockSize;
+        if (slab.sizeClass < 0) {
+            capacity -= slab.blockSize;
+            return;
+        }
+        boolean wasFull = slab.freeCount == 0;
+        slab.free(block);
+        usedBlocks[slab.sizeClass]--;
+        ArrayDeque<Slab> slabs = available[slab.sizeClass];
+        if (slab.freeCount == slab.blocks) {
+            if (wasFull) {
+                // A slab holding a single block
+                slabs.addLast(slab);
+            }
+            if (slabs.size() > 1) {
+                slabs.remove(slab);
+                release(slab);
+            }
+        } else if (wasFull) {
+            slabs.addLast(slab);
+        }
+    }
+
+    /**
+     * Moves at most the specified number of blocks out of the emptiest slabs of the sparse
+     * size classes, and releases the slabs emptied this way. A class is sparse when less than
+     * half of the blocks of its slabs are allocated, so the other slabs of the class always
+     * have room for the blocks of its emptiest slab.
+     * <p>
+     * Each block is copied to a new block, then handed to the mover along with its owner.
+     * If the mover refuses, the new block is freed and the class is left for the next call.
+     *
+     * @return
+     *         The number of moved blocks
+     */
+    int compact(int budget, Mover mover) {
+        int moved = 0;
+        for (int sizeClass = 0; sizeClass < available.length; sizeClass++) {
+            while (moved < budget && isSparse(sizeClass)) {
+                ArrayDeque<Slab> slabs = available[sizeClass];
+                Slab source = null;
+                for (Slab slab : slabs) {
+                    if (source == null || slab.freeCount > source.freeCount) {
+                        source = slab;
+                    }
+                }
+                // Allocations must not land in the slab being emptied
+                slabs.remove(source);
+                boolean refused = false;
+                for (int block = 0; block < source.blocks && moved < budget; block++) {
+                    Object owner = source.owners[block];
+                    if (owner == null) {
+                        continue;
+                    }
+                    Slab target = slabs.peekFirst();
+                    take(target, owner);
+                    int targetBlock = target.lastBlock;
+                    target.block(targetBlock, target.blockSize).put(source.block(block, source.blockSize));
+                    if (!mover.move(owner, target, targetBlock)) {
+                        free(target, targetBlock);
+                        refused = true;
+                        break;
+                    }
+                    used -= source.blockSize;
+                    usedBlocks[sizeClass]--;
+                    source.free(block);
+                    moved++;
+                }
+                if (source.freeCount == source.blocks) {
+                    release(source);
+                } else {
+                    slabs.addLast(source);
+                }
+                if (refused) {
+                    break;
+                }
+            }
+        }
+        return moved;
+    }
+
+    private boolean isSparse(int sizeClass) {
+        int blocks = slabSize / (MINIMUM_BLOCK << sizeClass);
+        return slabCounts[sizeClass] > 1 && (long) usedBlocks[sizeClass] * 2 < (long) slabCounts[sizeClass] * blocks;
+    }
+
+    /**
+     * Returns the number of bytes of off-heap memory held by the slabs.
+     */
+    long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of bytes of the allocated blocks.
+     */
+    long used() {
+        return used;
+    }
+
+    private void take(Slab slab, Object owner) {
+        used += slab.blockSize;
+        usedBlocks[slab.sizeClass]++;
+        slab.take(owner);
+        if (slab.freeCount == 0) {
+            available[slab.sizeClass].remove(slab);
+        }
+    }
+
+    private void release(Slab slab) {
+        capacity -= slabSize;
+        slabCounts[slab.sizeClass]--;
+    }
+
+    private static int sizeClass(int length) {
+        int size = Math.max(MINIMUM_BLOCK, length);
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MINIMUM_BLOCK);
+    }
+
+    /**
+     * Moves the block of an owner.
+     */
+    @FunctionalInterface
+    interface Mover {
+
+        /**
+         * Points the owner to its new block, which already holds a copy of its bytes.
+         *
+         * @return
+         *         True if the owner was moved, false if its block cannot be moved now
+         */
+        boolean move(Object owner, Slab slab, int block);
+    }
+
+    /**
+     * A direct buffer divided into blocks of the same size.
+     */
+    static final class Slab {
+
+        final int sizeClass;
+
+        final int blockSize;
+
+        final int blocks;
+
+        private final ByteBuffer buffer;
+
+        private final int[] free;
+
+        /**
+         * The owner of each allocated block, so blocks can be moved.
+         */
+        private final Object[] owners;
+
+        private int freeCount;
+
+        /**
+         * The index of the last block taken, which is the block allocated by the last call to
+         * {@link SlabAllocator#allocate(int)} that returned this slab.
+         */
+        int lastBlock;
+
+        Slab(int sizeClass, int blockSize, int blocks) {
+            this.sizeClass = sizeClass;
+            this.blockSize = blockSize;
+            this.blocks = blocks;
+            this.buffer = ByteBuffer.allocateDirect(blockSize * blocks);
+            this.free = new int[blocks];
+            this.owners = new Object[blocks];
+            for (int i = 0; i < blocks; i++) {
+                free[i] = blocks - 1 - i;
+            }
+            this.freeCount = blocks;
+        }
+
+        /**
+         * Returns a buffer over the first bytes of the specified block, positioned at 0.
+         */
+        ByteBuffer block(int block, int length) {
+            ByteBuffer view = buffer.duplicate();
+            int offset = block * blockSize;
+            view.limit(offset + length).position(offset);
+            return view.slice();
+        }
+
+        private void take(Object owner) {
+            lastBlock = free[--freeCount];
+            owners[lastBlock] = owner;
+        }
+
+        private void free(int block) {
+            owners[block] = null;
+            free[freeCount++] = block;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+
+/**
+ * Rate limiter allowing each key a number of permits per sliding window of time.
+ * <p>
+ * The number of permits acquired in the last window is estimated from the counts of the
+ * current and the previous fixed windows, the previous count being weighted by the part
+ * of the previous window still covered by the sliding window. Unlike a log of timestamps,
+ * this needs a single long per key, at the cost of assuming permits were spread evenly
+ * over the previous window.
+ * <p>
+ * The state packs the low 31 bits of the index of the current window, the count of the
+ * previous window and the count of the current window, 16 bits each.
+ *
+ * @see RateLimiter
+ * @param <K>
+ *        The type of keys being limited
+ */
+public class SlidingWindowRateLimiter<K> extends RateLimiter<K> {
+
+    /**
+     * The maximum number of permits per window.
+     */
+    public static final int MAXIMUM_LIMIT = 0xffff;
+
+    /**
+     * The maximum length of a window in milliseconds. A weighted count is at most
+     * {@link #MAXIMUM_LIMIT} times the window in nanoseconds, below 2^63 for a day.
+     */
+    public static final long MAXIMUM_WINDOW = TimeUnit.DAYS.toMillis(1);
+
+    private static final long INDEX_MASK = 0x7fffffffL;
+
+    private final int limit;
+
+    private final long window;
+
+    /**
+     * Creates a sliding window rate limiter.
+     *
+     * @param limit
+     *        The number of permits per window, at most {@link #MAXIMUM_LIMIT}
+     * @param window
+     *        The length in milliseconds of the window, at most {@link #MAXIMUM_WINDOW}
+     */
+    public SlidingWindowRateLimiter(int limit, long window) {
+        checkArgument(limit > 0 && limit <= MAXIMUM_LIMIT, "limit must be between 1 and " + MAXIMUM_LIMIT);
+        checkArgument(window > 0 && window <= MAXIMUM_WINDOW, "window must be between 1 and " + MAXIMUM_WINDOW);
+
+        this.limit = limit;
+        this.window = TimeUnit.MILLISECONDS.toNanos(window);
+    }
+
+    @Override
+    long acquire(long state, int permits, long now) {
+        long index = now / window;
+        // The indexes are compared modulo 2^31, idle keys are removed long before they wrap
+        int distance = distance(index, state);
+        long previous;
+        long current;
+        if (distance == 0) {
+            previous = state >>> 16 & 0xffff;
+            current = state & 0xffff;
+        } else if (distance == 1) {
+            previous = state & 0xffff;
+            current = 0L;
+        } else {
+            previous = 0L;
+            current = 0L;
+        }
+
+        long elapsed = now - index * window;
+        // Compares the weighted previous count with the room left, as each side fits in a long
+        // while their sum does not
+        if (current + permits > limit
+                || previous * (window - elapsed) > (limit - current - permits) * window) {
+            return REJECTED;
+        }
+        return (index & INDEX_MASK) << 32 | previous << 16 | (current + permits);
+    }
+
+    @Override
+    boolean isIdle(long state, long now) {
+        return distance(now / window, state) >= 2;
+    }
+
+    private static int distance(long index, long state) {
+        return (int) ((index - (state >>> 32)) & INDEX_MASK);
+    }
+}
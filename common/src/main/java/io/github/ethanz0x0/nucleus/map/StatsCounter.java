@@ -0,0 +1,60 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates the statistics of an expirable map.
+ * <p>
+ * The counters are striped {@link LongAdder}s, so recording from many threads does not
+ * contend on a single memory location.
+ */
+final class StatsCounter {
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder puts = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder expirationLag = new LongAdder();
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordPut() {
+        puts.increment();
+    }
+
+    /**
+     * Records an expiration which happened the specified number of nanoseconds after the deadline.
+     */
+    void recordExpiration(long lag) {
+        expirations.increment();
+        expirationLag.add(Math.max(0L, lag));
+    }
+
+    void recordEviction() {
+        evictions.increment();
+    }
+
+    ExpirableMapStats snapshot(long size) {
+        return new ExpirableMapStats(
+                hits.sum(),
+                misses.sum(),
+                puts.sum(),
+                expirations.sum(),
+                evictions.sum(),
+                expirationLag.sum(),
+                size
+        );
+    }
+}
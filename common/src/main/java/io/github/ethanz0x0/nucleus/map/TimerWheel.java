@@ -0,0 +1,170 @@
+package io.github.ethanz0x0.nucleus.map;
+
+/**
+ * A hierarchical timing wheel that orders expirable nodes by their deadline.
+ * <p>
+ * Each level is an array of buckets holding a circular doubly-linked list of nodes, so
+ * scheduling and cancelling a node are both O(1). As time advances, the buckets that were
+ * passed are emptied: nodes that are due move to the expired queue, while the others are
+ * cascaded into a finer level. The levels have the following resolutions and ranges:
+ * <ul>
+ *     <li>~16.8 ms buckets, covering ~1.07 s</li>
+ *     <li>~1.07 s buckets, covering ~1.15 m</li>
+ *     <li>~1.15 m buckets, covering ~1.22 h</li>
+ *     <li>~1.22 h buckets, covering ~3.26 d</li>
+ *     <li>~3.26 d buckets, covering ~208 d</li>
+ *     <li>a single overflow bucket for anything further away</li>
+ * </ul>
+ * This class is not thread safe, the owning map must guard it.
+ *
+ * @param <K>
+ *        The type of keys maintained by the map
+ * @param <V>
+ *        The type of mapped values
+ */
+final class TimerWheel<K, V> {
+
+    private static final int[] BUCKETS = {64, 64, 64, 64, 64, 1};
+
+    private static final int[] SHIFTS = {24, 30, 36, 42, 48, 54};
+
+    private final ExpirableNode<K, V>[][] wheel;
+
+    private final ExpirableNode<K, V> expired = sentinel();
+
+    private long nanos;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long now) {
+        this.nanos = now;
+        this.wheel = (ExpirableNode<K, V>[][]) new ExpirableNode<?, ?>[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = (ExpirableNode<K, V>[]) new ExpirableNode<?, ?>[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++) {
+                wheel[i][j] = sentinel();
+            }
+        }
+    }
+
+    /**
+     * Adds a node to the wheel, or moves it if it is already scheduled.
+     *
+     * @param node
+     *        The node to schedule by its deadline
+     */
+    void schedule(ExpirableNode<K, V> node) {
+        if (node.isScheduled()) {
+            unlink(node);
+        }
+        link(findBucket(node.deadline), node);
+    }
+
+    /**
+     * Removes a node from the wheel holding it or from its expired queue, if present.
+     *
+     * @param node
+     *        The node to cancel
+     */
+    static <K, V> void deschedule(ExpirableNode<K, V> node) {
+        if (node.isScheduled()) {
+            unlink(node);
+        }
+    }
+
+    /**
+     * Advances the wheel to the specified time, moving every node whose deadline has
+     * passed to the expired queue.
+     *
+     * @param now
+     *        The current time in nanoseconds
+     */
+    void advance(long now) {
+        long previous = nanos;
+        nanos = now;
+        for (int i = 0; i < SHIFTS.length; i++) {
+            long previousTicks = previous >>> SHIFTS[i];
+            long currentTicks = now >>> SHIFTS[i];
+            long delta = currentTicks - previousTicks;
+            if (delta <= 0L) {
+                break;
+            }
+            expire(i, previousTicks, delta);
+        }
+    }
+
+    /**
+     * Removes and returns the next node from the expired queue.
+     *
+     * @return
+     *         The next expired node, or null if there is none
+     */
+    ExpirableNode<K, V> pollExpired() {
+        ExpirableNode<K, V> node = expired.next;
+        if (node == expired) {
+            return null;
+        }
+        unlink(node);
+        return node;
+    }
+
+    private void expire(int level, long previousTicks, long delta) {
+        ExpirableNode<K, V>[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1L + delta, buckets.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            ExpirableNode<K, V> sentinel = buckets[i & mask];
+            ExpirableNode<K, V> node = sentinel.next;
+            sentinel.previous = sentinel;
+            sentinel.next = sentinel;
+
+            while (node != sentinel) {
+                ExpirableNode<K, V> next = node.next;
+                node.previous = null;
+                node.next = null;
+                if (node.deadline - nanos > 0L) {
+                    link(findBucket(node.deadline), node);
+                } else {
+                    link(expired, node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    private ExpirableNode<K, V> findBucket(long time) {
+        long duration = time - nanos;
+        if (duration <= 0L) {
+            return expired;
+        }
+        int last = wheel.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < (1L << SHIFTS[i + 1])) {
+                long ticks = time >>> SHIFTS[i];
+                return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+            }
+        }
+        return wheel[last][0];
+    }
+
+    private static <K, V> void link(ExpirableNode<K, V> sentinel, ExpirableNode<K, V> node) {
+        node.previous = sentinel.previous;
+        node.next = sentinel;
+        sentinel.previous.next = node;
+        sentinel.previous = node;
+    }
+
+    private static <K, V> void unlink(ExpirableNode<K, V> node) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        node.previous = null;
+        node.next = null;
+    }
+
+    private static <K, V> ExpirableNode<K, V> sentinel() {
+        ExpirableNode<K, V> sentinel = new ExpirableNode<>(null, null, 0L, 0L);
+        sentinel.previous = sentinel;
+        sentinel.next = sentinel;
+        return sentinel;
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+
+/**
+ * Rate limiter giving each key a bucket of permits which refills at a constant rate.
+ * <p>
+ * A key may burst up to the capacity of its bucket, then acquire permits at the refill
+ * rate. The bucket is stored as the time at which it becomes full again (the generic cell
+ * rate algorithm), which is equivalent to counting tokens but needs a single long.
+ *
+ * @see RateLimiter
+ * @param <K>
+ *        The type of keys being limited
+ */
+public class TokenBucketRateLimiter<K> extends RateLimiter<K> {
+
+    /**
+     * The time in nanoseconds to refill a permit.
+     */
+    private final long interval;
+
+    /**
+     * The time in nanoseconds to refill the whole bucket.
+     */
+    private final long tolerance;
+
+    /**
+     * Creates a token bucket rate limiter.
+     *
+     * @param capacity
+     *        The maximum number of permits a key may acquire at once
+     * @param permitsPerSecond
+     *        The number of permits refilled per second
+     */
+    public TokenBucketRateLimiter(int capacity, double permitsPerSecond) {
+        checkArgument(capacity > 0, "capacity must be larger than 0");
+        checkArgument(permitsPerSecond > 0, "permits per second must be larger than 0");
+
+        this.interval = Math.max(1L, (long) (1_000_000_000L / permitsPerSecond));
+        checkArgument(interval <= Long.MAX_VALUE / 4 / capacity, "refill rate is too low");
+        this.tolerance = interval * capacity;
+    }
+
+    @Override
+    long acquire(long state, int permits, long now) {
+        if (permits > tolerance / interval) {
+            return REJECTED;
+        }
+        long next = Math.max(state, now) + permits * interval;
+        return next - now > tolerance ? REJECTED : next;
+    }
+
+    @Override
+    boolean isIdle(long state, long now) {
+        return state <= now;
+    }
+}
@@ -0,0 +1,260 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import java.util.UUID;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * Expirable map with {@link UUID} keys, such as player ids.
+ * <p>
+ * Keys are stored as their two {@code long} halves, interleaved in a single {@code long[]}
+ * next to the values and the deadlines, so puts and gets do not allocate and the map does
+ * not retain the UUID instances. This map is not thread safe and is swept by
+ * {@link #tick()}, see {@link AbstractPrimitiveExpirableMap}.
+ *
+ * @see AbstractPrimitiveExpirableMap
+ * @param <V>
+ *        The type of mapped values
+ */
+public class Uuid2ObjectExpirableMap<V> extends AbstractPrimitiveExpirableMap<V> {
+
+    /**
+     * The most significant bits of the key in slot {@code i} are at {@code 2 * i}, and the
+     * least significant bits at {@code 2 * i + 1}.
+     */
+    private long[] keys;
+
+    public Uuid2ObjectExpirableMap() {
+        this(0);
+    }
+
+    /**
+     * Creates a map which can hold the specified number of entries without growing.
+     *
+     * @param expectedSize
+     *        The expected number of entries
+     */
+    public Uuid2ObjectExpirableMap(int expectedSize) {
+        super(expectedSize);
+    }
+
+    /**
+     * Returns the value associated with the key.
+     *
+     * @param key
+     *        The key
+     * @return
+     *         The value, or null if there is no mapping for the key or if it has expired
+     */
+    public V get(UUID key) {
+        checkNotNull(key, "key cannot be null");
+        return get(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    /**
+     * Returns the value associated with the key made of the specified bits.
+     *
+     * @param mostSignificantBits
+     *        The most significant bits of the key
+     * @param leastSignificantBits
+     *        The least significant bits of the key
+     * @return
+     *         The value, or null if there is no mapping for the key or if it has expired
+     */
+    public V get(long mostSignificantBits, long leastSignificantBits) {
+        int slot = find(mostSignificantBits, leastSignificantBits);
+        if (slot < 0) {
+            return null;
+        }
+        if (isExpired(slot)) {
+            removeAt(slot);
+            return null;
+        }
+        return valueAt(slot);
+    }
+
+    /**
+     * Returns whether there is a live mapping for the key.
+     *
+     * @param key
+     *        The key
+     * @return
+     *         True if this map contains a mapping for the key
+     */
+    public boolean containsKey(UUID key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Associates the value with the key, the mapping never expires.
+     *
+     * @param key
+     *        The key
+     * @param value
+     *        The value
+     * @return
+     *         The previous value, or null if there was no live mapping for the key
+     */
+    public V put(UUID key, V value) {
+        checkNotNull(key, "key cannot be null");
+        checkNotNull(value, "value cannot be null");
+
+        return doPut(key.getMostSignificantBits(), key.getLeastSignificantBits(), value, NEVER);
+    }
+
+    /**
+     * Associates the value with the key.
+     *
+     * @param key
+     *        The key
+     * @param value
+     *        The value
+     * @param expiration
+     *        The time in milliseconds after which the mapping will be automatically removed
+     * @return
+     *         The previous value, or null if there was no live mapping for the key
+     */
+    public V put(UUID key, V value, long expiration) {
+        checkNotNull(key, "key cannot be null");
+        checkNotNull(value, "value cannot be null");
+        checkArgument(expiration > 0, "expiration must be larger than 0");
+
+        return doPut(key.getMostSignificantBits(), key.getLeastSignificantBits(), value, deadline(expiration));
+    }
+
+    /**
+     * Removes the mapping for the key.
+     *
+     * @param key
+     *        The key
+     * @return
+     *         The previous value, or null if there was no live mapping for the key
+     */
+    public V remove(UUID key) {
+        checkNotNull(key, "key cannot be null");
+
+        int slot = find(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        if (slot < 0) {
+            return null;
+        }
+        V value = isExpired(slot) ? null : valueAt(slot);
+        removeAt(slot);
+        return value;
+    }
+
+    /**
+     * Performs the action for each live entry of this map. The keys are created for the
+     * action, so prefer {@link #get(long, long)} on hot paths.
+     *
+     * @param action
+     *        The action
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        checkNotNull(action, "action cannot be null");
+
+        long now = now();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null && deadlines[i] > now) {
+                action.accept(new UUID(keys[i << 1], keys[(i << 1) + 1]), valueAt(i));
+            }
+        }
+    }
+
+    private V doPut(long mostSignificantBits, long leastSignificantBits, V value, long deadline) {
+        int slot = hash(mostSignificantBits, leastSignificantBits) & mask;
+        while (values[slot] != null) {
+            if (keys[slot << 1] == mostSignificantBits && keys[(slot << 1) + 1] == leastSignificantBits) {
+                V previous = isExpired(slot) ? null : valueAt(slot);
+                store(slot, value, deadline);
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot << 1] = mostSignificantBits;
+        keys[(slot << 1) + 1] = leastSignificantBits;
+        store(slot, value, deadline);
+        afterInsert();
+        return null;
+    }
+
+    private int find(long mostSignificantBits, long leastSignificantBits) {
+        int slot = hash(mostSignificantBits, leastSignificantBits) & mask;
+        while (values[slot] != null) {
+            if (keys[slot << 1] == mostSignificantBits && keys[(slot << 1) + 1] == leastSignificantBits) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int hash(long mostSignificantBits, long leastSignificantBits) {
+        return mix(mostSignificantBits ^ Long.rotateLeft(leastSignificantBits, 32));
+    }
+
+    @Override
+    int hashAt(int slot) {
+        return hash(keys[slot << 1], keys[(slot << 1) + 1]);
+    }
+
+    @Override
+    void moveKey(int from, int to) {
+        keys[to << 1] = keys[from << 1];
+        keys[(to << 1) + 1] = keys[(from << 1) + 1];
+    }
+
+    @Override
+    void allocateKeys(int capacity) {
+        keys = new long[capacity << 1];
+    }
+
+    @Override
+    void rehash(int capacity) {
+        long[] previousKeys = keys;
+        Object[] previousValues = values;
+        long[] previousDeadlines = deadlines;
+        allocate(capacity);
+
+        long now = now();
+        for (int i = 0; i < previousValues.length; i++) {
+            if (previousValues[i] != null && previousDeadlines[i] > now) {
+                long mostSignificantBits = previousKeys[i << 1];
+                long leastSignificantBits = previousKeys[(i << 1) + 1];
+                int slot = hash(mostSignificantBits, leastSignificantBits) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot << 1] = mostSignificantBits;
+                keys[(slot << 1) + 1] = leastSignificantBits;
+                store(slot, valueAt(previousValues, i), previousDeadlines[i]);
+                size++;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V valueAt(Object[] values, int slot) {
+        return (V) values[slot];
+    }
+
+    /**
+     * An action performed on the entries of a UUID keyed map.
+     *
+     * @param <V>
+     *        The type of values
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+
+        /**
+         * Performs the action on an entry.
+         *
+         * @param key
+         *        The key
+         * @param value
+         *        The value
+         */
+        void accept(UUID key, V value);
+    }
+}
@@ -0,0 +1,27 @@
+package io.github.ethanz0x0.nucleus.map;
+
+/**
+ * Calculates the weight of an entry in a bounded expirable map.
+ *
+ * @see BoundedExpirableMap
+ * @param <K>
+ *        The type of keys
+ * @param <V>
+ *        The type of values
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    /**
+     * Returns the weight of an entry. The weight is calculated once, when the entry is
+     * stored, and is not expected to change.
+     *
+     * @param key
+     *        The key of the entry
+     * @param value
+     *        The value of the entry
+     * @return
+     *         The weight of the entry, must not be negative
+     */
+    int weigh(K key, V value);
+}
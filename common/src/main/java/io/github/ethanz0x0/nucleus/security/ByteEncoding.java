@@ -0,0 +1,391 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import java.util.Arrays;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * A utility class for encoding bytes as lowercase hexadecimal or Base64 text.
+ * <p>
+ * The codecs are table driven and write into buffers of the caller, so hashes can be
+ * encoded and compared without creating intermediate strings. The Base64 decoder accepts
+ * the same input as {@link java.util.Base64#getDecoder()}: the padding is optional, and
+ * line separators or other characters are rejected. The URL-safe variant uses the
+ * alphabet of {@link java.util.Base64#getUrlEncoder()} without padding, for tokens.
+ */
+public final class ByteEncoding {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final char[] BASE64_URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final int[] HEX_VALUES = new int[128];
+
+    private static final int[] BASE64_VALUES = new int[128];
+
+    private static final int[] BASE64_URL_VALUES = new int[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, -1);
+        for (int i = 0; i < HEX.length; i++) {
+            HEX_VALUES[HEX[i]] = i;
+            HEX_VALUES[Character.toUpperCase(HEX[i])] = i;
+        }
+        Arrays.fill(BASE64_VALUES, -1);
+        for (int i = 0; i < BASE64.length; i++) {
+            BASE64_VALUES[BASE64[i]] = i;
+        }
+        Arrays.fill(BASE64_URL_VALUES, -1);
+        for (int i = 0; i < BASE64_URL.length; i++) {
+            BASE64_URL_VALUES[BASE64_URL[i]] = i;
+        }
+    }
+
+    /**
+     * Encodes bytes as a lowercase hexadecimal string.
+     *
+     * @param bytes
+     *      The bytes to encode
+     *
+     * @return
+     *      The hexadecimal string
+     */
+    public static String toHex(byte[] bytes) {
+        checkNotNull(bytes, "bytes cannot be null");
+
+        char[] chars = new char[bytes.length * 2];
+        encodeHex(bytes, 0, bytes.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Encodes a range of bytes as lowercase hexadecimal characters into a buffer.
+     *
+     * @param bytes
+     *      The bytes to encode
+     *
+     * @param offset
+     *      The offset of the range
+     *
+     * @param length
+     *      The length of the range
+     *
+     * @param out
+     *      The buffer receiving the characters
+     *
+     * @param outOffset
+     *      The offset of the characters in the buffer
+     *
+     * @return
+     *      The number of characters written, twice the length
+     */
+    public static int encodeHex(byte[] bytes, int offset, int length, char[] out, int outOffset) {
+        checkRange(bytes, offset, length);
+        checkNotNull(out, "out cannot be null");
+        checkArgument(outOffset >= 0 && outOffset <= out.length - length * 2, "buffer is too short");
+
+        for (int i = 0; i < length; i++) {
+            int value = bytes[offset + i];
+            out[outOffset++] = HEX[(value >>> 4) & 0xf];
+            out[outOffset++] = HEX[value & 0xf];
+        }
+        return length * 2;
+    }
+
+    /**
+     * Decodes hexadecimal characters of either case into a buffer.
+     *
+     * @param text
+     *      The characters to decode
+     *
+     * @param out
+     *      The buffer receiving the bytes
+     *
+     * @param outOffset
+     *      The offset of the bytes in the buffer
+     *
+     * @return
+     *      The number of bytes written, or -1 if the text is not hexadecimal
+     */
+    public static int decodeHex(CharSequence text, byte[] out, int outOffset) {
+        checkNotNull(text, "text cannot be null");
+        checkNotNull(out, "out cannot be null");
+
+        int length = text.length();
+        if ((length & 1) != 0) return -1;
+
+        checkArgument(outOffset >= 0 && outOffset <= out.length - length / 2, "buffer is too short");
+
+        for (int i = 0; i < length; i += 2) {
+            int high = hexValue(text.charAt(i));
+            int low = hexValue(text.charAt(i + 1));
+
+            if ((high | low) < 0) return -1;
+
+            out[outOffset++] = (byte) (high << 4 | low);
+        }
+        return length / 2;
+    }
+
+    /**
+     * Encodes bytes as a padded Base64 string.
+     *
+     * @param bytes
+     *      The bytes to encode
+     *
+     * @return
+     *      The Base64 string
+     */
+    public static String toBase64(byte[] bytes) {
+        checkNotNull(bytes, "bytes cannot be null");
+
+        char[] chars = new char[base64Length(bytes.length)];
+        encodeBase64(bytes, 0, bytes.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Returns the number of characters of the padded Base64 encoding of the specified number
+     * of bytes.
+     *
+     * @param length
+     *      The number of bytes
+     *
+     * @return
+     *      The number of characters
+     */
+    public static int base64Length(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * Encodes a range of bytes as padded Base64 characters into a buffer.
+     *
+     * @param bytes
+     *      The bytes to encode
+     *
+     * @param offset
+     *      The offset of the range
+     *
+     * @param length
+     *      The length of the range
+     *
+     * @param out
+     *      The buffer receiving the characters
+     *
+     * @param outOffset
+     *      The offset of the characters in the buffer
+     *
+     * @return
+     *      The number of characters written
+     */
+    public static int encodeBase64(byte[] bytes, int offset, int length, char[] out, int outOffset) {
+        return encode(BASE64, true, bytes, offset, length, out, outOffset);
+    }
+
+    /**
+     * Decodes a range of Base64 characters into a buffer. The padding is optional.
+     *
+     * @param text
+     *      The characters to decode
+     *
+     * @param start
+     *      The index of the first character
+     *
+     * @param end
+     *      The index after the last character
+     *
+     * @param out
+     *      The buffer receiving the bytes, at least 3 bytes for every 4 characters
+     *
+     * @param outOffset
+     *      The offset of the bytes in the buffer
+     *
+     * @return
+     *      The number of bytes written, or -1 if the text is not Base64
+     */
+    public static int decodeBase64(CharSequence text, int start, int end, byte[] out, int outOffset) {
+        return decode(BASE64_VALUES, text, start, end, out, outOffset);
+    }
+
+    /**
+     * Encodes bytes as an unpadded URL-safe Base64 string.
+     *
+     * @param bytes
+     *      The bytes to encode
+     *
+     * @return
+     *      The URL-safe Base64 string
+     */
+    public static String toBase64Url(byte[] bytes) {
+        checkNotNull(bytes, "bytes cannot be null");
+
+        char[] chars = new char[base64UrlLength(bytes.length)];
+        encodeBase64Url(bytes, 0, bytes.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Returns the number of characters of the unpadded URL-safe Base64 encoding of the
+     * specified number of bytes.
+     *
+     * @param length
+     *      The number of bytes
+     *
+     * @return
+     *      The number of characters
+     */
+    public static int base64UrlLength(int length) {
+        return (length * 4 + 2) / 3;
+    }
+
+    /**
+     * Encodes a range of bytes as unpadded URL-safe Base64 characters into a buffer.
+     *
+     * @param bytes
+     *      The bytes to encode
+     *
+     * @param offset
+     *      The offset of the range
+     *
+     * @param length
+     *      The length of the range
+     *
+     * @param out
+     *      The buffer receiving the characters
+     *
+     * @param outOffset
+     *      The offset of the characters in the buffer
+     *
+     * @return
+     *      The number of characters written
+     */
+    public static int encodeBase64Url(byte[] bytes, int offset, int length, char[] out, int outOffset) {
+        return encode(BASE64_URL, false, bytes, offset, length, out, outOffset);
+    }
+
+    /**
+     * Decodes a range of URL-safe Base64 characters into a buffer. The padding is optional.
+     *
+     * @param text
+     *      The characters to decode
+     *
+     * @param start
+     *      The index of the first character
+     *
+     * @param end
+     *      The index after the last character
+     *
+     * @param out
+     *      The buffer receiving the bytes, at least 3 bytes for every 4 characters
+     *
+     * @param outOffset
+     *      The offset of the bytes in the buffer
+     *
+     * @return
+     *      The number of bytes written, or -1 if the text is not URL-safe Base64
+     */
+    public static int decodeBase64Url(CharSequence text, int start, int end, byte[] out, int outOffset) {
+        return decode(BASE64_URL_VALUES, text, start, end, out, outOffset);
+    }
+
+    private static int encode(char[] alphabet, boolean padding, byte[] bytes, int offset, int length,
+                              char[] out, int outOffset) {
+        checkRange(bytes, offset, length);
+        checkNotNull(out, "out cannot be null");
+        int encoded = padding ? base64Length(length) : base64UrlLength(length);
+        checkArgument(outOffset >= 0 && outOffset <= out.length - encoded, "buffer is too short");
+
+        int end = offset + length;
+        int i = offset;
+        for (; i + 2 < end; i += 3) {
+            int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+            out[outOffset++] = alphabet[bits >>> 18];
+            out[outOffset++] = alphabet[(bits >>> 12) & 0x3f];
+            out[outOffset++] = alphabet[(bits >>> 6) & 0x3f];
+            out[outOffset++] = alphabet[bits & 0x3f];
+        }
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (bytes[i] & 0xff) << 16 | (remaining == 2 ? (bytes[i + 1] & 0xff) << 8 : 0);
+            out[outOffset++] = alphabet[bits >>> 18];
+            out[outOffset++] = alphabet[(bits >>> 12) & 0x3f];
+            if (remaining == 2) {
+                out[outOffset++] = alphabet[(bits >>> 6) & 0x3f];
+            } else if (padding) {
+                out[outOffset++] = '=';
+            }
+            if (padding) {
+                out[outOffset] = '=';
+            }
+        }
+        return encoded;
+    }
+
+    private static int decode(int[] values, CharSequence text, int start, int end, byte[] out, int outOffset) {
+        checkNotNull(text, "text cannot be null");
+        checkNotNull(out, "out cannot be null");
+        checkArgument(start >= 0 && start <= end && end <= text.length(), "invalid range");
+
+        // Strips up to two padding characters, which must complete the last unit
+        int padding = 0;
+        while (padding < 2 && end > start && text.charAt(end - 1) == '=') {
+            end--;
+            padding++;
+        }
+        int length = end - start;
+        int remainder = length & 3;
+        if (remainder == 1 || (padding > 0 && remainder + padding != 4)) return -1;
+
+        int decoded = length / 4 * 3 + (remainder == 0 ? 0 : remainder - 1);
+        checkArgument(outOffset >= 0 && outOffset <= out.length - decoded, "buffer is too short");
+
+        int i = start;
+        for (; i + 3 < end; i += 4) {
+            int bits = base64Value(values, text.charAt(i)) << 18 | base64Value(values, text.charAt(i + 1)) << 12
+                    | base64Value(values, text.charAt(i + 2)) << 6 | base64Value(values, text.charAt(i + 3));
+
+            if (bits < 0) return -1;
+
+            out[outOffset++] = (byte) (bits >>> 16);
+            out[outOffset++] = (byte) (bits >>> 8);
+            out[outOffset++] = (byte) bits;
+        }
+        if (remainder > 0) {
+            int bits = base64Value(values, text.charAt(i)) << 18 | base64Value(values, text.charAt(i + 1)) << 12
+                    | (remainder == 3 ? base64Value(values, text.charAt(i + 2)) << 6 : 0);
+
+            if (bits < 0) return -1;
+
+            out[outOffset++] = (byte) (bits >>> 16);
+            if (remainder == 3) {
+                out[outOffset] = (byte) (bits >>> 8);
+            }
+        }
+        return decoded;
+    }
+
+    private static int hexValue(char c) {
+        return c < 128 ? HEX_VALUES[c] : -1;
+    }
+
+    /**
+     * Returns the value of a Base64 character, or -1 if it is invalid, which keeps a unit
+     * negative whatever its position.
+     */
+    private static int base64Value(int[] values, char c) {
+        return c < 128 ? values[c] : -1;
+    }
+
+    private static void checkRange(byte[] bytes, int offset, int length) {
+        checkNotNull(bytes, "bytes cannot be null");
+        checkArgument(offset >= 0 && length >= 0 && offset <= bytes.length - length, "invalid range");
+    }
+
+    private ByteEncoding() {
+        throw new UnsupportedOperationException("This class cannot be instantiated");
+    }
+}
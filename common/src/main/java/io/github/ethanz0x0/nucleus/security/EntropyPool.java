@@ -0,0 +1,204 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * A utility class generating random bytes for salts and tokens, without contention
+ * between threads.
+ * <p>
+ * A shared {@link SecureRandom} serializes its callers, so each thread owns a
+ * deterministic random bit generator instead, seeded from the system source when the
+ * thread first needs it: the SHA-256 DRBG of the JDK when available, otherwise SHA1PRNG.
+ * Generators produce bytes in bulk into a buffer of their thread, which small requests
+ * such as salts are served from, and they mix in fresh seed material from the system
+ * source after every megabyte of output. Served bytes are wiped from the buffer.
+ * <p>
+ * Usage example:
+ * <pre>{@code
+ * byte[] salt = EntropyPool.nextSalt(16);
+ * String token = EntropyPool.newToken(32);
+ * }</pre>
+ */
+public final class EntropyPool {
+
+    private static final int BUFFER_SIZE = 512;
+
+    private static final int SEED_LENGTH = 32;
+
+    private static final long RESEED_INTERVAL = 1 << 20;
+
+    /**
+     * The system source, which seeds the generators of the threads.
+     */
+    private static final SecureRandom SYSTEM = new SecureRandom();
+
+    private static final ThreadLocal<Generator> GENERATOR = ThreadLocal.withInitial(Generator::new);
+
+    /**
+     * Fills an array with random bytes.
+     *
+     * @param bytes
+     *      The array to fill
+     */
+    public static void nextBytes(byte[] bytes) {
+        checkNotNull(bytes, "bytes cannot be null");
+
+        GENERATOR.get().next(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Fills a range of an array with random bytes.
+     *
+     * @param bytes
+     *      The array to fill
+     *
+     * @param offset
+     *      The offset of the range
+     *
+     * @param length
+     *      The length of the range
+     */
+    public static void nextBytes(byte[] bytes, int offset, int length) {
+        checkNotNull(bytes, "bytes cannot be null");
+        checkArgument(offset >= 0 && length >= 0 && offset <= bytes.length - length, "invalid range");
+
+        GENERATOR.get().next(bytes, offset, length);
+    }
+
+    /**
+     * Generates a random salt.
+     *
+     * @param length
+     *      The length in bytes of the salt
+     *
+     * @return
+     *      The salt
+     */
+    public static byte[] nextSalt(int length) {
+        checkArgument(length > 0, "length must be larger than 0");
+
+        byte[] salt = new byte[length];
+        GENERATOR.get().next(salt, 0, length);
+        return salt;
+    }
+
+    /**
+     * Generates a random token encoded as unpadded URL-safe Base64, suitable for URLs,
+     * headers and file names. Tokens are meant to be stored as {@link TokenHasher} hashes.
+     *
+     * @param bytes
+     *      The number of random bytes of the token, at least 16
+     *
+     * @return
+     *      The token
+     */
+    public static String newToken(int bytes) {
+        checkArgument(bytes >= 16, "token must have at least 16 bytes");
+
+        Generator generator = GENERATOR.get();
+        if (bytes > BUFFER_SIZE / 2) {
+            byte[] random = new byte[bytes];
+            generator.next(random, 0, bytes);
+            return ByteEncoding.toBase64Url(random);
+        }
+
+        // Encodes straight from the buffer of the thread, so only the token is allocated
+        int offset = generator.reserve(bytes);
+        int length = ByteEncoding.base64UrlLength(bytes);
+        char[] chars = generator.chars;
+        ByteEncoding.encodeBase64Url(generator.buffer, offset, bytes, chars, 0);
+        Arrays.fill(generator.buffer, offset, offset + bytes, (byte) 0);
+        String token = new String(chars, 0, length);
+        Arrays.fill(chars, 0, length, '\0');
+        return token;
+    }
+
+    private static SecureRandom newRandom() {
+        SecureRandom random;
+        try {
+            // Available since Java 9
+            random = SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            try {
+                random = SecureRandom.getInstance("SHA1PRNG");
+            } catch (NoSuchAlgorithmException ex) {
+                return new SecureRandom();
+            }
+        }
+        byte[] seed = new byte[SEED_LENGTH];
+        SYSTEM.nextBytes(seed);
+        // Seeds SHA1PRNG before its first use, and adds to the entropy of DRBG
+        random.setSeed(seed);
+        return random;
+    }
+
+    /**
+     * The generator of a thread.
+     */
+    private static final class Generator {
+
+        final SecureRandom random = newRandom();
+
+        final byte[] buffer = new byte[BUFFER_SIZE];
+
+        final char[] chars = new char[ByteEncoding.base64UrlLength(BUFFER_SIZE / 2)];
+
+        /**
+         * The index of the first unserved byte of the buffer.
+         */
+        int position = BUFFER_SIZE;
+
+        long generated;
+
+        void next(byte[] bytes, int offset, int length) {
+            if (length > BUFFER_SIZE / 2) {
+                generate(bytes, offset, length);
+                return;
+            }
+            int start = reserve(length);
+            System.arraycopy(buffer, start, bytes, offset, length);
+            Arrays.fill(buffer, start, start + length, (byte) 0);
+        }
+
+        /**
+         * Ensures the buffer holds at least the specified number of unserved bytes, marks
+         * them as served and returns their index.
+         */
+        int reserve(int length) {
+            if (BUFFER_SIZE - position < length) {
+                generate(buffer, 0, BUFFER_SIZE);
+                position = 0;
+            }
+            int start = position;
+            position += length;
+            return start;
+        }
+
+        private void generate(byte[] bytes, int offset, int length) {
+            if (generated >= RESEED_INTERVAL) {
+                byte[] seed = new byte[SEED_LENGTH];
+                SYSTEM.nextBytes(seed);
+                random.setSeed(seed);
+                generated = 0;
+            }
+            if (offset == 0 && length == bytes.length) {
+                random.nextBytes(bytes);
+            } else {
+                byte[] random = new byte[length];
+                this.random.nextBytes(random);
+                System.arraycopy(random, 0, bytes, offset, length);
+                Arrays.fill(random, (byte) 0);
+            }
+            generated += length;
+        }
+    }
+
+    private EntropyPool() {
+        throw new UnsupportedOperationException("This class cannot be instantiated");
+    }
+}
@@ -0,0 +1,193 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * Runs the batch operations of the hashers on a fork/join pool. A batch is split into
+ * ranges of items computed by the workers, each reusing the digest of its own thread.
+ * <p>
+ * Batches run in the background and complete their future when every item is computed.
+ * Cancelling the future stops the ranges not started yet. The progress callback receives
+ * the number of items computed so far after each range. It is called by the workers
+ * concurrently, and the counts may arrive out of order.
+ */
+final class HashingBatch {
+
+    /**
+     * The number of items of a range, a multiple of 64 so that each range of a test owns
+     * whole words of the result.
+     */
+    private static final int RANGE_SIZE = 64;
+
+    /**
+     * Checks whether each value matches the stored hash at the same index, with the
+     * matcher of a hasher.
+     *
+     * @return
+     *      A future completed with the set of the indexes of the matching values
+     */
+    static CompletableFuture<BitSet> matchesAll(List<? extends CharSequence> values,
+                                                List<? extends CharSequence> stored,
+                                                BiPredicate<CharSequence, CharSequence> matcher,
+                                                ForkJoinPool pool, IntConsumer progress) {
+        checkNotNull(values, "values cannot be null");
+        checkNotNull(stored, "stored cannot be null");
+        checkNotNull(pool, "pool cannot be null");
+        checkArgument(values.size() == stored.size(), "values and stored hashes must have the same size");
+
+        // Snapshots the lists, and gives random access to the workers
+        CharSequence[] valueArray = values.toArray(new CharSequence[0]);
+        CharSequence[] storedArray = stored.toArray(new CharSequence[0]);
+        return test(valueArray.length, i -> matcher.test(valueArray[i], storedArray[i]), pool, progress);
+    }
+
+    /**
+     * Hashes each value with the hash function of a hasher.
+     *
+     * @return
+     *      A future completed with the hashes, in the order of the values
+     */
+    static CompletableFuture<List<String>> hashAll(List<? extends CharSequence> values,
+                                                   Function<CharSequence, String> hasher,
+                                                   ForkJoinPool pool, IntConsumer progress) {
+        checkNotNull(values, "values cannot be null");
+        checkNotNull(pool, "pool cannot be null");
+
+        CharSequence[] valueArray = values.toArray(new CharSequence[0]);
+        return map(valueArray.length, i -> hasher.apply(valueArray[i]), pool, progress);
+    }
+
+    /**
+     * Tests every item of a batch.
+     *
+     * @return
+     *      A future completed with the set of the indexes of the items which passed
+     */
+    private static CompletableFuture<BitSet> test(int size, IntPredicate predicate, ForkJoinPool pool, IntConsumer progress) {
+        long[] words = new long[(size + 63) >>> 6];
+        return run(size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                if (predicate.test(i)) {
+                    words[i >>> 6] |= 1L << i;
+                }
+            }
+        }, () -> BitSet.valueOf(words), pool, progress);
+    }
+
+    /**
+     * Computes a result for every item of a batch.
+     *
+     * @return
+     *      A future completed with the results, in the order of the items
+     */
+    private static <R> CompletableFuture<List<R>> map(int size, IntFunction<R> function, ForkJoinPool pool, IntConsumer progress) {
+        Object[] results = new Object[size];
+        return run(size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                results[i] = function.apply(i);
+            }
+        }, () -> {
+            @SuppressWarnings("unchecked")
+            List<R> list = (List<R>) Arrays.asList(results);
+            return list;
+        }, pool, progress);
+    }
+
+    private static <T> CompletableFuture<T> run(int size, Range range, Supplier<T> result, ForkJoinPool pool,
+                                                IntConsumer progress) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (size == 0) {
+            future.complete(result.get());
+            return future;
+        }
+
+        AtomicInteger completed = new AtomicInteger();
+        pool.execute(ForkJoinTask.adapt(() -> {
+            try {
+                new RangeTask(range, future, completed, progress, 0, size).invoke();
+                future.complete(result.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }));
+        return future;
+    }
+
+    @FunctionalInterface
+    private interface Range {
+
+        void compute(int from, int to);
+    }
+
+    /**
+     * Computes a range of items, splitting it between workers.
+     */
+    private static final class RangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Range range;
+
+        private final CompletableFuture<?> future;
+
+        private final AtomicInteger completed;
+
+        private final IntConsumer progress;
+
+        private final int from;
+
+        private final int to;
+
+        RangeTask(Range range, CompletableFuture<?> future, AtomicInteger completed, IntConsumer progress,
+                  int from, int to) {
+            this.range = range;
+            this.future = future;
+            this.completed = completed;
+            this.progress = progress;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            // Cancelled, or failed in another range
+            if (future.isDone()) return;
+
+            if (to - from > RANGE_SIZE) {
+                int ranges = (to - from + RANGE_SIZE - 1) / RANGE_SIZE;
+                int middle = from + ranges / 2 * RANGE_SIZE;
+                invokeAll(
+                        new RangeTask(range, future, completed, progress, from, middle),
+                        new RangeTask(range, future, completed, progress, middle, to)
+                );
+                return;
+            }
+
+            range.compute(from, to);
+            int count = completed.addAndGet(to - from);
+            if (progress != null) {
+                progress.accept(count);
+            }
+        }
+    }
+
+    private HashingBatch() {
+        throw new UnsupportedOperationException("This class cannot be instantiated");
+    }
+}
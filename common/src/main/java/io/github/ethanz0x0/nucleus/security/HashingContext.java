@@ -0,0 +1,294 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The hashing state of a thread, shared by the hashers of this package: a SHA-256 digest,
+ * a HMAC-SHA256 instance initialized with the last secret used, and scratch buffers for
+ * encoding text and digests.
+ * <p>
+ * The context does not keep a copy of the last secret, only its SHA-256 digest to detect
+ * when the secret changes. The HMAC instance itself holds key material derived from the
+ * last secret until the thread ends or uses another secret, like any cached instance.
+ * <p>
+ * A context is only used by its thread, and never across a call which may hash again, so
+ * each buffer is free when a public method starts. Hashers reading streams call code which
+ * may hash again, so they use their own digest and take the read buffers out of the
+ * context while they read.
+ */
+final class HashingContext {
+
+    static final int DIGEST_LENGTH = 32;
+
+    static final int SALT_LENGTH = 16;
+
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final ThreadLocal<HashingContext> CONTEXT = ThreadLocal.withInitial(HashingContext::new);
+
+    final MessageDigest sha256;
+
+    /**
+     * Receives digests.
+     */
+    final byte[] digest = new byte[DIGEST_LENGTH];
+
+    /**
+     * Receives decoded digests, with room for a digest encoded with an extra character.
+     */
+    final byte[] expected = new byte[DIGEST_LENGTH + 3];
+
+    /**
+     * Receives generated salts.
+     */
+    final byte[] salt = new byte[SALT_LENGTH];
+
+    /**
+     * Receives encoded digests and hashes.
+     */
+    final char[] chars = new char[128];
+
+    private final byte[] utf8 = new byte[1024];
+
+    private byte[] scratch = new byte[64];
+
+    private byte[] streamBuffer;
+
+    private ByteBuffer directBuffer;
+
+    private Mac hmac;
+
+    /**
+     * The SHA-256 digest of the secret of the HMAC instance, valid if the instance is keyed.
+     */
+    private final byte[] hmacKeyDigest = new byte[DIGEST_LENGTH];
+
+    /**
+     * Receives the digest of the secret passed to {@link #hmac(byte[], int)}.
+     */
+    private final byte[] keyDigest = new byte[DIGEST_LENGTH];
+
+    private boolean hmacKeyed;
+
+    private int next;
+
+    private HashingContext() {
+        this.sha256 = newSha256();
+    }
+
+    static HashingContext get() {
+        return CONTEXT.get();
+    }
+
+    /**
+     * Returns a new SHA-256 digest, for callers which cannot share the digest of the thread.
+     */
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the SHA-256 digest of this thread, reset.
+     */
+    MessageDigest sha256() {
+        sha256.reset();
+        return sha256;
+    }
+
+    /**
+     * Completes a SHA-256 digest into the digest buffer.
+     */
+    void finish(MessageDigest digest) {
+        try {
+            digest.digest(this.digest, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Completes a HMAC-SHA256 into the digest buffer.
+     */
+    void finish(Mac mac) {
+        try {
+            mac.doFinal(this.digest, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the HMAC-SHA256 instance of this thread, reset and initialized with the
+     * specified secret. The key is only set up again when the digest of the secret changes.
+     */
+    Mac hmac(byte[] secret, int length) {
+        try {
+            if (hmac == null) {
+                hmac = Mac.getInstance(HMAC_ALGORITHM);
+            }
+            MessageDigest digest = sha256();
+            digest.update(secret, 0, length);
+            digest.digest(keyDigest, 0, DIGEST_LENGTH);
+            if (!hmacKeyed || !HmacSigner.constantTimeEquals(hmacKeyDigest, 0, keyDigest, 0, DIGEST_LENGTH)) {
+                hmacKeyed = false;
+                if (length == 0) {
+                    // Rejected like the keys of the JCE, which cannot be empty
+                    throw new IllegalArgumentException("Empty key");
+                }
+                hmac.init(new SecretKeySpec(secret, 0, length, HMAC_ALGORITHM));
+                System.arraycopy(keyDigest, 0, hmacKeyDigest, 0, DIGEST_LENGTH);
+                hmacKeyed = true;
+            } else {
+                hmac.reset();
+            }
+            return hmac;
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the HMAC-SHA256 instance of this thread, initialized with a secret encoded as
+     * UTF-8.
+     */
+    Mac hmac(CharSequence secret) {
+        byte[] bytes = scratch(secret.length() * 3);
+        int length = 0;
+        int start = 0;
+        while (start < secret.length()) {
+            int written = encode(secret, start);
+            System.arraycopy(utf8, 0, bytes, length, written);
+            length += written;
+            start = next;
+        }
+        Mac mac = hmac(bytes, length);
+        Arrays.fill(bytes, 0, length, (byte) 0);
+        return mac;
+    }
+
+    /**
+     * Returns a scratch buffer of at least the specified length.
+     */
+    byte[] scratch(int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        return scratch;
+    }
+
+    /**
+     * Takes the buffer of this thread for reading streams, until it is given back by
+     * {@link #release(byte[])}. A stream hashing again while it is read gets a new buffer.
+     */
+    byte[] takeStreamBuffer() {
+        byte[] buffer = streamBuffer;
+        streamBuffer = null;
+        return buffer == null ? new byte[STREAM_BUFFER_SIZE] : buffer;
+    }
+
+    void release(byte[] buffer) {
+        streamBuffer = buffer;
+    }
+
+    /**
+     * Takes the direct buffer of this thread for reading channels, until it is given back by
+     * {@link #release(ByteBuffer)}. A channel hashing again while it is read gets a new buffer.
+     */
+    ByteBuffer takeDirectBuffer() {
+        ByteBuffer buffer = directBuffer;
+        directBuffer = null;
+        return buffer == null ? ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE) : buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        directBuffer = buffer;
+    }
+
+    /**
+     * Updates a digest with text encoded as UTF-8, like {@link String#getBytes(java.nio.charset.Charset)}.
+     */
+    void update(MessageDigest digest, CharSequence value) {
+        int start = 0;
+        while (start < value.length()) {
+            digest.update(utf8, 0, encode(value, start));
+            start = next;
+        }
+    }
+
+    /**
+     * Updates a HMAC with text encoded as UTF-8, like {@link String#getBytes(java.nio.charset.Charset)}.
+     */
+    void update(Mac mac, CharSequence value) {
+        int start = 0;
+        while (start < value.length()) {
+            mac.update(utf8, 0, encode(value, start));
+            start = next;
+        }
+    }
+
+    /**
+     * Encodes characters as UTF-8 into the UTF-8 buffer until it is full, starting at the
+     * specified index, and returns the number of bytes written. The index of the next
+     * character to encode is stored in the next field. Unpaired surrogates are replaced by
+     * question marks.
+     */
+    private int encode(CharSequence value, int start) {
+        byte[] out = utf8;
+        int length = value.length();
+        int position = 0;
+        int i = start;
+        while (i < length && position <= out.length - 4) {
+            char c = value.charAt(i++);
+            if (c < 0x80) {
+                out[position++] = (byte) c;
+            } else if (c < 0x800) {
+                out[position++] = (byte) (0xc0 | c >> 6);
+                out[position++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i < length && Character.isLowSurrogate(value.charAt(i))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(i++));
+                    out[position++] = (byte) (0xf0 | codePoint >> 18);
+                    out[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                    out[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                    out[position++] = (byte) (0x80 | codePoint & 0x3f);
+                } else {
+                    out[position++] = '?';
+                }
+            } else {
+                out[position++] = (byte) (0xe0 | c >> 12);
+                out[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                out[position++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        next = i;
+        return position;
+    }
+
+    /**
+     * Compares characters with a range of text in a time which does not depend on their
+     * content.
+     */
+    static boolean constantTimeEquals(char[] chars, int length, CharSequence text) {
+        if (text.length() != length) return false;
+
+        int difference = 0;
+        for (int i = 0; i < length; i++) {
+            difference |= chars[i] ^ text.charAt(i);
+        }
+        return difference == 0;
+    }
+}
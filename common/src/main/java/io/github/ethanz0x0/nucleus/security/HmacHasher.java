@@ -1,67 +1,114 @@
 package io.github.ethanz0x0.nucleus.security;
 
 import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.util.Base64;
+import java.nio.ByteBuffer;
 
 import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
 
 /**
  * A utility class for creating and verifying HMAC signatures.
+ * <p>
+ * Signatures are HMAC-SHA256 tags encoded in Base64. Each thread reuses its own
+ * {@link Mac}, whose key is only set up again when the secret changes, so signing
+ * repeatedly with the same secret creates no garbage beyond the returned string. A
+ * {@link HmacSigner} is faster when the secret is fixed.
  */
 public final class HmacHasher {
 
-    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_LENGTH = ByteEncoding.base64Length(HashingContext.DIGEST_LENGTH);
 
     /**
      * Creates a HMAC signature.
      *
      * @param value
-     *      The value to sign
+     *      The value to sign, encoded as UTF-8
      *
      * @param secret
-     *      The secret key
+     *      The secret key, encoded as UTF-8
+     *
+     * @return
+     *      The generated signature
+     */
+    public static String hash(CharSequence value, CharSequence secret) {
+        checkNotNull(value, "value cannot be null");
+        checkNotNull(secret, "secret cannot be null");
+
+        HashingContext context = HashingContext.get();
+        Mac mac = context.hmac(secret);
+        context.update(mac, value);
+        return encode(context, mac);
+    }
+
+    /**
+     * Creates a HMAC signature. Kept for callers compiled against the String signature.
+     *
+     * @param value
+     *      The value to sign, encoded as UTF-8
+     *
+     * @param secret
+     *      The secret key, encoded as UTF-8
      *
      * @return
      *      The generated signature
      */
     public static String hash(String value, String secret) {
+        return hash((CharSequence) value, (CharSequence) secret);
+    }
+
+    /**
+     * Creates a HMAC signature.
+     *
+     * @param value
+     *      The bytes to sign
+     *
+     * @param secret
+     *      The secret key
+     *
+     * @return
+     *      The generated signature
+     */
+    public static String hash(byte[] value, byte[] secret) {
         checkNotNull(value, "value cannot be null");
         checkNotNull(secret, "secret cannot be null");
 
-        try {
-            Mac mac = Mac.getInstance(ALGORITHM);
-
-            mac.init(
-                    new SecretKeySpec(
-                            secret.getBytes(StandardCharsets.UTF_8),
-                            ALGORITHM
-                    )
-            );
-
-            return Base64.getEncoder()
-                    .encodeToString(
-                            mac.doFinal(
-                                    value.getBytes(StandardCharsets.UTF_8)
-                            )
-                    );
-
-        } catch (Exception e) {
-            throw new IllegalStateException(e);
-        }
+        HashingContext context = HashingContext.get();
+        Mac mac = context.hmac(secret, secret.length);
+        mac.update(value);
+        return encode(context, mac);
     }
 
     /**
-     * Checks whether a value matches a HMAC signature.
+     * Creates a HMAC signature of the remaining bytes of a buffer, and moves its position
+     * to its limit.
      *
      * @param value
-     *      The original value
+     *      The bytes to sign
      *
      * @param secret
      *      The secret key
      *
+     * @return
+     *      The generated signature
+     */
+    public static String hash(ByteBuffer value, byte[] secret) {
+        checkNotNull(value, "value cannot be null");
+        checkNotNull(secret, "secret cannot be null");
+
+        HashingContext context = HashingContext.get();
+        Mac mac = context.hmac(secret, secret.length);
+        mac.update(value);
+        return encode(context, mac);
+    }
+
+    /**
+     * Checks whether a value matches a HMAC signature.
+     *
+     * @param value
+     *      The original value, encoded as UTF-8
+     *
+     * @param secret
+     *      The secret key, encoded as UTF-8
+     *
      * @param signature
      *      The stored signature
      *
@@ -69,22 +116,106 @@ public final class HmacHasher {
      *      True if the signature matches
      */
     public static boolean matches(
-            String value,
-            String secret,
-            String signature
+            CharSequence value,
+            CharSequence secret,
+            CharSequence signature
     ) {
         if (value == null || secret == null || signature == null) {
             return false;
         }
 
-        return MessageDigest.isEqual(
-                hash(value, secret)
-                        .getBytes(StandardCharsets.UTF_8),
-                signature.getBytes(StandardCharsets.UTF_8)
-        );
+        HashingContext context = HashingContext.get();
+        Mac mac = context.hmac(secret);
+        context.update(mac, value);
+        return check(context, mac, signature);
+    }
+
+    /**
+     * Checks whether a value matches a HMAC signature. Kept for callers compiled against the
+     * String signature.
+     *
+     * @param value
+     *      The original value, encoded as UTF-8
+     *
+     * @param secret
+     *      The secret key, encoded as UTF-8
+     *
+     * @param signature
+     *      The stored signature
+     *
+     * @return
+     *      True if the signature matches
+     */
+    public static boolean matches(String value, String secret, String signature) {
+        return matches((CharSequence) value, (CharSequence) secret, (CharSequence) signature);
+    }
+
+    /**
+     * Checks whether bytes match a HMAC signature.
+     *
+     * @param value
+     *      The original bytes
+     *
+     * @param secret
+     *      The secret key
+     *
+     * @param signature
+     *      The stored signature
+     *
+     * @return
+     *      True if the signature matches
+     */
+    public static boolean matches(byte[] value, byte[] secret, CharSequence signature) {
+        if (value == null || secret == null || signature == null) {
+            return false;
+        }
+
+        HashingContext context = HashingContext.get();
+        Mac mac = context.hmac(secret, secret.length);
+        mac.update(value);
+        return check(context, mac, signature);
+    }
+
+    /**
+     * Checks whether the remaining bytes of a buffer match a HMAC signature, and moves the
+     * position of the buffer to its limit.
+     *
+     * @param value
+     *      The original bytes
+     *
+     * @param secret
+     *      The secret key
+     *
+     * @param signature
+     *      The stored signature
+     *
+     * @return
+     *      True if the signature matches
+     */
+    public static boolean matches(ByteBuffer value, byte[] secret, CharSequence signature) {
+        if (value == null || secret == null || signature == null) {
+            return false;
+        }
+
+        HashingContext context = HashingContext.get();
+        Mac mac = context.hmac(secret, secret.length);
+        mac.update(value);
+        return check(context, mac, signature);
+    }
+
+    private static String encode(HashingContext context, Mac mac) {
+        context.finish(mac);
+        ByteEncoding.encodeBase64(context.digest, 0, HashingContext.DIGEST_LENGTH, context.chars, 0);
+        return new String(context.chars, 0, SIGNATURE_LENGTH);
+    }
+
+    private static boolean check(HashingContext context, Mac mac, CharSequence signature) {
+        context.finish(mac);
+        ByteEncoding.encodeBase64(context.digest, 0, HashingContext.DIGEST_LENGTH, context.chars, 0);
+        return HashingContext.constantTimeEquals(context.chars, SIGNATURE_LENGTH, signature);
     }
 
     private HmacHasher() {
         throw new UnsupportedOperationException("This class cannot be instantiated");
     }
-}
\ No newline at end of file
+}
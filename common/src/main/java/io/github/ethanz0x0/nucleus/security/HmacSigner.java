@@ -0,0 +1,445 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * A HMAC-SHA256 signer bound to a single secret, for signing many messages with the same key.
+ * <p>
+ * Unlike {@link HmacHasher}, the provider lookup and the key setup happen once per thread
+ * instead of once per call: each thread keeps its own initialized {@link Mac}, so signing
+ * and verifying from any thread runs without locking. Signatures are raw 32 byte arrays,
+ * and can be written into a buffer of the caller, so a signed message costs no allocation.
+ * Large payloads can be signed incrementally with {@link #newUpdate()}.
+ * <p>
+ * Usage example:
+ * <pre>{@code
+ * HmacSigner signer = new HmacSigner(secret);
+ * signer.sign(message, packet, offset);
+ * ...
+ * boolean valid = signer.verify(message, packet, offset);
+ * }</pre>
+ */
+public final class HmacSigner {
+
+    /**
+     * The length in bytes of a signature.
+     */
+    public static final int SIGNATURE_LENGTH = 32;
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+
+    private final ThreadLocal<State> state;
+
+    /**
+     * Creates a signer with a secret encoded as UTF-8.
+     *
+     * @param secret
+     *      The secret key
+     */
+    public HmacSigner(String secret) {
+        this(checkNotNull(secret, "secret cannot be null").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a signer. The secret is copied.
+     *
+     * @param secret
+     *      The secret key
+     */
+    public HmacSigner(byte[] secret) {
+        checkNotNull(secret, "secret cannot be null");
+        checkArgument(secret.length > 0, "secret cannot be empty");
+
+        SecretKeySpec key = new SecretKeySpec(secret, ALGORITHM);
+        this.key = key;
+        // The states must not reference this signer, or they would keep it reachable
+        this.state = ThreadLocal.withInitial(() -> new State(newMac(key)));
+        // Fails fast if the algorithm is missing
+        newMac(key);
+    }
+
+    /**
+     * Signs a message.
+     *
+     * @param data
+     *      The message
+     *
+     * @return
+     *      The signature
+     */
+    public byte[] sign(byte[] data) {
+        checkNotNull(data, "data cannot be null");
+
+        return state.get().mac.doFinal(data);
+    }
+
+    /**
+     * Signs a message and writes the signature into the specified buffer.
+     *
+     * @param data
+     *      The message
+     *
+     * @param out
+     *      The buffer receiving the signature
+     *
+     * @param offset
+     *      The offset of the signature in the buffer
+     *
+     * @return
+     *      The length of the signature
+     */
+    public int sign(byte[] data, byte[] out, int offset) {
+        checkNotNull(data, "data cannot be null");
+
+        return sign(data, 0, data.length, out, offset);
+    }
+
+    /**
+     * Signs a range of a message and writes the signature into the specified buffer.
+     *
+     * @param data
+     *      The message
+     *
+     * @param dataOffset
+     *      The offset of the range
+     *
+     * @param length
+     *      The length of the range
+     *
+     * @param out
+     *      The buffer receiving the signature
+     *
+     * @param offset
+     *      The offset of the signature in the buffer
+     *
+     * @return
+     *      The length of the signature
+     */
+    public int sign(byte[] data, int dataOffset, int length, byte[] out, int offset) {
+        checkNotNull(data, "data cannot be null");
+        checkOutput(out, offset);
+
+        Mac mac = state.get().mac;
+        mac.update(data, dataOffset, length);
+        return doFinal(mac, out, offset);
+    }
+
+    /**
+     * Signs the remaining bytes of a buffer, and writes the signature into the specified
+     * buffer. The position of the data buffer is moved to its limit.
+     *
+     * @param data
+     *      The message
+     *
+     * @param out
+     *      The buffer receiving the signature
+     *
+     * @param offset
+     *      The offset of the signature in the buffer
+     *
+     * @return
+     *      The length of the signature
+     */
+    public int sign(ByteBuffer data, byte[] out, int offset) {
+        checkNotNull(data, "data cannot be null");
+        checkOutput(out, offset);
+
+        Mac mac = state.get().mac;
+        mac.update(data);
+        return doFinal(mac, out, offset);
+    }
+
+    /**
+     * Checks in constant time whether a signature matches a message.
+     *
+     * @param data
+     *      The message
+     *
+     * @param signature
+     *      The signature
+     *
+     * @return
+     *      True if the signature matches
+     */
+    public boolean verify(byte[] data, byte[] signature) {
+        if (data == null || signature == null || signature.length != SIGNATURE_LENGTH) return false;
+
+        return verify(data, 0, data.length, signature, 0);
+    }
+
+    /**
+     * Checks in constant time whether the signature at the specified offset of a buffer
+     * matches a message.
+     *
+     * @param data
+     *      The message
+     *
+     * @param signature
+     *      The buffer holding the signature
+     *
+     * @param offset
+     *      The offset of the signature in the buffer
+     *
+     * @return
+     *      True if the signature matches
+     */
+    public boolean verify(byte[] data, byte[] signature, int offset) {
+        if (data == null) return false;
+
+        return verify(data, 0, data.length, signature, offset);
+    }
+
+    /**
+     * Checks in constant time whether the signature at the specified offset of a buffer
+     * matches a range of a message.
+     *
+     * @param data
+     *      The message
+     *
+     * @param dataOffset
+     *      The offset of the range
+     *
+     * @param length
+     *      The length of the range
+     *
+     * @param signature
+     *      The buffer holding the signature
+     *
+     * @param offset
+     *      The offset of the signature in the buffer
+     *
+     * @return
+     *      True if the signature matches
+     */
+    public boolean verify(byte[] data, int dataOffset, int length, byte[] signature, int offset) {
+        if (data == null || !fits(signature, offset)) return false;
+
+        State state = this.state.get();
+        state.mac.update(data, dataOffset, length);
+        doFinal(state.mac, state.scratch, 0);
+        return constantTimeEquals(state.scratch, 0, signature, offset, SIGNATURE_LENGTH);
+    }
+
+    /**
+     * Checks in constant time whether the signature at the specified offset of a buffer
+     * matches the remaining bytes of a data buffer. The position of the data buffer is moved
+     * to its limit.
+     *
+     * @param data
+     *      The message
+     *
+     * @param signature
+     *      The buffer holding the signature
+     *
+     * @param offset
+     *      The offset of the signature in the buffer
+     *
+     * @return
+     *      True if the signature matches
+     */
+    public boolean verify(ByteBuffer data, byte[] signature, int offset) {
+        if (data == null || !fits(signature, offset)) return false;
+
+        State state = this.state.get();
+        state.mac.update(data);
+        doFinal(state.mac, state.scratch, 0);
+        return constantTimeEquals(state.scratch, 0, signature, offset, SIGNATURE_LENGTH);
+    }
+
+    /**
+     * Creates an incremental signature, for messages which are not available at once. The
+     * update owns its own initialized {@link Mac}, and can be reused after each signature.
+     *
+     * @return
+     *      A new update
+     */
+    public Update newUpdate() {
+        return new Update(newMac(key));
+    }
+
+    /**
+     * Compares two ranges of bytes in a time which does not depend on their content.
+     */
+    static boolean constantTimeEquals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int difference = 0;
+        for (int i = 0; i < length; i++) {
+            difference |= a[aOffset + i] ^ b[bOffset + i];
+        }
+        return difference == 0;
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int doFinal(Mac mac, byte[] out, int offset) {
+        try {
+            mac.doFinal(out, offset);
+            return SIGNATURE_LENGTH;
+        } catch (ShortBufferException e) {
+            throw new IllegalArgumentException("buffer is too short for the signature", e);
+        }
+    }
+
+    private static boolean fits(byte[] buffer, int offset) {
+        return buffer != null && offset >= 0 && offset <= buffer.length - SIGNATURE_LENGTH;
+    }
+
+    private static void checkOutput(byte[] out, int offset) {
+        checkNotNull(out, "out cannot be null");
+        checkArgument(fits(out, offset), "buffer is too short for the signature");
+    }
+
+    /**
+     * An incremental signature. An update is not thread safe.
+     */
+    public static final class Update {
+
+        private final Mac mac;
+
+        private final byte[] scratch = new byte[SIGNATURE_LENGTH];
+
+        private Update(Mac mac) {
+            this.mac = mac;
+        }
+
+        /**
+         * Appends bytes to the message.
+         *
+         * @param data
+         *      The bytes to append
+         *
+         * @return
+         *      This update
+         */
+        public Update update(byte[] data) {
+            checkNotNull(data, "data cannot be null");
+
+            mac.update(data);
+            return this;
+        }
+
+        /**
+         * Appends a range of bytes to the message.
+         *
+         * @param data
+         *      The buffer holding the bytes
+         *
+         * @param offset
+         *      The offset of the range
+         *
+         * @param length
+         *      The length of the range
+         *
+         * @return
+         *      This update
+         */
+        public Update update(byte[] data, int offset, int length) {
+            checkNotNull(data, "data cannot be null");
+
+            mac.update(data, offset, length);
+            return this;
+        }
+
+        /**
+         * Appends the remaining bytes of a buffer to the message, and moves its position to
+         * its limit.
+         *
+         * @param data
+         *      The buffer holding the bytes
+         *
+         * @return
+         *      This update
+         */
+        public Update update(ByteBuffer data) {
+            checkNotNull(data, "data cannot be null");
+
+            mac.update(data);
+            return this;
+        }
+
+        /**
+         * Writes the signature of the message into the specified buffer, and resets this
+         * update for a new message.
+         *
+         * @param out
+         *      The buffer receiving the signature
+         *
+         * @param offset
+         *      The offset of the signature in the buffer
+         *
+         * @return
+         *      The length of the signature
+         */
+        public int sign(byte[] out, int offset) {
+            checkOutput(out, offset);
+
+            return doFinal(mac, out, offset);
+        }
+
+        /**
+         * Returns the signature of the message, and resets this update for a new message.
+         *
+         * @return
+         *      The signature
+         */
+        public byte[] sign() {
+            return mac.doFinal();
+        }
+
+        /**
+         * Checks in constant time whether a signature matches the message, and resets this
+         * update for a new message.
+         *
+         * @param signature
+         *      The buffer holding the signature
+         *
+         * @param offset
+         *      The offset of the signature in the buffer
+         *
+         * @return
+         *      True if the signature matches
+         */
+        public boolean verify(byte[] signature, int offset) {
+            doFinal(mac, scratch, 0);
+            boolean valid = fits(signature, offset) && constantTimeEquals(scratch, 0, signature, offset, SIGNATURE_LENGTH);
+            Arrays.fill(scratch, (byte) 0);
+            return valid;
+        }
+
+        /**
+         * Discards the bytes appended since the last signature.
+         */
+        public void reset() {
+            mac.reset();
+        }
+    }
+
+    private static final class State {
+
+        final Mac mac;
+
+        final byte[] scratch = new byte[SIGNATURE_LENGTH];
+
+        State(Mac mac) {
+            this.mac = mac;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * A replay-protection cache rejecting the nonces seen within a sliding window of time, for
+ * signed messages such as the ones between servers.
+ * <p>
+ * The window is split into time buckets which rotate as time passes, the oldest bucket
+ * being cleared at once instead of expiring its nonces one by one. Each bucket holds a
+ * bloom filter, which proves most nonces new with a few bit tests, and a table of 64-bit
+ * fingerprints of its nonces, only searched when the filter reports a possible match. Both
+ * have a fixed size derived from the expected number of nonces per window, so the memory of
+ * the cache is constant. Fingerprints are computed with a key random to each cache, so
+ * crafted nonces cannot collide on purpose.
+ * <p>
+ * A nonce is remembered for at least the window, and the cache cannot reject a replay
+ * arriving after that: messages must carry a signed timestamp, checked with
+ * {@link #checkAndRecord(byte[], long)}. Timestamps are accepted from the window in the
+ * past up to a small clock skew in the future, and nonces are remembered for the window
+ * plus the skew, so a future-dated message cannot be replayed once its nonce is forgotten
+ * while its timestamp is still accepted. Each bucket holds as many nonces as expected within
+ * a whole window, so bursts fit; when a bucket is full, further nonces are rejected until
+ * it rotates, so a flood cannot evict the nonces which protect against replays.
+ * <p>
+ * Since each of the four buckets is sized for a whole window, the cache takes between 69
+ * and 133 bytes per expected nonce, allocated up front: about 69 MiB for the maximum of
+ * 2^20 expected nonces.
+ * <p>
+ * Usage example:
+ * <pre>{@code
+ * NonceCache nonces = new NonceCache(30, TimeUnit.SECONDS, 100000);
+ * if (!signer.verify(message, tag, 0) || !nonces.checkAndRecord(nonce, timestamp)) {
+ *     // Reject the message
+ * }
+ * }</pre>
+ */
+public final class NonceCache {
+
+    private static final int BUCKETS = 4;
+
+    private static final int HASHES = 7;
+
+    private static final int BITS_PER_NONCE = 10;
+
+    /**
+     * The maximum number of expected nonces, which bounds the memory of a cache.
+     */
+    private static final int MAXIMUM_EXPECTED_NONCES = 1 << 20;
+
+    /**
+     * The default tolerance in milliseconds for timestamps ahead of the local clock.
+     */
+    public static final long DEFAULT_CLOCK_SKEW = 2000L;
+
+    private final long windowMillis;
+
+    private final long skewMillis;
+
+    private final long spanMillis;
+
+    private final byte[] key = EntropyPool.nextSalt(16);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by the lock
+    private final Bucket[] buckets = new Bucket[BUCKETS];
+
+    // Guarded by the lock
+    private int current;
+
+    // Guarded by the lock
+    private long currentStart;
+
+    private final LongAdder replays = new LongAdder();
+
+    private final LongAdder overflows = new LongAdder();
+
+    /**
+     * Creates a nonce cache tolerating timestamps {@link #DEFAULT_CLOCK_SKEW} milliseconds
+     * ahead of the local clock, or the window if it is shorter.
+     *
+     * @param window
+     *      The minimum time a nonce is remembered
+     *
+     * @param unit
+     *      The unit of the window
+     *
+     * @param expectedNonces
+     *      The expected number of nonces within a window, at most 2^20
+     */
+    public NonceCache(long window, TimeUnit unit, int expectedNonces) {
+        this(window, unit, expectedNonces, Math.min(unit.convert(DEFAULT_CLOCK_SKEW, TimeUnit.MILLISECONDS), window));
+    }
+
+    /**
+     * Creates a nonce cache.
+     *
+     * @param window
+     *      The maximum age of a timestamp, and the minimum time a nonce is remembered
+     *
+     * @param unit
+     *      The unit of the window and of the clock skew
+     *
+     * @param expectedNonces
+     *      The expected number of nonces within a window, at most 2^20
+     *
+     * @param clockSkew
+     *      The maximum time a timestamp may be ahead of the local clock, at most the window
+     */
+    public NonceCache(long window, TimeUnit unit, int expectedNonces, long clockSkew) {
+        checkNotNull(unit, "unit cannot be null");
+        checkArgument(window > 0, "window must be larger than 0");
+        checkArgument(clockSkew >= 0 && clockSkew <= window, "clock skew must be between 0 and the window");
+        checkArgument(expectedNonces > 0 && expectedNonces <= MAXIMUM_EXPECTED_NONCES,
+                "expected nonces must be between 1 and 2^20");
+
+        this.windowMillis = unit.toMillis(window);
+        this.skewMillis = unit.toMillis(clockSkew);
+        checkArgument(windowMillis >= BUCKETS - 1, "window must be at least 3 ms");
+        // The buckets before the current one cover at least the window and the skew, the
+        // time a future-dated timestamp stays accepted
+        this.spanMillis = (windowMillis + skewMillis + BUCKETS - 2) / (BUCKETS - 1);
+
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new Bucket(expectedNonces);
+        }
+        this.currentStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Records a nonce, unless it was already recorded within the window.
+     *
+     * @param nonce
+     *      The nonce
+     *
+     * @return
+     *      True if the nonce is new, false if it is a replay or if the cache is full
+     */
+    public boolean checkAndRecord(byte[] nonce) {
+        checkNotNull(nonce, "nonce cannot be null");
+
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = context.sha256();
+        digest.update(key);
+        digest.update(nonce);
+        return record(context, digest, System.currentTimeMillis());
+    }
+
+    /**
+     * Records a nonce, unless it was already recorded within the window.
+     *
+     * @param nonce
+     *      The nonce, encoded as UTF-8
+     *
+     * @return
+     *      True if the nonce is new, false if it is a replay or if the cache is full
+     */
+    public boolean checkAndRecord(CharSequence nonce) {
+        checkNotNull(nonce, "nonce cannot be null");
+
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = context.sha256();
+        digest.update(key);
+        context.update(digest, nonce);
+        return record(context, digest, System.currentTimeMillis());
+    }
+
+    /**
+     * Records the nonce of a message, unless the timestamp of the message is older than the
+     * window or further ahead than the clock skew, or the nonce was already recorded within
+     * the window.
+     *
+     * @param nonce
+     *      The nonce
+     *
+     * @param timestamp
+     *      The signed timestamp of the message, in epoch milliseconds
+     *
+     * @return
+     *      True if the message is fresh and its nonce is new
+     */
+    public boolean checkAndRecord(byte[] nonce, long timestamp) {
+        checkNotNull(nonce, "nonce cannot be null");
+
+        long now = System.currentTimeMillis();
+        if (timestamp < now - windowMillis || timestamp > now + skewMillis) {
+            return false;
+        }
+
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = context.sha256();
+        digest.update(key);
+        digest.update(nonce);
+        return record(context, digest, now);
+    }
+
+    /**
+     * Returns the number of replays rejected.
+     *
+     * @return
+     *      The replay count
+     */
+    public long getReplayCount() {
+        return replays.sum();
+    }
+
+    /**
+     * Returns the number of nonces rejected because their bucket was full.
+     *
+     * @return
+     *      The overflow count
+     */
+    public long getOverflowCount() {
+        return overflows.sum();
+    }
+
+    private boolean record(HashingContext context, MessageDigest digest, long now) {
+        context.finish(digest);
+        long fingerprint = readLong(context.digest, 0);
+        long hash = readLong(context.digest, 8);
+        if (fingerprint == 0) {
+            // Zero marks the empty slots of the tables
+            fingerprint = 1;
+        }
+
+        lock.lock();
+        try {
+            rotate(now);
+            for (Bucket bucket : buckets) {
+                if (bucket.mightContain(hash) && bucket.contains(fingerprint)) {
+                    replays.increment();
+                    return false;
+                }
+            }
+            if (!buckets[current].add(fingerprint, hash)) {
+                overflows.increment();
+                return false;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Clears the buckets whose span ended, and moves the current bucket forward.
+     */
+    private void rotate(long now) {
+        long elapsed = now - currentStart;
+        if (elapsed < spanMillis) {
+            return;
+        }
+        long steps = elapsed / spanMillis;
+        // Past a full turn every bucket is cleared, their order no longer matters
+        for (long i = 0; i < Math.min(steps, BUCKETS); i++) {
+            current = (current + 1) % BUCKETS;
+            buckets[current].clear();
+        }
+        currentStart += steps * spanMillis;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * The nonces of a span of time.
+     */
+    private static final class Bucket {
+
+        private final long[] bits;
+
+        private final long bitCount;
+
+        private final long[] table;
+
+        private final int capacity;
+
+        private int size;
+
+        Bucket(int capacity) {
+            this.capacity = capacity;
+            this.bits = new long[(int) (((long) capacity * BITS_PER_NONCE + 63) / 64)];
+            this.bitCount = bits.length * 64L;
+            // The smallest power of two keeping the table at most half full
+            this.table = new long[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        }
+
+        boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < HASHES; i++) {
+                long bit = ((h1 + i * h2) & 0xffffffffL) % bitCount;
+                if ((bits[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean contains(long fingerprint) {
+            int mask = table.length - 1;
+            for (int slot = (int) mix(fingerprint) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                if (table[slot] == fingerprint) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean add(long fingerprint, long hash) {
+            if (size == capacity) {
+                return false;
+            }
+            int mask = table.length - 1;
+            int slot = (int) mix(fingerprint) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = fingerprint;
+            size++;
+
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < HASHES; i++) {
+                long bit = ((h1 + i * h2) & 0xffffffffL) % bitCount;
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            return true;
+        }
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(bits, 0L);
+                Arrays.fill(table, 0L);
+                size = 0;
+            }
+        }
+
+        private static long mix(long value) {
+            return value ^ (value >>> 32);
+        }
+    }
+}
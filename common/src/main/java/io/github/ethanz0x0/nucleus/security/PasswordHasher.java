@@ -1,28 +1,109 @@
 package io.github.ethanz0x0.nucleus.security;
 
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.concurrent.TimeUnit;
 
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
 import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
 
 /**
  * A utility class for securely hashing and verifying passwords.
  * <p>
- * This class uses PBKDF2WithHmacSHA256 with a random salt.
+ * This class uses PBKDF2WithHmacSHA256 with a random salt, computed by an in-library
+ * implementation which produces the same hashes as the JCE.
+ * <p>
+ * Hashes are encoded as {@code $pbkdf2-sha256$v=1$i=<iterations>,l=<key length>$<salt>$<digest>},
+ * with the salt and digest in Base64, so the cost can be raised without invalidating the
+ * stored hashes. Hashes of the legacy {@code <salt>:<digest>} format, derived with 120000
+ * iterations, are still accepted.
+ * <p>
+ * Usage example:
+ * <pre>{@code
+ * PasswordHasher.setIterations(PasswordHasher.calibrate(100, TimeUnit.MILLISECONDS));
+ * ...
+ * if (PasswordHasher.matches(password, stored) && PasswordHasher.needsRehash(stored)) {
+ *     stored = PasswordHasher.hash(password);
+ * }
+ * }</pre>
  */
 public final class PasswordHasher {
 
-    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final String PREFIX = "$pbkdf2-sha256$v=1$";
 
     private static final int SALT_LENGTH = 16;
 
-    private static final int ITERATIONS = 120000;
+    private static final int LEGACY_ITERATIONS = 120000;
+
+    private static final int MINIMUM_ITERATIONS = 10000;
+
+    private static final int CALIBRATION_ITERATIONS = 20000;
 
     private static final int KEY_LENGTH = 256;
 
+    private static volatile int iterations = LEGACY_ITERATIONS;
+
+    /**
+     * Sets the number of iterations of the new hashes, defaults to 120000. Stored hashes
+     * derived with fewer iterations are reported by {@link #needsRehash(String)}.
+     *
+     * @param iterations
+     *      The number of iterations, at least 10000
+     */
+    public static void setIterations(int iterations) {
+        checkArgument(iterations >= MINIMUM_ITERATIONS, "iterations must be at least 10000");
+
+        PasswordHasher.iterations = iterations;
+    }
+
+    /**
+     * Returns the number of iterations of the new hashes.
+     *
+     * @return
+     *      The number of iterations
+     */
+    public static int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Measures the speed of this machine and returns the number of iterations which makes
+     * the verification of a password take about the specified time. The result is at least
+     * 10000, and is rounded to a multiple of 1000.
+     *
+     * @param target
+     *      The target verification time
+     *
+     * @param unit
+     *      The unit of the target time
+     *
+     * @return
+     *      The calibrated number of iterations
+     */
+    public static int calibrate(long target, TimeUnit unit) {
+        checkArgument(target > 0, "target must be larger than 0");
+        checkNotNull(unit, "unit cannot be null");
+
+        byte[] password = "calibration".getBytes(StandardCharsets.UTF_8);
+        byte[] salt = new byte[SALT_LENGTH];
+
+        // The first run warms up the compiler, the fastest of the next runs is kept
+        Pbkdf2.deriveSha256(password, salt, CALIBRATION_ITERATIONS, KEY_LENGTH / 8);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            Pbkdf2.deriveSha256(password, salt, CALIBRATION_ITERATIONS, KEY_LENGTH / 8);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        double perIteration = (double) Math.max(1L, best) / CALIBRATION_ITERATIONS;
+        double calibrated = unit.toNanos(target) / perIteration;
+        long rounded = Math.round(calibrated / 1000) * 1000;
+        return (int) Math.max(MINIMUM_ITERATIONS, Math.min(Integer.MAX_VALUE / 1000 * 1000, rounded));
+    }
+
     /**
      * Creates a password hash.
      *
@@ -35,12 +116,13 @@ public final class PasswordHasher {
     public static String hash(String password) {
         checkNotNull(password, "password cannot be null");
 
-        byte[] salt = new byte[SALT_LENGTH];
-        RANDOM.nextBytes(salt);
+        int iterations = PasswordHasher.iterations;
 
-        byte[] digest = derive(password, salt);
+        byte[] salt = EntropyPool.nextSalt(SALT_LENGTH);
 
-        return encode(salt) + ":" + encode(digest);
+        byte[] digest = derive(password, salt, iterations, KEY_LENGTH / 8);
+
+        return PREFIX + "i=" + iterations + ",l=" + KEY_LENGTH + "$" + encode(salt) + "$" + encode(digest);
     }
 
     /**
@@ -58,38 +140,44 @@ public final class PasswordHasher {
     public static boolean matches(String password, String stored) {
         if (password == null || stored == null) return false;
 
-        int separator = stored.indexOf(':');
+        Parameters parameters = Parameters.parse(stored);
 
-        if (separator < 0) return false;
+        if (parameters == null) return false;
 
-        try {
-            byte[] salt = decode(stored.substring(0, separator));
-            byte[] expected = decode(stored.substring(separator + 1));
+        byte[] actual = derive(password, parameters.salt, parameters.iterations, parameters.digest.length);
 
-            byte[] actual = derive(password, salt);
+        return MessageDigest.isEqual(parameters.digest, actual);
+    }
 
-            return MessageDigest.isEqual(expected, actual);
-        } catch (IllegalArgumentException e) {
-            return false;
-        }
+    /**
+     * Checks whether the stored hash should be replaced by a new hash of the password, because
+     * it uses the legacy format, fewer iterations than the current setting, or another key
+     * length. This is meant to be called after a successful {@link #matches(String, String)},
+     * when the raw password is known.
+     *
+     * @param stored
+     *      The stored password hash
+     *
+     * @return
+     *      True if the hash should be upgraded, or if it cannot be parsed
+     */
+    public static boolean needsRehash(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) return true;
+
+        Parameters parameters = Parameters.parse(stored);
+
+        if (parameters == null) return true;
+
+        return parameters.iterations < iterations || parameters.digest.length != KEY_LENGTH / 8;
     }
 
-    private static byte[] derive(String password, byte[] salt) {
+    private static byte[] derive(String password, byte[] salt, int iterations, int length) {
+        byte[] bytes = password.getBytes(StandardCharsets.UTF_8);
+
         try {
-            PBEKeySpec spec = new PBEKeySpec(
-                    password.toCharArray(),
-                    salt,
-                    ITERATIONS,
-                    KEY_LENGTH
-            );
-
-            return SecretKeyFactory
-                    .getInstance("PBKDF2WithHmacSHA256")
-                    .generateSecret(spec)
-                    .getEncoded();
-
-        } catch (Exception e) {
-            throw new IllegalStateException(e);
+            return Pbkdf2.deriveSha256(bytes, salt, iterations, length);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
         }
     }
 
@@ -101,6 +189,67 @@ public final class PasswordHasher {
         return Base64.getDecoder().decode(value);
     }
 
+    /**
+     * The parameters and digest of a stored hash.
+     */
+    private static final class Parameters {
+
+        final int iterations;
+
+        final byte[] salt;
+
+        final byte[] digest;
+
+        Parameters(int iterations, byte[] salt, byte[] digest) {
+            this.iterations = iterations;
+            this.salt = salt;
+            this.digest = digest;
+        }
+
+        /**
+         * Parses a stored hash of either format, returns null if it is malformed.
+         */
+        static Parameters parse(String stored) {
+            try {
+                if (!stored.startsWith(PREFIX)) {
+                    int separator = stored.indexOf(':');
+
+                    if (separator < 0) return null;
+
+                    byte[] salt = decode(stored.substring(0, separator));
+                    byte[] digest = decode(stored.substring(separator + 1));
+
+                    if (digest.length == 0) return null;
+
+                    return new Parameters(LEGACY_ITERATIONS, salt, digest);
+                }
+
+                int parametersEnd = stored.indexOf('$', PREFIX.length());
+                int saltEnd = parametersEnd < 0 ? -1 : stored.indexOf('$', parametersEnd + 1);
+
+                if (saltEnd < 0) return null;
+
+                int iterations = -1;
+                int keyLength = -1;
+                for (String parameter : stored.substring(PREFIX.length(), parametersEnd).split(",")) {
+                    if (parameter.startsWith("i=")) {
+                        iterations = Integer.parseInt(parameter.substring(2));
+                    } else if (parameter.startsWith("l=")) {
+                        keyLength = Integer.parseInt(parameter.substring(2));
+                    }
+                }
+                byte[] salt = decode(stored.substring(parametersEnd + 1, saltEnd));
+                byte[] digest = decode(stored.substring(saltEnd + 1));
+
+                if (iterations <= 0 || digest.length == 0 || keyLength != digest.length * 8) return null;
+
+                return new Parameters(iterations, salt, digest);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
     private PasswordHasher() {
         throw new UnsupportedOperationException("This class cannot be instantiated");
     }
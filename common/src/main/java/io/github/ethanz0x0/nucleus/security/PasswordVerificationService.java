@@ -0,0 +1,405 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import io.github.ethanz0x0.nucleus.NucleusScheduler;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+
+/**
+ * A service running {@link PasswordHasher} on a dedicated pool of workers, so that the
+ * hashing cost of logins never blocks the threads of the callers.
+ * <p>
+ * The queue of the service is bounded: a request submitted while the queue is full, or
+ * while its caller already has the maximum number of requests waiting, fails immediately
+ * with a {@link RejectedExecutionException} instead of piling up. Requests are grouped by
+ * caller, such as a player or an address, and the workers serve the callers in turn, so a
+ * single caller flooding the service only delays its own requests.
+ * <p>
+ * Usage example:
+ * <pre>{@code
+ * PasswordVerificationService service = new PasswordVerificationService();
+ * service.matchesAsync(player.getUniqueId(), password, stored)
+ *         .thenAccept(matches -> ...);
+ * ...
+ * service.shutdown();
+ * }</pre>
+ */
+public class PasswordVerificationService {
+
+    private static final Object DEFAULT_CALLER = new Object();
+
+    private static final AtomicInteger SERVICE_COUNT = new AtomicInteger();
+
+    private final int queueCapacity;
+
+    private final int callerCapacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    // Guarded by the lock
+    private final Map<Object, ArrayDeque<Request<?>>> queues = new HashMap<>();
+
+    /**
+     * The callers with waiting requests, in the order they are served. Guarded by the lock.
+     */
+    private final ArrayDeque<Object> callers = new ArrayDeque<>();
+
+    // Guarded by the lock
+    private int queued;
+
+    // Guarded by the lock
+    private boolean shutdown;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder started = new LongAdder();
+
+    private final LongAdder totalQueueLatency = new LongAdder();
+
+    private final AtomicLong maxQueueLatency = new AtomicLong();
+
+    /**
+     * Creates a service with a worker per available processor, a queue of 64 requests per
+     * worker and at most 8 waiting requests per caller.
+     */
+    public PasswordVerificationService() {
+        this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors() * 64, 8);
+    }
+
+    /**
+     * Creates a service.
+     *
+     * @param threads
+     *      The number of workers
+     *
+     * @param queueCapacity
+     *      The maximum number of waiting requests
+     *
+     * @param callerCapacity
+     *      The maximum number of waiting requests of a single caller
+     */
+    public PasswordVerificationService(int threads, int queueCapacity, int callerCapacity) {
+        checkArgument(threads > 0, "threads must be larger than 0");
+        checkArgument(queueCapacity > 0, "queue capacity must be larger than 0");
+        checkArgument(callerCapacity > 0, "caller capacity must be larger than 0");
+
+        this.queueCapacity = queueCapacity;
+        this.callerCapacity = callerCapacity;
+
+        // Dedicated threads rather than tasks of the shared executor, since the workers run
+        // until the service is shut down, independently of the runtime
+        ThreadFactory factory = NucleusScheduler.threadFactory("nucleus-password-" + SERVICE_COUNT.incrementAndGet() + "-");
+        for (int i = 0; i < threads; i++) {
+            factory.newThread(this::work).start();
+        }
+    }
+
+    /**
+     * Asynchronously checks whether the specified password matches the stored hash, as a
+     * request of the default caller.
+     *
+     * @param password
+     *      The raw password
+     *
+     * @param stored
+     *      The stored password hash
+     *
+     * @return
+     *      A future completed with true if the password matches, or failed with a
+     *      {@link RejectedExecutionException} if the request was rejected
+     */
+    public CompletableFuture<Boolean> matchesAsync(String password, String stored) {
+        return matchesAsync(null, password, stored);
+    }
+
+    /**
+     * Asynchronously checks whether the specified password matches the stored hash.
+     *
+     * @param caller
+     *      The caller of the request, such as a player id, or null for the default caller
+     *
+     * @param password
+     *      The raw password
+     *
+     * @param stored
+     *      The stored password hash
+     *
+     * @return
+     *      A future completed with true if the password matches, or failed with a
+     *      {@link RejectedExecutionException} if the request was rejected
+     */
+    public CompletableFuture<Boolean> matchesAsync(Object caller, String password, String stored) {
+        return submit(caller, () -> PasswordHasher.matches(password, stored));
+    }
+
+    /**
+     * Asynchronously creates a password hash, as a request of the default caller.
+     *
+     * @param password
+     *      The raw password
+     *
+     * @return
+     *      A future completed with the password hash, or failed with a
+     *      {@link RejectedExecutionException} if the request was rejected
+     */
+    public CompletableFuture<String> hashAsync(String password) {
+        return hashAsync(null, password);
+    }
+
+    /**
+     * Asynchronously creates a password hash.
+     *
+     * @param caller
+     *      The caller of the request, such as a player id, or null for the default caller
+     *
+     * @param password
+     *      The raw password
+     *
+     * @return
+     *      A future completed with the password hash, or failed with a
+     *      {@link RejectedExecutionException} if the request was rejected
+     */
+    public CompletableFuture<String> hashAsync(Object caller, String password) {
+        return submit(caller, () -> PasswordHasher.hash(password));
+    }
+
+    /**
+     * Returns the number of waiting requests.
+     *
+     * @return
+     *      The queue depth
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests being processed.
+     *
+     * @return
+     *      The number of busy workers
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Returns the number of processed requests.
+     *
+     * @return
+     *      The completed count
+     */
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    /**
+     * Returns the number of requests rejected because the queue or the share of their caller
+     * was full.
+     *
+     * @return
+     *      The rejected count
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the average time the started requests waited in the queue.
+     *
+     * @param unit
+     *      The unit of the returned time
+     *
+     * @return
+     *      The average queue latency, or 0 if no request was started
+     */
+    public double getAverageQueueLatency(TimeUnit unit) {
+        long count = started.sum();
+        return count == 0 ? 0 : (double) totalQueueLatency.sum() / count / unit.toNanos(1);
+    }
+
+    /**
+     * Returns the longest time a started request waited in the queue.
+     *
+     * @param unit
+     *      The unit of the returned time
+     *
+     * @return
+     *      The maximum queue latency, or 0 if no request was started
+     */
+    public long getMaxQueueLatency(TimeUnit unit) {
+        return unit.convert(maxQueueLatency.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns whether this service has been shut down.
+     *
+     * @return
+     *      True if the service no longer accepts requests
+     */
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the service. Requests submitted afterwards are rejected, waiting requests are
+     * cancelled, and the workers stop once their current request is processed.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            for (ArrayDeque<Request<?>> queue : queues.values()) {
+                for (Request<?> request : queue) {
+                    request.future.cancel(false);
+                }
+            }
+            queues.clear();
+            callers.clear();
+            queued = 0;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Object caller, Supplier<T> task) {
+        Object key = caller == null ? DEFAULT_CALLER : caller;
+        Request<T> request = new Request<>(task);
+
+        String rejection = null;
+        lock.lock();
+        try {
+            ArrayDeque<Request<?>> queue = queues.get(key);
+            if (shutdown) {
+                rejection = "service has been shut down";
+            } else if (queued >= queueCapacity) {
+                rejection = "queue is full";
+            } else if (queue != null && queue.size() >= callerCapacity) {
+                rejection = "too many requests from caller";
+            } else {
+                if (queue == null) {
+                    queue = new ArrayDeque<>();
+                    queues.put(key, queue);
+                    callers.addLast(key);
+                }
+                queue.addLast(request);
+                queued++;
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (rejection != null) {
+            rejected.increment();
+            request.future.completeExceptionally(new RejectedExecutionException(rejection));
+        }
+        return request.future;
+    }
+
+    private void work() {
+        while (true) {
+            Request<?> request;
+            lock.lock();
+            try {
+                while (queued == 0 && !shutdown) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (shutdown) {
+                    return;
+                }
+                // Takes one request of the next caller, then moves the caller to the back
+                Object caller = callers.pollFirst();
+                ArrayDeque<Request<?>> queue = queues.get(caller);
+                request = queue.pollFirst();
+                if (queue.isEmpty()) {
+                    queues.remove(caller);
+                } else {
+                    callers.addLast(caller);
+                }
+                queued--;
+            } finally {
+                lock.unlock();
+            }
+
+            long latency = System.nanoTime() - request.submitted;
+            totalQueueLatency.add(latency);
+            started.increment();
+            long max;
+            while (latency > (max = maxQueueLatency.get()) && !maxQueueLatency.compareAndSet(max, latency)) {
+                // Retries until the maximum is at least this latency
+            }
+
+            request.run();
+        }
+    }
+
+    private final class Request<T> {
+
+        final Supplier<T> task;
+
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        final long submitted = System.nanoTime();
+
+        Request(Supplier<T> task) {
+            this.task = task;
+        }
+
+        void run() {
+            if (future.isDone()) {
+                return;
+            }
+            T result;
+            active.incrementAndGet();
+            try {
+                result = task.get();
+            } catch (Throwable t) {
+                finish();
+                future.completeExceptionally(t);
+                return;
+            }
+            // Updates the metrics first, so they are up to date when the callbacks run
+            finish();
+            future.complete(result);
+        }
+
+        private void finish() {
+            active.decrementAndGet();
+            completed.increment();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A PBKDF2-HMAC-SHA256 implementation, producing the same keys as the
+ * PBKDF2WithHmacSHA256 algorithm of the JCE.
+ * <p>
+ * The SHA-256 states of the key XORed with the inner and outer pads are computed once per
+ * derivation, then every iteration runs exactly two compressions over preallocated int
+ * arrays: the message of an iteration is the 32 byte output of the previous one, so its
+ * padding is constant and no buffer, digest or key object is created.
+ */
+final class Pbkdf2 {
+
+    private static final int BLOCK_LENGTH = 64;
+
+    private static final int DIGEST_LENGTH = 32;
+
+    /**
+     * The length in bits of the messages hashed by the iterations: a block of pad plus a digest.
+     */
+    private static final int ITERATION_BITS = (BLOCK_LENGTH + DIGEST_LENGTH) * 8;
+
+    private static final int[] IV = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a,
+            0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    private static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    /**
+     * Derives a key.
+     *
+     * @param password
+     *      The password bytes, encoded as UTF-8 for compatibility with the JCE
+     *
+     * @param salt
+     *      The salt
+     *
+     * @param iterations
+     *      The number of iterations
+     *
+     * @param length
+     *      The length in bytes of the derived key
+     *
+     * @return
+     *      The derived key
+     */
+    static byte[] deriveSha256(byte[] password, byte[] salt, int iterations, int length) {
+        byte[] key = password;
+        if (key.length > BLOCK_LENGTH) {
+            key = sha256(key);
+        }
+
+        int[] w = new int[64];
+        int[] inner = new int[8];
+        int[] outer = new int[8];
+        byte[] pad = new byte[BLOCK_LENGTH];
+
+        for (int i = 0; i < BLOCK_LENGTH; i++) {
+            pad[i] = (byte) ((i < key.length ? key[i] : 0) ^ 0x36);
+        }
+        System.arraycopy(IV, 0, inner, 0, 8);
+        load(pad, 0, w);
+        compress(inner, w, inner);
+
+        for (int i = 0; i < BLOCK_LENGTH; i++) {
+            pad[i] = (byte) ((i < key.length ? key[i] : 0) ^ 0x5c);
+        }
+        System.arraycopy(IV, 0, outer, 0, 8);
+        load(pad, 0, w);
+        compress(outer, w, outer);
+        Arrays.fill(pad, (byte) 0);
+
+        int[] u = new int[8];
+        int[] t = new int[8];
+        int[] state = new int[8];
+        byte[] result = new byte[length];
+        int blocks = (length + DIGEST_LENGTH - 1) / DIGEST_LENGTH;
+
+        for (int block = 1; block <= blocks; block++) {
+            first(inner, outer, salt, block, w, state, u);
+            System.arraycopy(u, 0, t, 0, 8);
+
+            for (int i = 1; i < iterations; i++) {
+                // Inner hash of the previous output
+                System.arraycopy(u, 0, w, 0, 8);
+                w[8] = 0x80000000;
+                Arrays.fill(w, 9, 15, 0);
+                w[15] = ITERATION_BITS;
+                compress(inner, w, state);
+
+                // Outer hash of the inner hash
+                System.arraycopy(state, 0, w, 0, 8);
+                w[8] = 0x80000000;
+                Arrays.fill(w, 9, 15, 0);
+                w[15] = ITERATION_BITS;
+                compress(outer, w, u);
+
+                for (int j = 0; j < 8; j++) {
+                    t[j] ^= u[j];
+                }
+            }
+
+            int offset = (block - 1) * DIGEST_LENGTH;
+            for (int j = 0; j < 8 && offset + j * 4 < length; j++) {
+                for (int b = 0; b < 4 && offset + j * 4 + b < length; b++) {
+                    result[offset + j * 4 + b] = (byte) (t[j] >>> (24 - b * 8));
+                }
+            }
+        }
+
+        Arrays.fill(inner, 0);
+        Arrays.fill(outer, 0);
+        Arrays.fill(t, 0);
+        Arrays.fill(u, 0);
+        return result;
+    }
+
+    /**
+     * Computes the first iteration of a block, the HMAC of the salt followed by the block
+     * index, which is the only message of arbitrary length.
+     */
+    private static void first(int[] inner, int[] outer, byte[] salt, int block, int[] w, int[] state, int[] out) {
+        int length = salt.length + 4;
+        int padded = (length + 9 + BLOCK_LENGTH - 1) / BLOCK_LENGTH * BLOCK_LENGTH;
+        byte[] message = Arrays.copyOf(salt, padded);
+        message[salt.length] = (byte) (block >>> 24);
+        message[salt.length + 1] = (byte) (block >>> 16);
+        message[salt.length + 2] = (byte) (block >>> 8);
+        message[salt.length + 3] = (byte) block;
+        message[length] = (byte) 0x80;
+        long bits = (long) (BLOCK_LENGTH + length) * 8;
+        for (int i = 0; i < 8; i++) {
+            message[padded - 1 - i] = (byte) (bits >>> (i * 8));
+        }
+
+        System.arraycopy(inner, 0, state, 0, 8);
+        for (int offset = 0; offset < padded; offset += BLOCK_LENGTH) {
+            load(message, offset, w);
+            compress(state, w, state);
+        }
+
+        System.arraycopy(state, 0, w, 0, 8);
+        w[8] = 0x80000000;
+        Arrays.fill(w, 9, 15, 0);
+        w[15] = ITERATION_BITS;
+        compress(outer, w, out);
+    }
+
+    private static void load(byte[] data, int offset, int[] w) {
+        for (int i = 0; i < 16; i++) {
+            int p = offset + i * 4;
+            w[i] = (data[p] & 0xff) << 24 | (data[p + 1] & 0xff) << 16 | (data[p + 2] & 0xff) << 8 | (data[p + 3] & 0xff);
+        }
+    }
+
+    /**
+     * Runs the SHA-256 compression function over the 16 words of w, starting from the
+     * specified state, and stores the resulting state into out. The state and out may be the
+     * same array. The words 16 to 63 of w are overwritten by the message schedule.
+     */
+    private static void compress(int[] state, int[] w, int[] out) {
+        for (int i = 16; i < 64; i++) {
+            int w15 = w[i - 15];
+            int w2 = w[i - 2];
+            int s0 = Integer.rotateRight(w15, 7) ^ Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+            int s1 = Integer.rotateRight(w2, 17) ^ Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+            w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+        }
+
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        int e = state[4];
+        int f = state[5];
+        int g = state[6];
+        int h = state[7];
+
+        for (int i = 0; i < 64; i++) {
+            int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+            int ch = (e & f) ^ (~e & g);
+            int t1 = h + s1 + ch + K[i] + w[i];
+            int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+            int maj = (a & b) ^ (a & c) ^ (b & c);
+            int t2 = s0 + maj;
+            h = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + t2;
+        }
+
+        out[0] = state[0] + a;
+        out[1] = state[1] + b;
+        out[2] = state[2] + c;
+        out[3] = state[3] + d;
+        out[4] = state[4] + e;
+        out[5] = state[5] + f;
+        out[6] = state[6] + g;
+        out[7] = state[7] + h;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Pbkdf2() {
+        throw new UnsupportedOperationException("This class cannot be instantiated");
+    }
+}
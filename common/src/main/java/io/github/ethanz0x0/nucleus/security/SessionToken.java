@@ -0,0 +1,99 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A session token verified by a {@link SessionTokenCodec}. The fields are read from the
+ * text of the token when they are requested.
+ */
+public final class SessionToken {
+
+    private final String token;
+
+    private final int keyEnd;
+
+    private final int payloadStart;
+
+    private final int payloadEnd;
+
+    private final long issuedAt;
+
+    private final long expiresAt;
+
+    SessionToken(String token, int keyEnd, int payloadStart, int payloadEnd, long issuedAt, long expiresAt) {
+        this.token = token;
+        this.keyEnd = keyEnd;
+        this.payloadStart = payloadStart;
+        this.payloadEnd = payloadEnd;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Returns the id of the key which signed this token.
+     *
+     * @return
+     *      The key id
+     */
+    public String getKeyId() {
+        return token.substring(0, keyEnd);
+    }
+
+    /**
+     * Returns the time this token was issued.
+     *
+     * @return
+     *      The issue time, in epoch milliseconds
+     */
+    public long getIssuedAt() {
+        return issuedAt;
+    }
+
+    /**
+     * Returns the time this token expires.
+     *
+     * @return
+     *      The expiration time, in epoch milliseconds
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Returns the payload of this token.
+     *
+     * @return
+     *      A new array holding the payload
+     */
+    public byte[] getPayload() {
+        byte[] payload = new byte[(payloadEnd - payloadStart) / 4 * 3 + 2];
+        int length = ByteEncoding.decodeBase64Url(token, payloadStart, payloadEnd, payload, 0);
+        if (length < 0) {
+            // Only tokens signed by a registered key reach here
+            throw new IllegalStateException("malformed payload");
+        }
+        return Arrays.copyOf(payload, length);
+    }
+
+    /**
+     * Returns the payload of this token decoded as UTF-8.
+     *
+     * @return
+     *      The payload
+     */
+    public String getPayloadString() {
+        return new String(getPayload(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the text of this token.
+     *
+     * @return
+     *      The token
+     */
+    @Override
+    public String toString() {
+        return token;
+    }
+}
@@ -0,0 +1,356 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * Issues and verifies stateless signed session tokens, so that authenticated requests can
+ * be checked without a storage lookup.
+ * <p>
+ * A token is the text {@code <key id>.<issued at>.<expires at>.<payload>.<tag>}, where the
+ * times are epoch milliseconds in decimal, the payload is URL-safe Base64, and the tag is
+ * the URL-safe Base64 HMAC-SHA256 of everything before it, computed with the secret of the
+ * key id. Tokens are parsed in place: verifying one decodes nothing but its tag, and the
+ * returned {@link SessionToken} only decodes its fields on demand.
+ * <p>
+ * Keys are rotated through their ids: new tokens are signed with the signing key, while
+ * tokens signed with any other registered key still verify until that key is removed.
+ * Revocation, when needed, is left to the caller, for example by rejecting tokens issued
+ * before a point in time.
+ * <p>
+ * Usage example:
+ * <pre>{@code
+ * SessionTokenCodec codec = new SessionTokenCodec("2024-01", secret);
+ * String token = codec.issue(playerId.toString(), 1, TimeUnit.HOURS);
+ * ...
+ * codec.addKey("2024-02", newSecret);
+ * codec.setSigningKey("2024-02");
+ * ...
+ * SessionToken session = codec.verify(token);
+ * if (session != null) {
+ *     UUID playerId = UUID.fromString(session.getPayloadString());
+ * }
+ * }</pre>
+ */
+public final class SessionTokenCodec {
+
+    private static final int MAX_KEY_ID_LENGTH = 32;
+
+    /**
+     * The latest expiration time, the largest number of 18 digits.
+     */
+    private static final long MAX_TIME = 999_999_999_999_999_999L;
+
+    private static final int TAG_LENGTH = ByteEncoding.base64UrlLength(HmacSigner.SIGNATURE_LENGTH);
+
+    /**
+     * The characters which may end a tag: the last character of a tag holds 4 bits of the
+     * signature and 2 unused bits, which must be zero so that each tag has a single text.
+     */
+    private static final String TAG_ENDINGS = "AEIMQUYcgkosw048";
+
+    private final Object lock = new Object();
+
+    private volatile Key[] keys;
+
+    private volatile Key signingKey;
+
+    /**
+     * Creates a codec with an initial signing key.
+     *
+     * @param keyId
+     *      The id of the key, made of at most 32 letters, digits, dashes or underscores
+     *
+     * @param secret
+     *      The secret of the key
+     */
+    public SessionTokenCodec(String keyId, byte[] secret) {
+        Key key = new Key(checkKeyId(keyId), secret);
+        this.keys = new Key[]{key};
+        this.signingKey = key;
+    }
+
+    /**
+     * Registers a key, which verifies tokens, and signs new tokens once it is set as the
+     * signing key. A key with the same id is replaced.
+     *
+     * @param keyId
+     *      The id of the key, made of at most 32 letters, digits, dashes or underscores
+     *
+     * @param secret
+     *      The secret of the key
+     */
+    public void addKey(String keyId, byte[] secret) {
+        Key key = new Key(checkKeyId(keyId), secret);
+
+        synchronized (lock) {
+            Key[] keys = this.keys;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].id.equals(keyId)) {
+                    Key[] replaced = keys.clone();
+                    replaced[i] = key;
+                    if (signingKey == keys[i]) {
+                        signingKey = key;
+                    }
+                    this.keys = replaced;
+                    return;
+                }
+            }
+            Key[] added = Arrays.copyOf(keys, keys.length + 1);
+            added[keys.length] = key;
+            this.keys = added;
+        }
+    }
+
+    /**
+     * Sets the key signing new tokens.
+     *
+     * @param keyId
+     *      The id of a registered key
+     *
+     * @throws IllegalArgumentException
+     *      If no key has this id
+     */
+    public void setSigningKey(String keyId) {
+        checkNotNull(keyId, "key id cannot be null");
+
+        synchronized (lock) {
+            Key key = find(keyId, 0, keyId.length());
+            checkArgument(key != null, "unknown key id");
+            signingKey = key;
+        }
+    }
+
+    /**
+     * Removes a key, the tokens it signed no longer verify.
+     *
+     * @param keyId
+     *      The id of the key
+     *
+     * @return
+     *      True if the key was removed
+     *
+     * @throws IllegalArgumentException
+     *      If the key is the signing key
+     */
+    public boolean removeKey(String keyId) {
+        checkNotNull(keyId, "key id cannot be null");
+
+        synchronized (lock) {
+            checkArgument(!signingKey.id.equals(keyId), "signing key cannot be removed");
+
+            Key[] keys = this.keys;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].id.equals(keyId)) {
+                    Key[] removed = new Key[keys.length - 1];
+                    System.arraycopy(keys, 0, removed, 0, i);
+                    System.arraycopy(keys, i + 1, removed, i, keys.length - i - 1);
+                    this.keys = removed;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Issues a token with a payload encoded as UTF-8.
+     *
+     * @param payload
+     *      The payload, such as a player id
+     *
+     * @param ttl
+     *      The lifetime of the token
+     *
+     * @param unit
+     *      The unit of the lifetime
+     *
+     * @return
+     *      The token
+     */
+    public String issue(String payload, long ttl, TimeUnit unit) {
+        checkNotNull(payload, "payload cannot be null");
+
+        return issue(payload.getBytes(StandardCharsets.UTF_8), ttl, unit);
+    }
+
+    /**
+     * Issues a token.
+     *
+     * @param payload
+     *      The payload
+     *
+     * @param ttl
+     *      The lifetime of the token
+     *
+     * @param unit
+     *      The unit of the lifetime
+     *
+     * @return
+     *      The token
+     */
+    public String issue(byte[] payload, long ttl, TimeUnit unit) {
+        checkNotNull(payload, "payload cannot be null");
+        checkNotNull(unit, "unit cannot be null");
+        checkArgument(ttl > 0, "ttl must be larger than 0");
+
+        Key key = signingKey;
+        long issuedAt = System.currentTimeMillis();
+        long expiresAt = issuedAt + unit.toMillis(ttl);
+        if (expiresAt < issuedAt || expiresAt > MAX_TIME) {
+            expiresAt = MAX_TIME;
+        }
+
+        StringBuilder builder = new StringBuilder(key.id.length() + 40 + ByteEncoding.base64UrlLength(payload.length) + TAG_LENGTH);
+        builder.append(key.id).append('.').append(issuedAt).append('.').append(expiresAt).append('.');
+        builder.append(ByteEncoding.toBase64Url(payload));
+
+        HashingContext context = HashingContext.get();
+        int length = builder.length();
+        byte[] bytes = context.scratch(length);
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) builder.charAt(i);
+        }
+        key.signer.sign(bytes, 0, length, context.digest, 0);
+
+        char[] chars = context.chars;
+        ByteEncoding.encodeBase64Url(context.digest, 0, HmacSigner.SIGNATURE_LENGTH, chars, 0);
+        return builder.append('.').append(chars, 0, TAG_LENGTH).toString();
+    }
+
+    /**
+     * Verifies a token: its key must be registered, its tag must match, and it must not be
+     * expired. The tag is compared in constant time.
+     *
+     * @param token
+     *      The token
+     *
+     * @return
+     *      The verified token, or null if the token is invalid or expired
+     */
+    public SessionToken verify(CharSequence token) {
+        if (token == null) return null;
+
+        int length = token.length();
+        int keyEnd = -1;
+        int issuedEnd = -1;
+        int expiresEnd = -1;
+        int payloadEnd = -1;
+        for (int i = 0; i < length; i++) {
+            char c = token.charAt(i);
+            if (c == '.') {
+                if (payloadEnd >= 0) return null;
+
+                if (keyEnd < 0) {
+                    keyEnd = i;
+                } else if (issuedEnd < 0) {
+                    issuedEnd = i;
+                } else if (expiresEnd < 0) {
+                    expiresEnd = i;
+                } else {
+                    payloadEnd = i;
+                }
+            } else if (c >= 128) {
+                return null;
+            }
+        }
+
+        if (payloadEnd < 0 || length - payloadEnd - 1 != TAG_LENGTH) return null;
+
+        if (TAG_ENDINGS.indexOf(token.charAt(length - 1)) < 0) return null;
+
+        Key key = find(token, 0, keyEnd);
+
+        if (key == null) return null;
+
+        long issuedAt = parseLong(token, keyEnd + 1, issuedEnd);
+        long expiresAt = parseLong(token, issuedEnd + 1, expiresEnd);
+
+        if (issuedAt < 0 || expiresAt < 0) return null;
+
+        HashingContext context = HashingContext.get();
+        if (ByteEncoding.decodeBase64Url(token, payloadEnd + 1, length, context.expected, 0) != HmacSigner.SIGNATURE_LENGTH) {
+            return null;
+        }
+
+        // The signed text is ASCII, each character is a byte
+        byte[] bytes = context.scratch(payloadEnd);
+        for (int i = 0; i < payloadEnd; i++) {
+            bytes[i] = (byte) token.charAt(i);
+        }
+
+        if (!key.signer.verify(bytes, 0, payloadEnd, context.expected, 0)) return null;
+
+        if (System.currentTimeMillis() >= expiresAt) return null;
+
+        return new SessionToken(token.toString(), keyEnd, expiresEnd + 1, payloadEnd, issuedAt, expiresAt);
+    }
+
+    /**
+     * Returns the key whose id is the specified range of text, or null.
+     */
+    private Key find(CharSequence text, int start, int end) {
+        int length = end - start;
+        for (Key key : keys) {
+            String id = key.id;
+            if (id.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && id.charAt(i) == text.charAt(start + i)) {
+                i++;
+            }
+            if (i == length) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a non-negative decimal number from a range of text, returns -1 if it is malformed.
+     */
+    private static long parseLong(CharSequence text, int start, int end) {
+        if (start >= end || end - start > 18) return -1;
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+
+            if (c < '0' || c > '9') return -1;
+
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static String checkKeyId(String keyId) {
+        checkNotNull(keyId, "key id cannot be null");
+        checkArgument(!keyId.isEmpty() && keyId.length() <= MAX_KEY_ID_LENGTH, "key id must have 1 to 32 characters");
+        for (int i = 0; i < keyId.length(); i++) {
+            char c = keyId.charAt(i);
+            checkArgument(c < 128 && (Character.isLetterOrDigit(c) || c == '-' || c == '_'),
+                    "key id must be made of letters, digits, dashes or underscores");
+        }
+        return keyId;
+    }
+
+    private static final class Key {
+
+        final String id;
+
+        final HmacSigner signer;
+
+        Key(String id, byte[] secret) {
+            checkNotNull(secret, "secret cannot be null");
+            checkArgument(secret.length >= 16, "secret must have at least 16 bytes");
+
+            this.id = id;
+            this.signer = new HmacSigner(secret);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package io.github.ethanz0x0.nucleus.security;
 
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 
 import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
 
@@ -12,36 +14,113 @@ import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
  * A utility class for creating and verifying salted SHA-256 hashes.
  * <p>
  * This class adds a random salt before hashing to prevent rainbow table attacks.
+ * <p>
+ * Hashes are encoded as {@code <salt>:<digest>} in Base64. Each thread reuses its own
+ * digest and buffers, so hashing a value creates no garbage beyond the returned string,
+ * and verifying one creates none.
  */
 public final class Sha256Hasher {
 
-    private static final SecureRandom RANDOM = new SecureRandom();
-
-    private static final int SALT_LENGTH = 16;
+    private static final int SALT_LENGTH = HashingContext.SALT_LENGTH;
 
     /**
      * Creates a salted SHA-256 hash.
      *
      * @param value
-     *      The value to hash
+     *      The value to hash, encoded as UTF-8
+     *
+     * @return
+     *      The generated hash
+     */
+    public static String hash(CharSequence value) {
+        checkNotNull(value, "value cannot be null");
+
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = salted(context);
+        context.update(digest, value);
+        return encode(context, digest);
+    }
+
+    /**
+     * Creates a salted SHA-256 hash. Kept for callers compiled against the String signature.
+     *
+     * @param value
+     *      The value to hash, encoded as UTF-8
      *
      * @return
      *      The generated hash
      */
     public static String hash(String value) {
+        return hash((CharSequence) value);
+    }
+
+    /**
+     * Creates a salted SHA-256 hash.
+     *
+     * @param value
+     *      The bytes to hash
+     *
+     * @return
+     *      The generated hash
+     */
+    public static String hash(byte[] value) {
         checkNotNull(value, "value cannot be null");
 
-        byte[] salt = new byte[SALT_LENGTH];
-        RANDOM.nextBytes(salt);
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = salted(context);
+        digest.update(value);
+        return encode(context, digest);
+    }
+
+    /**
+     * Creates a salted SHA-256 hash of the remaining bytes of a buffer, and moves its
+     * position to its limit.
+     *
+     * @param value
+     *      The bytes to hash
+     *
+     * @return
+     *      The generated hash
+     */
+    public static String hash(ByteBuffer value) {
+        checkNotNull(value, "value cannot be null");
 
-        return encode(salt) + ":" + encode(digest(value, salt));
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = salted(context);
+        digest.update(value);
+        return encode(context, digest);
     }
 
     /**
      * Checks whether a value matches the stored hash.
      *
      * @param value
-     *      The raw value
+     *      The raw value, encoded as UTF-8
+     *
+     * @param stored
+     *      The stored hash
+     *
+     * @return
+     *      True if the value matches
+     */
+    public static boolean matches(CharSequence value, CharSequence stored) {
+        if (value == null || stored == null) return false;
+
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = parse(context, stored);
+
+        if (digest == null) return false;
+
+        context.update(digest, value);
+        return check(context, digest);
+    }
+
+    /**
+     * Checks whether a value matches the stored hash. Kept for callers compiled against the
+     * String signature.
+     *
+     * @param value
+     *      The raw value, encoded as UTF-8
      *
      * @param stored
      *      The stored hash
@@ -50,50 +129,201 @@ public final class Sha256Hasher {
      *      True if the value matches
      */
     public static boolean matches(String value, String stored) {
+        return matches((CharSequence) value, (CharSequence) stored);
+    }
+
+    /**
+     * Checks whether a value matches the stored hash.
+     *
+     * @param value
+     *      The raw bytes
+     *
+     * @param stored
+     *      The stored hash
+     *
+     * @return
+     *      True if the value matches
+     */
+    public static boolean matches(byte[] value, CharSequence stored) {
         if (value == null || stored == null) return false;
 
-        int separator = stored.indexOf(':');
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = parse(context, stored);
 
-        if (separator < 0) return false;
+        if (digest == null) return false;
 
-        try {
-            byte[] salt = decode(stored.substring(0, separator));
-            byte[] expected = decode(stored.substring(separator + 1));
+        digest.update(value);
+        return check(context, digest);
+    }
 
-            return MessageDigest.isEqual(
-                    expected,
-                    digest(value, salt)
-            );
+    /**
+     * Checks whether the remaining bytes of a buffer match the stored hash. The position of
+     * the buffer is moved to its limit if the stored hash is well formed.
+     *
+     * @param value
+     *      The raw bytes
+     *
+     * @param stored
+     *      The stored hash
+     *
+     * @return
+     *      True if the value matches
+     */
+    public static boolean matches(ByteBuffer value, CharSequence stored) {
+        if (value == null || stored == null) return false;
 
-        } catch (IllegalArgumentException e) {
-            return false;
-        }
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = parse(context, stored);
+
+        if (digest == null) return false;
+
+        digest.update(value);
+        return check(context, digest);
     }
 
-    private static byte[] digest(String value, byte[] salt) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
+    /**
+     * Checks in the background whether each value matches the stored hash at the same
+     * index, on the common pool.
+     *
+     * @param values
+     *      The values, encoded as UTF-8
+     *
+     * @param stored
+     *      The stored hashes
+     *
+     * @return
+     *      A future completed with the set of the indexes of the matching values
+     */
+    public static CompletableFuture<BitSet> matchesAll(List<? extends CharSequence> values,
+                                                       List<? extends CharSequence> stored) {
+        return matchesAll(values, stored, ForkJoinPool.commonPool(), null);
+    }
 
-            md.update(salt);
+    /**
+     * Checks in the background whether each value matches the stored hash at the same
+     * index. The values are split into ranges verified in parallel on the specified pool,
+     * each worker reusing its own digest. Cancelling the future stops the ranges not
+     * started yet.
+     *
+     * @param values
+     *      The values, encoded as UTF-8
+     *
+     * @param stored
+     *      The stored hashes
+     *
+     * @param pool
+     *      The pool verifying the values
+     *
+     * @param progress
+     *      The callback receiving the number of values verified so far, or null. It is
+     *      called by the workers after each range, concurrently and possibly out of order,
+     *      so it must be thread safe and may see a count smaller than a previous one
+     *
+     * @return
+     *      A future completed with the set of the indexes of the matching values
+     */
+    public static CompletableFuture<BitSet> matchesAll(List<? extends CharSequence> values,
+                                                       List<? extends CharSequence> stored,
+                                                       ForkJoinPool pool, IntConsumer progress) {
+        return HashingBatch.matchesAll(values, stored, Sha256Hasher::matches, pool, progress);
+    }
 
-            return md.digest(
-                    value.getBytes(StandardCharsets.UTF_8)
-            );
+    /**
+     * Creates a salted SHA-256 hash of each value in the background, on the common pool.
+     *
+     * @param values
+     *      The values, encoded as UTF-8
+     *
+     * @return
+     *      A future completed with the hashes, in the order of the values
+     */
+    public static CompletableFuture<List<String>> hashAll(List<? extends CharSequence> values) {
+        return hashAll(values, ForkJoinPool.commonPool(), null);
+    }
 
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(e);
-        }
+    /**
+     * Creates a salted SHA-256 hash of each value in the background. The values are split into
+     * ranges hashed in parallel on the specified pool, each worker reusing its own digest.
+     * Cancelling the future stops the ranges not started yet.
+     *
+     * @param values
+     *      The values, encoded as UTF-8
+     *
+     * @param pool
+     *      The pool hashing the values
+     *
+     * @param progress
+     *      The callback receiving the number of values hashed so far, or null. It is
+     *      called by the workers after each range, concurrently and possibly out of order,
+     *      so it must be thread safe and may see a count smaller than a previous one
+     *
+     * @return
+     *      A future completed with the hashes, in the order of the values
+     */
+    public static CompletableFuture<List<String>> hashAll(List<? extends CharSequence> values,
+                                                          ForkJoinPool pool, IntConsumer progress) {
+        return HashingBatch.hashAll(values, Sha256Hasher::hash, pool, progress);
     }
 
-    private static String encode(byte[] data) {
-        return Base64.getEncoder().encodeToString(data);
+    /**
+     * Generates a salt into the salt buffer, and returns the digest updated with it.
+     */
+    private static MessageDigest salted(HashingContext context) {
+        byte[] salt = context.salt;
+        EntropyPool.nextBytes(salt);
+
+        MessageDigest digest = context.sha256();
+        digest.update(salt, 0, SALT_LENGTH);
+        return digest;
+    }
+
+    /**
+     * Encodes the salt in the salt buffer and the completed digest.
+     */
+    private static String encode(HashingContext context, MessageDigest digest) {
+        context.finish(digest);
+
+        char[] chars = context.chars;
+        int length = ByteEncoding.encodeBase64(context.salt, 0, SALT_LENGTH, chars, 0);
+        chars[length++] = ':';
+        length += ByteEncoding.encodeBase64(context.digest, 0, HashingContext.DIGEST_LENGTH, chars, length);
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Decodes the digest of a stored hash into the expected buffer, and returns the digest
+     * updated with its salt, or null if the stored hash is malformed.
+     */
+    private static MessageDigest parse(HashingContext context, CharSequence stored) {
+        int separator = -1;
+        for (int i = 0; i < stored.length(); i++) {
+            if (stored.charAt(i) == ':') {
+                separator = i;
+                break;
+            }
+        }
+
+        // A digest is encoded with 43 or 44 characters
+        if (separator < 0 || stored.length() - separator - 1 > ByteEncoding.base64Length(HashingContext.DIGEST_LENGTH)) return null;
+
+        if (ByteEncoding.decodeBase64(stored, separator + 1, stored.length(), context.expected, 0) != HashingContext.DIGEST_LENGTH) return null;
+
+        byte[] salt = context.scratch((separator / 4 + 1) * 3);
+        int saltLength = ByteEncoding.decodeBase64(stored, 0, separator, salt, 0);
+
+        if (saltLength < 0) return null;
+
+        MessageDigest digest = context.sha256();
+        digest.update(salt, 0, saltLength);
+        return digest;
     }
 
-    private static byte[] decode(String value) {
-        return Base64.getDecoder().decode(value);
+    private static boolean check(HashingContext context, MessageDigest digest) {
+        context.finish(digest);
+        return HmacSigner.constantTimeEquals(context.digest, 0, context.expected, 0, HashingContext.DIGEST_LENGTH);
     }
 
     private Sha256Hasher() {
         throw new UnsupportedOperationException("This class cannot be instantiated");
     }
-}
\ No newline at end of file
+}
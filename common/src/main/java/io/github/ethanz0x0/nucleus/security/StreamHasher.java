@@ -0,0 +1,331 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
+import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
+
+/**
+ * A utility class for computing SHA-256 checksums of streams and files, such as region
+ * files or resource packs, without loading them on the heap.
+ * <p>
+ * Streams and channels are read into a buffer reused by the calling thread, direct for
+ * channels, and files are hashed through memory-mapped windows, so the size of the input
+ * does not matter. Checksums are lowercase hexadecimal strings, the same as
+ * {@link TokenHasher#hash(byte[])} of the whole content.
+ * <p>
+ * The tree mode splits a file into chunks hashed in parallel, and combines their digests
+ * into a single checksum. A tree checksum differs from the plain checksum of the same file,
+ * and depends on the chunk size: both sides of a comparison must use the same mode and
+ * chunk size.
+ * <p>
+ * Usage example:
+ * <pre>{@code
+ * String checksum = StreamHasher.hash(path);
+ * String fast = StreamHasher.treeHash(path);
+ * }</pre>
+ */
+public final class StreamHasher {
+
+    /**
+     * The default size in bytes of the chunks of the tree mode.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 22;
+
+    /**
+     * The size in bytes of the memory-mapped windows of a file.
+     */
+    private static final long MAP_WINDOW = 1L << 26;
+
+    private static final byte LEAF = 0;
+
+    private static final byte NODE = 1;
+
+    /**
+     * Computes the checksum of the remaining content of a stream. The stream is not closed.
+     *
+     * @param in
+     *      The stream
+     *
+     * @return
+     *      The checksum
+     *
+     * @throws IOException
+     *      If the stream cannot be read
+     */
+    public static String hash(InputStream in) throws IOException {
+        checkNotNull(in, "in cannot be null");
+
+        // The stream may hash again while it is read, so the digest and buffer are not shared
+        HashingContext context = HashingContext.get();
+        byte[] buffer = context.takeStreamBuffer();
+        MessageDigest digest = HashingContext.newSha256();
+        try {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            context.release(buffer);
+        }
+        return toHex(context, digest);
+    }
+
+    /**
+     * Computes the checksum of the remaining content of a channel. The channel is not closed.
+     *
+     * @param channel
+     *      The channel
+     *
+     * @return
+     *      The checksum
+     *
+     * @throws IOException
+     *      If the channel cannot be read
+     */
+    public static String hash(ReadableByteChannel channel) throws IOException {
+        checkNotNull(channel, "channel cannot be null");
+
+        // The channel may hash again while it is read, so the digest and buffer are not shared
+        HashingContext context = HashingContext.get();
+        ByteBuffer buffer = context.takeDirectBuffer();
+        MessageDigest digest = HashingContext.newSha256();
+        try {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            context.release(buffer);
+        }
+        return toHex(context, digest);
+    }
+
+    /**
+     * Computes the checksum of a file.
+     *
+     * @param file
+     *      The file
+     *
+     * @return
+     *      The checksum
+     *
+     * @throws IOException
+     *      If the file cannot be read
+     */
+    public static String hash(Path file) throws IOException {
+        checkNotNull(file, "file cannot be null");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return hash(channel, 0, channel.size());
+        }
+    }
+
+    /**
+     * Computes the checksum of a region of a file, through memory-mapped windows. The
+     * position of the channel is not changed.
+     *
+     * @param channel
+     *      The channel of the file
+     *
+     * @param position
+     *      The position of the region
+     *
+     * @param size
+     *      The size of the region
+     *
+     * @return
+     *      The checksum
+     *
+     * @throws IOException
+     *      If the file cannot be read
+     */
+    public static String hash(FileChannel channel, long position, long size) throws IOException {
+        checkNotNull(channel, "channel cannot be null");
+        checkArgument(position >= 0 && size >= 0, "invalid region");
+
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = context.sha256();
+        update(digest, channel, position, size);
+        return toHex(context, digest);
+    }
+
+    /**
+     * Computes the tree checksum of a file, with the default chunk size, on the common pool.
+     *
+     * @param file
+     *      The file
+     *
+     * @return
+     *      The tree checksum
+     *
+     * @throws IOException
+     *      If the file cannot be read
+     */
+    public static String treeHash(Path file) throws IOException {
+        checkNotNull(file, "file cannot be null");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return treeHash(channel, 0, channel.size(), DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+        }
+    }
+
+    /**
+     * Computes the tree checksum of a region of a file. The region is split into chunks of
+     * the specified size, whose digests are computed in parallel on the specified pool. The
+     * digest of a chunk is the SHA-256 of a zero byte followed by its content, and each pair
+     * of adjacent digests is then combined into the SHA-256 of a one byte followed by both
+     * digests, a lone last digest moving up unchanged, until a single digest is left.
+     *
+     * @param channel
+     *      The channel of the file
+     *
+     * @param position
+     *      The position of the region
+     *
+     * @param size
+     *      The size of the region
+     *
+     * @param chunkSize
+     *      The size in bytes of the chunks
+     *
+     * @param pool
+     *      The pool computing the digests of the chunks
+     *
+     * @return
+     *      The tree checksum
+     *
+     * @throws IOException
+     *      If the file cannot be read
+     */
+    public static String treeHash(FileChannel channel, long position, long size, int chunkSize,
+                                  ForkJoinPool pool) throws IOException {
+        checkNotNull(channel, "channel cannot be null");
+        checkNotNull(pool, "pool cannot be null");
+        checkArgument(position >= 0 && size >= 0, "invalid region");
+        checkArgument(chunkSize > 0, "chunk size must be larger than 0");
+
+        long chunks = Math.max(1L, (size + chunkSize - 1) / chunkSize);
+        checkArgument(chunks <= Integer.MAX_VALUE / HashingContext.DIGEST_LENGTH, "chunk size is too small");
+
+        byte[] digests = new byte[(int) chunks * HashingContext.DIGEST_LENGTH];
+        try {
+            pool.invoke(new LeafTask(channel, position, size, chunkSize, digests, 0, (int) chunks));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        HashingContext context = HashingContext.get();
+        int count = (int) chunks;
+        while (count > 1) {
+            int combined = 0;
+            for (int i = 0; i < count; i += 2, combined++) {
+                int target = combined * HashingContext.DIGEST_LENGTH;
+                int source = i * HashingContext.DIGEST_LENGTH;
+                if (i + 1 == count) {
+                    System.arraycopy(digests, source, digests, target, HashingContext.DIGEST_LENGTH);
+                    continue;
+                }
+                MessageDigest digest = context.sha256();
+                digest.update(NODE);
+                digest.update(digests, source, HashingContext.DIGEST_LENGTH * 2);
+                context.finish(digest);
+                System.arraycopy(context.digest, 0, digests, target, HashingContext.DIGEST_LENGTH);
+            }
+            count = combined;
+        }
+        ByteEncoding.encodeHex(digests, 0, HashingContext.DIGEST_LENGTH, context.chars, 0);
+        return new String(context.chars, 0, HashingContext.DIGEST_LENGTH * 2);
+    }
+
+    /**
+     * Updates a digest with a region of a file, through memory-mapped windows.
+     */
+    private static void update(MessageDigest digest, FileChannel channel, long position, long size) throws IOException {
+        long end = position + size;
+        for (long offset = position; offset < end; offset += MAP_WINDOW) {
+            long length = Math.min(MAP_WINDOW, end - offset);
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+        }
+    }
+
+    private static String toHex(HashingContext context, MessageDigest digest) {
+        context.finish(digest);
+        ByteEncoding.encodeHex(context.digest, 0, HashingContext.DIGEST_LENGTH, context.chars, 0);
+        return new String(context.chars, 0, HashingContext.DIGEST_LENGTH * 2);
+    }
+
+    /**
+     * Computes the digests of a range of chunks, splitting the range between workers.
+     */
+    private static final class LeafTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+
+        private final long position;
+
+        private final long size;
+
+        private final int chunkSize;
+
+        private final byte[] digests;
+
+        private final int from;
+
+        private final int to;
+
+        LeafTask(FileChannel channel, long position, long size, int chunkSize, byte[] digests, int from, int to) {
+            this.channel = channel;
+            this.position = position;
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.digests = digests;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new LeafTask(channel, position, size, chunkSize, digests, from, middle),
+                        new LeafTask(channel, position, size, chunkSize, digests, middle, to)
+                );
+                return;
+            }
+
+            long offset = (long) from * chunkSize;
+            long length = Math.min(chunkSize, size - offset);
+            // Each worker reuses the digest of its own thread
+            HashingContext context = HashingContext.get();
+            MessageDigest digest = context.sha256();
+            digest.update(LEAF);
+            try {
+                update(digest, channel, position + offset, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            context.finish(digest);
+            System.arraycopy(context.digest, 0, digests, from * HashingContext.DIGEST_LENGTH, HashingContext.DIGEST_LENGTH);
+        }
+    }
+
+    private StreamHasher() {
+        throw new UnsupportedOperationException("This class cannot be instantiated");
+    }
+}
@@ -1,9 +1,14 @@
 package io.github.ethanz0x0.nucleus.security;
 
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 
+import static io.github.ethanz0x0.nucleus.Checks.checkArgument;
 import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
 
 /**
@@ -11,41 +16,140 @@ import static io.github.ethanz0x0.nucleus.Checks.checkNotNull;
  * <p>
  * Tokens are expected to already contain enough randomness, therefore no salt
  * is added.
+ * <p>
+ * Hashes are lowercase hexadecimal SHA-256 digests. Each thread reuses its own digest and
+ * buffers, so hashing a token creates no garbage beyond the returned string, and
+ * verifying one creates none.
  */
 public final class TokenHasher {
 
+    /**
+     * The length in characters of a token hash.
+     */
+    public static final int HASH_LENGTH = HashingContext.DIGEST_LENGTH * 2;
+
     /**
      * Creates a SHA-256 token hash.
      *
      * @param token
-     *      The token
+     *      The token, encoded as UTF-8
+     *
+     * @return
+     *      The token hash
+     */
+    public static String hash(CharSequence token) {
+        checkNotNull(token, "token cannot be null");
+
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = context.sha256();
+        context.update(digest, token);
+        return toHex(context, digest);
+    }
+
+    /**
+     * Creates a SHA-256 token hash. Kept for callers compiled against the String signature.
+     *
+     * @param token
+     *      The token, encoded as UTF-8
      *
      * @return
      *      The token hash
      */
     public static String hash(String token) {
+        return hash((CharSequence) token);
+    }
+
+    /**
+     * Creates a SHA-256 token hash.
+     *
+     * @param token
+     *      The token bytes
+     *
+     * @return
+     *      The token hash
+     */
+    public static String hash(byte[] token) {
+        checkNotNull(token, "token cannot be null");
+
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = context.sha256();
+        digest.update(token);
+        return toHex(context, digest);
+    }
+
+    /**
+     * Creates a SHA-256 token hash of the remaining bytes of a buffer, and moves its
+     * position to its limit.
+     *
+     * @param token
+     *      The token bytes
+     *
+     * @return
+     *      The token hash
+     */
+    public static String hash(ByteBuffer token) {
         checkNotNull(token, "token cannot be null");
 
-        try {
-            MessageDigest digest =
-                    MessageDigest.getInstance("SHA-256");
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = context.sha256();
+        digest.update(token);
+        return toHex(context, digest);
+    }
 
-            return toHex(
-                    digest.digest(
-                            token.getBytes(StandardCharsets.UTF_8)
-                    )
-            );
+    /**
+     * Creates a SHA-256 token hash and writes it into the specified buffer.
+     *
+     * @param token
+     *      The token, encoded as UTF-8
+     *
+     * @param out
+     *      The buffer receiving the hash
+     *
+     * @param offset
+     *      The offset of the hash in the buffer
+     *
+     * @return
+     *      The number of characters written, {@link #HASH_LENGTH}
+     */
+    public static int hash(CharSequence token, char[] out, int offset) {
+        checkNotNull(token, "token cannot be null");
+        checkNotNull(out, "out cannot be null");
+        checkArgument(offset >= 0 && offset <= out.length - HASH_LENGTH, "buffer is too short");
 
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(e);
-        }
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = context.sha256();
+        context.update(digest, token);
+        context.finish(digest);
+        return ByteEncoding.encodeHex(context.digest, 0, HashingContext.DIGEST_LENGTH, out, offset);
     }
 
     /**
      * Checks whether a token matches the stored hash.
      *
      * @param token
-     *      The raw token
+     *      The raw token, encoded as UTF-8
+     *
+     * @param stored
+     *      The stored hash
+     *
+     * @return
+     *      True if the token matches
+     */
+    public static boolean matches(CharSequence token, CharSequence stored) {
+        if (token == null || stored == null) return false;
+
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = context.sha256();
+        context.update(digest, token);
+        return check(context, digest, stored);
+    }
+
+    /**
+     * Checks whether a token matches the stored hash. Kept for callers compiled against the
+     * String signature.
+     *
+     * @param token
+     *      The raw token, encoded as UTF-8
      *
      * @param stored
      *      The stored hash
@@ -54,26 +158,149 @@ public final class TokenHasher {
      *      True if the token matches
      */
     public static boolean matches(String token, String stored) {
+        return matches((CharSequence) token, (CharSequence) stored);
+    }
+
+    /**
+     * Checks whether a token matches the stored hash.
+     *
+     * @param token
+     *      The raw token bytes
+     *
+     * @param stored
+     *      The stored hash
+     *
+     * @return
+     *      True if the token matches
+     */
+    public static boolean matches(byte[] token, CharSequence stored) {
         if (token == null || stored == null) return false;
 
-        return MessageDigest.isEqual(
-                hash(token).getBytes(StandardCharsets.UTF_8),
-                stored.getBytes(StandardCharsets.UTF_8)
-        );
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = context.sha256();
+        digest.update(token);
+        return check(context, digest, stored);
     }
 
-    private static String toHex(byte[] bytes) {
-        StringBuilder builder =
-                new StringBuilder(bytes.length * 2);
+    /**
+     * Checks whether the remaining bytes of a buffer match the stored hash, and moves the
+     * position of the buffer to its limit.
+     *
+     * @param token
+     *      The raw token bytes
+     *
+     * @param stored
+     *      The stored hash
+     *
+     * @return
+     *      True if the token matches
+     */
+    public static boolean matches(ByteBuffer token, CharSequence stored) {
+        if (token == null || stored == null) return false;
+
+        HashingContext context = HashingContext.get();
+        MessageDigest digest = context.sha256();
+        digest.update(token);
+        return check(context, digest, stored);
+    }
 
-        for (byte value : bytes) {
-            builder.append(String.format("%02x", value));
-        }
+    /**
+     * Checks in the background whether each token matches the stored hash at the same
+     * index, on the common pool.
+     *
+     * @param tokens
+     *      The tokens, encoded as UTF-8
+     *
+     * @param stored
+     *      The stored hashes
+     *
+     * @return
+     *      A future completed with the set of the indexes of the matching tokens
+     */
+    public static CompletableFuture<BitSet> matchesAll(List<? extends CharSequence> tokens,
+                                                       List<? extends CharSequence> stored) {
+        return matchesAll(tokens, stored, ForkJoinPool.commonPool(), null);
+    }
+
+    /**
+     * Checks in the background whether each token matches the stored hash at the same
+     * index. The tokens are split into ranges verified in parallel on the specified pool,
+     * each worker reusing its own digest. Cancelling the future stops the ranges not
+     * started yet.
+     *
+     * @param tokens
+     *      The tokens, encoded as UTF-8
+     *
+     * @param stored
+     *      The stored hashes
+     *
+     * @param pool
+     *      The pool verifying the tokens
+     *
+     * @param progress
+     *      The callback receiving the number of tokens verified so far, or null. It is
+     *      called by the workers after each range, concurrently and possibly out of order,
+     *      so it must be thread safe and may see a count smaller than a previous one
+     *
+     * @return
+     *      A future completed with the set of the indexes of the matching tokens
+     */
+    public static CompletableFuture<BitSet> matchesAll(List<? extends CharSequence> tokens,
+                                                       List<? extends CharSequence> stored,
+                                                       ForkJoinPool pool, IntConsumer progress) {
+        return HashingBatch.matchesAll(tokens, stored, TokenHasher::matches, pool, progress);
+    }
+
+    /**
+     * Creates the SHA-256 token hash of each token in the background, on the common pool.
+     *
+     * @param tokens
+     *      The tokens, encoded as UTF-8
+     *
+     * @return
+     *      A future completed with the hashes, in the order of the tokens
+     */
+    public static CompletableFuture<List<String>> hashAll(List<? extends CharSequence> tokens) {
+        return hashAll(tokens, ForkJoinPool.commonPool(), null);
+    }
+
+    /**
+     * Creates the SHA-256 token hash of each token in the background. The tokens are split into
+     * ranges hashed in parallel on the specified pool, each worker reusing its own digest.
+     * Cancelling the future stops the ranges not started yet.
+     *
+     * @param tokens
+     *      The tokens, encoded as UTF-8
+     *
+     * @param pool
+     *      The pool hashing the tokens
+     *
+     * @param progress
+     *      The callback receiving the number of tokens hashed so far, or null. It is
+     *      called by the workers after each range, concurrently and possibly out of order,
+     *      so it must be thread safe and may see a count smaller than a previous one
+     *
+     * @return
+     *      A future completed with the hashes, in the order of the tokens
+     */
+    public static CompletableFuture<List<String>> hashAll(List<? extends CharSequence> tokens,
+                                                          ForkJoinPool pool, IntConsumer progress) {
+        return HashingBatch.hashAll(tokens, TokenHasher::hash, pool, progress);
+    }
+
+    private static String toHex(HashingContext context, MessageDigest digest) {
+        context.finish(digest);
+        ByteEncoding.encodeHex(context.digest, 0, HashingContext.DIGEST_LENGTH, context.chars, 0);
+        return new String(context.chars, 0, HASH_LENGTH);
+    }
 
-        return builder.toString();
+    private static boolean check(HashingContext context, MessageDigest digest, CharSequence stored) {
+        context.finish(digest);
+        ByteEncoding.encodeHex(context.digest, 0, HashingContext.DIGEST_LENGTH, context.chars, 0);
+        return HashingContext.constantTimeEquals(context.chars, HASH_LENGTH, stored);
     }
 
     private TokenHasher() {
         throw new UnsupportedOperationException("This class cannot be instantiated");
     }
-}
\ No newline at end of file
+}
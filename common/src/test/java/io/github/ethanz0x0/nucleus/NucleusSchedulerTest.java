@@ -0,0 +1,94 @@
+package io.github.ethanz0x0.nucleus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NucleusSchedulerTest {
+
+    @Test
+    public void lifecycleTest() throws Exception {
+        ScheduledExecutorService scheduler = NucleusScheduler.scheduler();
+        assertTrue(NucleusScheduler.isRunning());
+        assertThrows(IllegalStateException.class, () -> NucleusScheduler.setPoolSize(1));
+
+        CompletableFuture<Boolean> daemon = new CompletableFuture<>();
+        scheduler.schedule(() -> daemon.complete(Thread.currentThread().isDaemon()), 1, TimeUnit.MILLISECONDS);
+        assertTrue(daemon.get(1, TimeUnit.SECONDS));
+
+        NucleusScheduler.shutdown();
+        assertFalse(NucleusScheduler.isRunning());
+        assertTrue(scheduler.isShutdown());
+        assertEquals(0, NucleusScheduler.getQueueDepth());
+
+        // The runtime restarts lazily
+        assertNotSame(scheduler, NucleusScheduler.scheduler());
+        assertTrue(NucleusScheduler.isRunning());
+    }
+
+    @Test
+    public void periodicTest() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        NucleusScheduler.schedulePeriodically(runs, AtomicInteger::incrementAndGet, 1, TimeUnit.MILLISECONDS);
+        awaitRuns(runs, 1);
+
+        NucleusScheduler.shutdown();
+        Thread.sleep(20);
+        int paused = runs.get();
+        Thread.sleep(20);
+        assertEquals(paused, runs.get());
+
+        // The task resumes on the new runtime
+        NucleusScheduler.start();
+        awaitRuns(runs, paused + 1);
+    }
+
+    @Test
+    public void failingPeriodicTest() throws Exception {
+        Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        AtomicInteger reported = new AtomicInteger();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> reported.incrementAndGet());
+        try {
+            AtomicInteger runs = new AtomicInteger();
+            NucleusScheduler.schedulePeriodically(runs, target -> {
+                if (target.incrementAndGet() <= 2) {
+                    throw new AssertionError();
+                }
+            }, 1, TimeUnit.MILLISECONDS);
+
+            // The task keeps running after its action throws
+            awaitRuns(runs, 3);
+            assertEquals(2, reported.get());
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+    }
+
+    @Test
+    public void executorTest() throws Exception {
+        Executor executor = NucleusScheduler.executor();
+        CompletableFuture<String> before = new CompletableFuture<>();
+        executor.execute(() -> before.complete(Thread.currentThread().getName()));
+        assertFalse(before.get(1, TimeUnit.SECONDS).startsWith("nucleus-scheduler-"));
+
+        // The shared executor submits to the current runtime
+        NucleusScheduler.shutdown();
+        CompletableFuture<Boolean> after = new CompletableFuture<>();
+        executor.execute(() -> after.complete(true));
+        assertTrue(after.get(1, TimeUnit.SECONDS));
+        assertTrue(NucleusScheduler.isRunning());
+    }
+
+    private static void awaitRuns(AtomicInteger runs, int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && runs.get() < expected; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(runs.get() >= expected);
+    }
+}
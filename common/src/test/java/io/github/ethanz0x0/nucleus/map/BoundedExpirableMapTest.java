@@ -0,0 +1,70 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedExpirableMapTest {
+
+    @Test
+    public void maximumSizeTest() {
+        BoundedExpirableMap<Integer, Integer> map = new BoundedExpirableMap<>(100);
+        for (int i = 0; i < 10000; i++) {
+            map.put(i, i, 60000);
+        }
+
+        assertEquals(100, map.size());
+        assertEquals(100, map.weightedSize());
+    }
+
+    @Test
+    public void admissionTest() {
+        BoundedExpirableMap<Integer, Integer> map = new BoundedExpirableMap<>(100);
+        for (int i = 0; i < 50; i++) {
+            map.put(i, i);
+        }
+        for (int i = 1000; i < 100000; i++) {
+            if (i % 50 == 0) {
+                for (int j = 0; j < 50; j++) {
+                    map.get(j);
+                }
+            }
+            map.put(i, i);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, map.get(i));
+        }
+    }
+
+    @Test
+    public void maximumWeightTest() {
+        BoundedExpirableMap<Integer, String> map = new BoundedExpirableMap<>(100, (key, value) -> value.length());
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, "0123456789");
+        }
+
+        assertTrue(map.weightedSize() <= 100);
+        assertEquals(map.size() * 10L, map.weightedSize());
+    }
+
+    @Test
+    public void failedWeighTest() {
+        BoundedExpirableMap<Integer, String> map = new BoundedExpirableMap<>(100, (key, value) -> {
+            if (value.isEmpty()) {
+                throw new IllegalArgumentException("cannot weigh value");
+            }
+            return value.length() - 2;
+        });
+        map.putTagged(1, "kept", "tag");
+        assertThrows(IllegalArgumentException.class, () -> map.put(2, "", 60000, ExpirationPolicy.AFTER_WRITE, "tag"));
+        assertThrows(IllegalStateException.class, () -> map.put(3, "x", 60000, ExpirationPolicy.AFTER_WRITE, "tag"));
+
+        // Rejected mappings are neither scheduled nor tagged
+        assertEquals(1, map.size());
+        assertEquals(2, map.weightedSize());
+        assertEquals(0, map.tick());
+        assertEquals(1, map.invalidateTag("tag"));
+        assertEquals(0, map.weightedSize());
+    }
+}
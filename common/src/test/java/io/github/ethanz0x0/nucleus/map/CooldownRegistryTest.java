@@ -0,0 +1,92 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CooldownRegistryTest {
+
+    @Test
+    public void cooldownTest() throws InterruptedException {
+        CooldownRegistry<UUID> cooldowns = CooldownRegistry.tickDriven();
+        int fireball = cooldowns.register("fireball", 50);
+        int teleport = cooldowns.register("teleport", 60000);
+        assertEquals(fireball, cooldowns.getId("fireball"));
+        assertThrows(IllegalArgumentException.class, () -> cooldowns.register("fireball", 10));
+
+        UUID player = UUID.randomUUID();
+        assertTrue(cooldowns.isReady(player, fireball));
+        assertTrue(cooldowns.tryAcquire(player, fireball));
+        assertFalse(cooldowns.tryAcquire(player, fireball));
+        assertTrue(cooldowns.tryAcquire(player, teleport));
+        assertTrue(cooldowns.getRemaining(player, teleport) > 50000);
+
+        Thread.sleep(80);
+        // The clock of a tick driven registry only advances on tick
+        assertFalse(cooldowns.isReady(player, fireball));
+        cooldowns.tick();
+        assertTrue(cooldowns.isReady(player, fireball));
+        assertFalse(cooldowns.isReady(player, teleport));
+
+        cooldowns.reset(player, teleport);
+        assertTrue(cooldowns.isReady(player, teleport));
+
+        // Actions registered later are handled by keys already seen
+        int heal = cooldowns.register("heal", 60000);
+        assertTrue(cooldowns.tryAcquire(player, heal));
+        assertFalse(cooldowns.isReady(player, heal));
+
+        cooldowns.clear(player);
+        assertTrue(cooldowns.isReady(player, heal));
+        assertThrows(IllegalArgumentException.class, () -> cooldowns.isReady(player, 3));
+    }
+
+    @Test
+    public void clockTest() throws InterruptedException {
+        // The clock of a default registry is read on each check
+        CooldownRegistry<UUID> cooldowns = new CooldownRegistry<>();
+        int fireball = cooldowns.register("fireball", 30);
+        UUID player = UUID.randomUUID();
+        assertTrue(cooldowns.tryAcquire(player, fireball));
+        assertFalse(cooldowns.isReady(player, fireball));
+
+        Thread.sleep(50);
+        assertTrue(cooldowns.isReady(player, fireball));
+        assertTrue(cooldowns.tryAcquire(player, fireball));
+    }
+
+    @Test
+    public void growTest() throws InterruptedException {
+        CooldownRegistry<String> cooldowns = new CooldownRegistry<>();
+        int actions = 2000;
+        AtomicInteger acquired = new AtomicInteger();
+        // Both threads acquire every action, while actions registered meanwhile enlarge the array
+        Runnable acquirer = () -> {
+            for (int id = 0; id < actions; id++) {
+                while (id >= cooldowns.getActionCount()) {
+                    Thread.yield();
+                }
+                if (cooldowns.tryAcquire("player", id)) {
+                    acquired.incrementAndGet();
+                }
+            }
+        };
+        Thread first = new Thread(acquirer);
+        Thread second = new Thread(acquirer);
+        first.start();
+        second.start();
+        for (int i = 0; i < actions; i++) {
+            cooldowns.register("action-" + i, 60000);
+        }
+        first.join();
+        second.join();
+
+        assertEquals(actions, acquired.get());
+        for (int id = 0; id < actions; id++) {
+            assertFalse(cooldowns.isReady("player", id));
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpirableMapTest {
+
+    @Test
+    public void expireTest() throws InterruptedException {
+        ExpirableConcurrentHashMap<String, Integer> map = new ExpirableConcurrentHashMap<>();
+        map.put("a", 1, 50);
+        map.put("b", 2);
+
+        assertEquals(1, map.get("a"));
+        Thread.sleep(80);
+        assertNull(map.get("a"));
+        assertFalse(map.containsKey("a"));
+        assertEquals(2, map.get("b"));
+    }
+
+    @Test
+    public void sweepTest() throws InterruptedException {
+        ExpirableHashMap<Integer, Integer> map = ExpirableMapBuilder.newBuilder().recordStats().buildHashMap();
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i, 20);
+        }
+        map.put(-1, -1, 60000);
+        Thread.sleep(40);
+
+        // Slow puts may already have removed some entries, the statistics count them all
+        map.tick();
+        assertEquals(1, map.size());
+        assertEquals(1000, map.stats().getExpirationCount());
+        assertEquals(-1, map.get(-1));
+    }
+
+    @Test
+    public void tickDrivenTest() throws InterruptedException {
+        ExpirableHashMap<Integer, Integer> map = new ExpirableHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, i, 20);
+        }
+        Thread.sleep(40);
+
+        assertEquals(100, map.size());
+        assertEquals(30, map.drainExpired(30));
+        assertEquals(70, map.size());
+
+        // Each expiring put removes a few expired entries
+        map.put(100, 100, 60000);
+        assertEquals(63, map.size());
+        assertEquals(62, map.tick());
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void concurrentPutTest() throws InterruptedException {
+        ExpirableConcurrentHashMap<Integer, Integer> map = ExpirableMapBuilder.newBuilder()
+                .tickDriven()
+                .buildConcurrentHashMap();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t * 5000;
+            threads[t] = new Thread(() -> {
+                for (int i = offset; i < offset + 5000; i++) {
+                    map.put(i, i, i % 2 == 0 ? 20 : 60000, ExpirationPolicy.AFTER_WRITE, i % 3);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Thread.sleep(40);
+
+        assertEquals(10000, map.tick());
+        assertEquals(10000, map.size());
+        // Tags 0, 1 and 2 hold about a third of the odd keys each, spread over every stripe
+        assertEquals(10000, map.invalidateTag(0) + map.invalidateTag(1) + map.invalidateTag(2));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void defaultMethodsTest() {
+        class LegacyMap extends HashMap<String, Integer> implements ExpirableMap<String, Integer> {
+
+            @Override
+            public Integer put(String key, Integer value, long expiration) {
+                return put(key, value);
+            }
+        }
+        ExpirableMap<String, Integer> map = new LegacyMap();
+        map.put("a", 1, 1000, ExpirationPolicy.AFTER_WRITE);
+        map.put("b", 2, 1000, ExpirationPolicy.AFTER_WRITE, new Object[0]);
+        assertEquals(2, map.size());
+        assertThrows(UnsupportedOperationException.class, () -> map.put("c", 3, 1000, ExpirationPolicy.AFTER_ACCESS));
+        assertThrows(UnsupportedOperationException.class, () -> map.put("c", 3, 1000, ExpirationPolicy.AFTER_WRITE, "tag"));
+        assertThrows(UnsupportedOperationException.class, () -> map.putTagged("c", 3, "tag"));
+        map.putTagged("c", 3);
+        assertEquals(3, map.size());
+        assertThrows(UnsupportedOperationException.class, () -> map.invalidateTag("tag"));
+    }
+
+    @Test
+    public void expireAfterAccessTest() throws InterruptedException {
+        ExpirableConcurrentHashMap<String, Integer> map = new ExpirableConcurrentHashMap<>();
+        map.put("a", 1, 100, ExpirationPolicy.AFTER_ACCESS);
+        map.put("b", 2, 100, ExpirationPolicy.AFTER_WRITE);
+
+        for (int i = 0; i < 6; i++) {
+            Thread.sleep(40);
+            assertEquals(1, map.get("a"));
+        }
+        assertNull(map.get("b"));
+        Thread.sleep(150);
+        assertNull(map.get("a"));
+    }
+
+    @Test
+    public void removalListenerTest() throws InterruptedException {
+        List<RemovalNotification<String, Integer>> removals = new ArrayList<>();
+        ExpirableHashMap<String, Integer> map = ExpirableMapBuilder.newBuilder()
+                .tickDriven()
+                .executor(Runnable::run)
+                .removalListener((String key, Integer value, RemovalCause cause) ->
+                        removals.add(new RemovalNotification<>(key, value, cause)))
+                .buildHashMap();
+        map.put("a", 1, 20);
+        map.put("b", 2);
+        map.put("b", 3);
+        map.remove("b");
+        Thread.sleep(40);
+        map.tick();
+
+        assertEquals(Arrays.asList(
+                new RemovalNotification<>("b", 2, RemovalCause.REPLACED),
+                new RemovalNotification<>("b", 3, RemovalCause.EXPLICIT),
+                new RemovalNotification<>("a", 1, RemovalCause.EXPIRED)
+        ), removals);
+    }
+
+    @Test
+    public void failedNotificationTest() {
+        List<String> removed = new ArrayList<>();
+        AtomicBoolean reject = new AtomicBoolean(true);
+        ExpirableHashMap<String, Integer> map = ExpirableMapBuilder.newBuilder()
+                .tickDriven()
+                .executor(task -> {
+                    if (reject.getAndSet(false)) {
+                        throw new RejectedExecutionException();
+                    }
+                    task.run();
+                })
+                .removalListener((String key, Integer value, RemovalCause cause) -> {
+                    if (key.equals("error")) {
+                        throw new AssertionError();
+                    }
+                    removed.add(key);
+                })
+                .buildHashMap();
+        map.put("a", 1);
+        map.put("b", 2);
+        map.put("error", 3);
+
+        // Notifications stay queued until the executor accepts a delivery
+        assertThrows(RejectedExecutionException.class, () -> map.remove("a"));
+        map.remove("b");
+        assertEquals(Arrays.asList("a", "b"), removed);
+
+        // An error thrown by the listener does not stop later deliveries
+        assertThrows(AssertionError.class, () -> map.remove("error"));
+        map.put("c", 4);
+        map.remove("c");
+        assertEquals(Arrays.asList("a", "b", "c"), removed);
+    }
+
+    @Test
+    public void statsTest() throws InterruptedException {
+        ExpirableHashMap<String, Integer> map = ExpirableMapBuilder.newBuilder()
+                .tickDriven()
+                .recordStats()
+                .buildHashMap();
+        map.put("a", 1, 20);
+        map.put("b", 2);
+        map.get("a");
+        map.get("c");
+        Thread.sleep(40);
+        map.tick();
+
+        ExpirableMapStats stats = map.stats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(2, stats.getPutCount());
+        assertEquals(1, stats.getExpirationCount());
+        assertEquals(1, stats.getSize());
+        assertTrue(stats.getAverageExpirationLag(TimeUnit.MILLISECONDS) > 0);
+    }
+
+    @Test
+    public void replaceTest() throws InterruptedException {
+        ExpirableConcurrentHashMap<String, Integer> map = new ExpirableConcurrentHashMap<>();
+        map.put("a", 1, 50);
+        assertEquals(1, map.put("a", 2, 60000));
+        assertEquals(2, map.replace("a", 3));
+        Thread.sleep(80);
+        map.tick();
+
+        assertEquals(3, map.get("a"));
+    }
+
+    @Test
+    public void iteratorTest() {
+        ExpirableHashMap<String, Integer> map = new ExpirableHashMap<>();
+        map.put("a", 1, 60000);
+        map.put("b", 2, 60000);
+
+        Iterator<Map.Entry<String, Integer>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getKey().equals("a")) {
+                iterator.remove();
+            }
+        }
+        assertEquals(1, map.size());
+        assertEquals(0, map.tick());
+        assertFalse(map.containsKey("a"));
+    }
+
+    @Test
+    public void iteratorReplacedTest() {
+        ExpirableConcurrentHashMap<String, Integer> map = new ExpirableConcurrentHashMap<>();
+        map.put("a", 1);
+
+        // Removing an entry replaced since it was returned keeps the new mapping
+        Iterator<Map.Entry<String, Integer>> iterator = map.entrySet().iterator();
+        assertEquals(1, iterator.next().getValue());
+        map.put("a", 2);
+        iterator.remove();
+        assertEquals(2, map.get("a"));
+    }
+
+    @Test
+    public void readWhileIteratingTest() throws InterruptedException {
+        ExpirableHashMap<String, Integer> map = new ExpirableHashMap<>();
+        map.put("a", 1, 20);
+        map.put("b", 2);
+        map.put("c", 3);
+        Thread.sleep(40);
+
+        // Reads of expired entries leave the map untouched
+        for (String key : map.keySet()) {
+            assertNull(map.get("a"));
+            assertFalse(map.containsKey("a"));
+            assertNotNull(map.get(key));
+        }
+        assertEquals(3, map.size());
+        assertEquals(1, map.tick());
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void tagTest() throws InterruptedException {
+        ExpirableMap<String, Integer> map = ExpirableMapBuilder.newBuilder().tickDriven().buildConcurrentHashMap();
+        map.put("a", 1, 60000, ExpirationPolicy.AFTER_WRITE, "world", "alice");
+        map.put("b", 2, 60000, ExpirationPolicy.AFTER_WRITE, "world", "bob");
+        map.put("c", 3, 60000, ExpirationPolicy.AFTER_WRITE, "nether", "alice");
+        map.put("d", 4, 50, ExpirationPolicy.AFTER_WRITE, "bob");
+        map.put("e", 5);
+
+        assertEquals(2, map.invalidateTag("alice"));
+        assertFalse(map.containsKey("a"));
+        assertFalse(map.containsKey("c"));
+        assertEquals(0, map.invalidateTag("alice"));
+
+        // Replacing a value keeps its tags, putting it again replaces them
+        map.replace("b", 20);
+        map.put("e", 50, 60000, ExpirationPolicy.AFTER_WRITE, "world");
+
+        Thread.sleep(80);
+        ((AbstractExpirableMap<String, Integer>) map).tick();
+        assertEquals(1, map.invalidateTag("bob"));
+        assertEquals(1, map.invalidateTag("world"));
+        assertEquals(0, map.invalidateTag("nether"));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void persistentTagTest() {
+        ExpirableHashMap<String, Integer> map = new ExpirableHashMap<>();
+        map.putTagged("a", 1, "alice");
+        map.putTagged("b", 2, "alice", "bob");
+        map.put("c", 3, 60000, ExpirationPolicy.AFTER_WRITE, "bob");
+
+        // Tagged mappings without expiration are never drained by the timer wheel
+        assertEquals(0, map.tick());
+        assertEquals(3, map.size());
+        assertEquals(2, map.invalidateTag("bob"));
+        assertEquals(1, map.invalidateTag("alice"));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void weakValuesTest() throws InterruptedException {
+        List<RemovalCause> causes = new ArrayList<>();
+        ExpirableHashMap<String, Object> map = ExpirableMapBuilder.newBuilder()
+                .tickDriven()
+                .weakValues()
+                .recordStats()
+                .removalListener((String key, Object value, RemovalCause cause) -> {
+                    synchronized (causes) {
+                        causes.add(cause);
+                    }
+                })
+                .buildHashMap();
+        Object kept = new Object();
+        map.put("kept", kept, 60000);
+        map.put("dropped", new Object(), 60000);
+
+        for (int i = 0; i < 50 && map.containsKey("dropped"); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertFalse(map.containsKey("dropped"));
+        assertSame(kept, map.get("kept"));
+
+        map.tick();
+        assertEquals(1, map.size());
+        assertEquals(1, map.stats().getEvictionCount());
+        Thread.sleep(100);
+        synchronized (causes) {
+            assertEquals(Arrays.asList(RemovalCause.COLLECTED), causes);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadingExpirableMapTest {
+
+    @Test
+    public void coalesceTest() throws InterruptedException {
+        LoadingExpirableMap<String, Integer> map = new LoadingExpirableMap<>(60000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return map.get("a", key -> {
+                    loads.incrementAndGet();
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return 1;
+                });
+            }));
+        }
+        start.countDown();
+
+        for (CompletableFuture<Integer> result : results) {
+            assertEquals(1, result.join());
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void getAllTest() {
+        LoadingExpirableMap<Integer, String> map = new LoadingExpirableMap<>(60000);
+        map.put(1, "one");
+        List<Set<Integer>> calls = new ArrayList<>();
+
+        Map<Integer, String> values = map.getAll(Arrays.asList(1, 2, 3), keys -> {
+            calls.add(new HashSet<>(keys));
+            return Collections.singletonMap(2, "two");
+        });
+
+        assertEquals(Collections.singletonList(new HashSet<>(Arrays.asList(2, 3))), calls);
+        assertEquals("one", values.get(1));
+        assertEquals("two", values.get(2));
+        assertFalse(values.containsKey(3));
+        assertEquals("two", map.getIfPresent(2));
+    }
+
+    @Test
+    public void refreshTest() throws InterruptedException {
+        LoadingExpirableMap<String, Integer> map = new LoadingExpirableMap<>(60000, 20);
+        AtomicInteger version = new AtomicInteger();
+        assertEquals(1, map.get("a", key -> version.incrementAndGet()));
+        Thread.sleep(40);
+
+        assertEquals(1, map.get("a", key -> version.incrementAndGet()));
+        for (int i = 0; i < 50 && map.getIfPresent("a") == 1; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, map.getIfPresent("a"));
+    }
+
+    @Test
+    public void statsTest() {
+        ExpirableConcurrentHashMap<String, Integer> backing = ExpirableMapBuilder.newBuilder()
+                .recordStats()
+                .buildConcurrentHashMap();
+        LoadingExpirableMap<String, Integer> map = new LoadingExpirableMap<>(backing, 60000, 0, ForkJoinPool.commonPool());
+        assertEquals(1, map.get("a", key -> 1));
+        assertEquals(1, map.get("a", key -> 2));
+        assertNull(map.get("b", key -> null));
+
+        ExpirableMapStats stats = backing.stats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(1, stats.getPutCount());
+    }
+}
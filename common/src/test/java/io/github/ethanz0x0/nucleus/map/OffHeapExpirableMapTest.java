@@ -0,0 +1,145 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapExpirableMapTest {
+
+    @Test
+    public void storeTest() {
+        OffHeapExpirableMap<Integer> map = ExpirableMapBuilder.newBuilder().tickDriven().buildOffHeapMap(4096);
+        Map<Integer, byte[]> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(500);
+            if (random.nextInt(4) == 0) {
+                expected.remove(key);
+                map.remove(key);
+            } else {
+                // Includes values larger than a slab
+                byte[] value = new byte[random.nextInt(random.nextInt(10) == 0 ? 10000 : 300)];
+                random.nextBytes(value);
+                expected.put(key, value);
+                map.put(key, ByteBuffer.wrap(value), 60000);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Integer, byte[]> entry : expected.entrySet()) {
+            ByteBuffer view = map.get(entry.getKey());
+            assertTrue(view.isReadOnly());
+            assertEquals(ByteBuffer.wrap(entry.getValue()), view);
+        }
+
+        map.clear();
+        assertEquals(0L, map.getOffHeapUsage());
+    }
+
+    @Test
+    public void expireTest() throws InterruptedException {
+        OffHeapExpirableMap<String> map = ExpirableMapBuilder.newBuilder().tickDriven().buildOffHeapMap(4096);
+        ByteBuffer value = ByteBuffer.wrap("payload".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < 1000; i++) {
+            map.put("short" + i, value, 20);
+        }
+        map.put("long", value, 60000);
+        assertEquals(0, value.position());
+        long capacity = map.getOffHeapCapacity();
+
+        Thread.sleep(50);
+        map.tick();
+        assertEquals(1, map.size());
+        assertEquals(value, map.get("long"));
+        // Slabs emptied by the expired entries are released
+        assertTrue(map.getOffHeapCapacity() < capacity);
+        assertEquals(SlabAllocator.MINIMUM_BLOCK, map.getOffHeapUsage());
+    }
+
+    @Test
+    public void readTest() {
+        OffHeapExpirableMap<String> map = ExpirableMapBuilder.newBuilder().tickDriven().buildOffHeapMap(4096);
+        ByteBuffer first = ByteBuffer.wrap("first".getBytes(StandardCharsets.UTF_8));
+        ByteBuffer second = ByteBuffer.wrap("second".getBytes(StandardCharsets.UTF_8));
+        map.put("a", first);
+
+        // Copies stay valid after their block is freed and reused
+        ByteBuffer copy = map.get("a");
+        map.remove("a");
+        map.put("b", second);
+        assertEquals(first, copy);
+
+        // The block of a pinned value is not reused until the reader returns
+        assertEquals(Boolean.TRUE, map.read("b", view -> {
+            map.remove("b");
+            map.put("c", first);
+            return view.equals(second);
+        }));
+        assertEquals(first, map.get("c"));
+        assertEquals(SlabAllocator.MINIMUM_BLOCK, map.getOffHeapUsage());
+        assertNull(map.read("b", view -> true));
+    }
+
+    @Test
+    public void removeTest() {
+        List<ByteBuffer> removed = new ArrayList<>();
+        OffHeapExpirableMap<String> map = ExpirableMapBuilder.newBuilder()
+                .tickDriven()
+                .executor(Runnable::run)
+                .removalListener((String key, ByteBuffer value, RemovalCause cause) -> removed.add(value))
+                .buildOffHeapMap(4096);
+        ByteBuffer first = ByteBuffer.wrap("first".getBytes(StandardCharsets.UTF_8));
+        ByteBuffer second = ByteBuffer.wrap("second".getBytes(StandardCharsets.UTF_8));
+
+        // Removers and the listener both get the removed value
+        map.put("a", first);
+        assertEquals(first, map.put("a", second));
+        assertEquals(second, map.remove("a"));
+        map.put("b", first);
+        map.put("c", second);
+        map.clear();
+        assertEquals(0L, map.getOffHeapUsage());
+        assertEquals(4, removed.size());
+        assertEquals(first, removed.get(0));
+        assertEquals(second, removed.get(1));
+        assertTrue(removed.contains(first) && removed.contains(second));
+
+        // Without a listener, the bulk removals free the blocks
+        OffHeapExpirableMap<String> plain = ExpirableMapBuilder.newBuilder().tickDriven().buildOffHeapMap(4096);
+        plain.put("a", first);
+        plain.put("b", second);
+        assertEquals(second, plain.remove("b"));
+        plain.clear();
+        assertEquals(0L, plain.getOffHeapUsage());
+        assertTrue(plain.isEmpty());
+    }
+
+    @Test
+    public void compactTest() throws InterruptedException {
+        OffHeapExpirableMap<Integer> map = ExpirableMapBuilder.newBuilder().tickDriven().buildOffHeapMap(4096);
+        byte[] value = new byte[50];
+        // Ten slabs of 64 blocks, each keeping a few long lived values
+        for (int i = 0; i < 640; i++) {
+            value[0] = (byte) i;
+            map.put(i, ByteBuffer.wrap(value), i % 10 == 0 ? 60000 : 20);
+        }
+        assertEquals(10 * 4096, map.getOffHeapCapacity());
+
+        Thread.sleep(50);
+        map.tick();
+        assertEquals(64, map.size());
+        // Sparse slabs are emptied into the others and released
+        assertEquals(2 * 4096, map.getOffHeapCapacity());
+        for (int i = 0; i < 640; i += 10) {
+            assertEquals((byte) i, map.get(i).get(0));
+        }
+    }
+}
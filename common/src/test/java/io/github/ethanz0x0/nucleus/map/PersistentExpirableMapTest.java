@@ -0,0 +1,178 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentExpirableMapTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void reloadTest() throws IOException, InterruptedException {
+        File file = new File(directory, "map.log");
+        PersistentExpirableMap<String, String> map = new PersistentExpirableMap<>(file, Codec.string(), Codec.string());
+        map.put("forever", "a");
+        map.put("long", "b", 60000);
+        map.put("short", "c", 100);
+        map.put("removed", "d", 60000);
+        map.remove("removed");
+        map.put("replaced", "e", 60000);
+        map.replace("replaced", "f");
+        // Simulates a crash: the log is neither compacted nor closed
+        map.flush();
+
+        Thread.sleep(200);
+
+        try (PersistentExpirableMap<String, String> reloaded = new PersistentExpirableMap<>(file, Codec.string(), Codec.string())) {
+            assertEquals("a", reloaded.get("forever"));
+            assertEquals("b", reloaded.get("long"));
+            assertNull(reloaded.get("short"));
+            assertNull(reloaded.get("removed"));
+            assertEquals("f", reloaded.get("replaced"));
+            assertEquals(3, reloaded.size());
+        }
+    }
+
+    @Test
+    public void compactionTest() throws IOException {
+        File file = new File(directory, "map.log");
+        try (PersistentExpirableMap<String, String> map = new PersistentExpirableMap<>(file, Codec.string(), Codec.string())) {
+            for (int i = 0; i < 100000; i++) {
+                map.put("key" + (i % 10), "value" + i, 60000);
+            }
+            // Without compaction the log would hold 100000 records
+            assertTrue(logSize() < (1 << 20));
+        }
+
+        try (PersistentExpirableMap<String, String> map = new PersistentExpirableMap<>(file, Codec.string(), Codec.string())) {
+            assertEquals(10, map.size());
+            assertEquals("value99999", map.get("key9"));
+        }
+    }
+
+    @Test
+    public void repeatedCompactionTest() throws IOException {
+        File file = new File(directory, "map.log");
+        try (PersistentExpirableMap<String, String> map = new PersistentExpirableMap<>(file, Codec.string(), Codec.string())) {
+            map.put("a", "first");
+            map.compact();
+            map.put("b", "second");
+            map.compact();
+            map.put("c", "third");
+        }
+        // Only the last generation is kept
+        assertEquals(1, directory.listFiles().length);
+
+        try (PersistentExpirableMap<String, String> map = new PersistentExpirableMap<>(file, Codec.string(), Codec.string())) {
+            assertEquals(3, map.size());
+            assertEquals("first", map.get("a"));
+            assertEquals("third", map.get("c"));
+            map.compact();
+            map.compact();
+        }
+        try (PersistentExpirableMap<String, String> map = new PersistentExpirableMap<>(file, Codec.string(), Codec.string())) {
+            assertEquals(3, map.size());
+        }
+    }
+
+    @Test
+    public void unsealedGenerationTest() throws IOException {
+        File file = new File(directory, "map.log");
+        try (PersistentExpirableMap<String, String> map = new PersistentExpirableMap<>(file, Codec.string(), Codec.string())) {
+            map.put("a", "kept");
+        }
+        // Simulates a crash while a compaction was writing the next generation
+        File torn = new File(file.getPath() + ".99");
+        try (RandomAccessFile raf = new RandomAccessFile(torn, "rw")) {
+            raf.setLength(4096);
+        }
+
+        try (PersistentExpirableMap<String, String> reloaded = new PersistentExpirableMap<>(file, Codec.string(), Codec.string())) {
+            assertEquals("kept", reloaded.get("a"));
+            assertFalse(torn.exists());
+        }
+    }
+
+    @Test
+    public void tornRecordTest() throws IOException {
+        File file = new File(directory, "map.log");
+        PersistentExpirableMap<String, String> map = new PersistentExpirableMap<>(file, Codec.string(), Codec.string());
+        map.put("first", "a");
+        map.put("second", "b");
+        map.flush();
+
+        // Corrupts the last byte of the second record
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long end = 8;
+            for (int i = 0; i < 2; i++) {
+                raf.seek(end);
+                end += 8 + raf.readInt();
+            }
+            raf.seek(end - 1);
+            raf.write(0x7f);
+        }
+
+        try (PersistentExpirableMap<String, String> reloaded = new PersistentExpirableMap<>(file, Codec.string(), Codec.string())) {
+            assertEquals("a", reloaded.get("first"));
+            assertNull(reloaded.get("second"));
+            reloaded.put("third", "c");
+        }
+        try (PersistentExpirableMap<String, String> reloaded = new PersistentExpirableMap<>(file, Codec.string(), Codec.string())) {
+            assertEquals("c", reloaded.get("third"));
+        }
+    }
+
+    @Test
+    public void failedPutTest() throws IOException {
+        File file = new File(directory, "map.log");
+        Codec<String> failing = new Codec<String>() {
+
+            @Override
+            public byte[] encode(String value) {
+                if (value.equals("unencodable")) {
+                    throw new IllegalArgumentException("cannot encode value");
+                }
+                return Codec.string().encode(value);
+            }
+
+            @Override
+            public String decode(byte[] data) {
+                return Codec.string().decode(data);
+            }
+        };
+        PersistentExpirableMap<String, String> map = new PersistentExpirableMap<>(file, Codec.string(), failing);
+        map.put("a", "kept", 60000);
+        assertThrows(IllegalArgumentException.class, () -> map.put("a", "unencodable", 60000));
+        assertThrows(IllegalArgumentException.class, () -> map.put("b", "unencodable"));
+        assertEquals("kept", map.get("a"));
+        assertFalse(map.containsKey("b"));
+
+        map.close();
+        assertThrows(IllegalStateException.class, () -> map.put("a", "closed"));
+        assertThrows(IllegalStateException.class, () -> map.put("c", "closed", 60000));
+        assertThrows(IllegalStateException.class, () -> map.remove("a"));
+        assertThrows(IllegalStateException.class, map::clear);
+        assertEquals("kept", map.get("a"));
+        assertFalse(map.containsKey("c"));
+
+        try (PersistentExpirableMap<String, String> reloaded = new PersistentExpirableMap<>(file, Codec.string(), Codec.string())) {
+            assertEquals("kept", reloaded.get("a"));
+            assertEquals(1, reloaded.size());
+        }
+    }
+
+    private long logSize() {
+        long size = 0L;
+        for (File file : directory.listFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrimitiveExpirableMapTest {
+
+    @Test
+    public void randomOperationsTest() {
+        Long2ObjectExpirableMap<Long> map = new Long2ObjectExpirableMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i, 60000));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void expireTest() throws InterruptedException {
+        Uuid2ObjectExpirableMap<String> map = new Uuid2ObjectExpirableMap<>();
+        UUID kept = UUID.randomUUID();
+        UUID[] expired = new UUID[1000];
+        for (int i = 0; i < expired.length; i++) {
+            expired[i] = UUID.randomUUID();
+        }
+        map.put(kept, "kept");
+        for (UUID key : expired) {
+            map.put(key, "expired", 500);
+        }
+        assertEquals(0, map.tick());
+        Thread.sleep(600);
+
+        assertEquals(1000, map.tick());
+        assertEquals(1, map.size());
+        assertEquals("kept", map.get(kept));
+        assertEquals("kept", map.get(kept.getMostSignificantBits(), kept.getLeastSignificantBits()));
+    }
+
+    @Test
+    public void longExpirationTest() {
+        Long2ObjectExpirableMap<String> map = new Long2ObjectExpirableMap<>();
+        map.put(1L, "max", Long.MAX_VALUE);
+        map.put(2L, "large", Long.MAX_VALUE / 2);
+
+        assertEquals(0, map.tick());
+        assertEquals("max", map.get(1L));
+        assertEquals("large", map.get(2L));
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.ethanz0x0.nucleus.map;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    @Test
+    public void tokenBucketTest() throws InterruptedException {
+        RateLimiter<String> limiter = new TokenBucketRateLimiter<>(5, 20);
+        assertTrue(limiter.tryAcquire("a", 3));
+        assertTrue(limiter.tryAcquire("a", 2));
+        assertFalse(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("b", 5));
+        assertFalse(limiter.tryAcquire("c", 6));
+
+        Thread.sleep(120);
+        assertTrue(limiter.tryAcquire("a", 2));
+
+        Thread.sleep(300);
+        // Rejected keys are tracked too, all the buckets are full again
+        assertEquals(3, limiter.tick());
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    public void fixedWindowTest() throws InterruptedException {
+        RateLimiter<String> limiter = new FixedWindowRateLimiter<>(3, 100);
+        int acquired = 0;
+        for (int i = 0; i < 10; i++) {
+            if (limiter.tryAcquire("a")) {
+                acquired++;
+            }
+        }
+        // The loop may cross the boundary of a window
+        assertTrue(acquired == 3 || acquired == 6);
+
+        Thread.sleep(250);
+        assertEquals(1, limiter.tick());
+        assertTrue(limiter.tryAcquire("a", 3));
+    }
+
+    @Test
+    public void slidingWindowTest() throws InterruptedException {
+        RateLimiter<String> limiter = new SlidingWindowRateLimiter<>(10, 200);
+        assertTrue(limiter.tryAcquire("a", 10));
+        assertFalse(limiter.tryAcquire("a"));
+
+        // The previous window still weighs on the next one
+        Thread.sleep(210);
+        assertFalse(limiter.tryAcquire("a", 10));
+
+        Thread.sleep(450);
+        assertTrue(limiter.tryAcquire("a", 10));
+    }
+
+    @Test
+    public void slidingWindowBoundsTest() {
+        SlidingWindowRateLimiter<String> limiter = new SlidingWindowRateLimiter<>(
+                SlidingWindowRateLimiter.MAXIMUM_LIMIT, SlidingWindowRateLimiter.MAXIMUM_WINDOW);
+        // A full previous window and a current window one permit short of the limit
+        long state = (long) SlidingWindowRateLimiter.MAXIMUM_LIMIT << 16 | (SlidingWindowRateLimiter.MAXIMUM_LIMIT - 1);
+        assertEquals(RateLimiter.REJECTED, limiter.acquire(state, 1, 1L));
+        assertEquals(RateLimiter.REJECTED, limiter.acquire(state >>> 16 << 16, 1, 1L));
+        assertNotEquals(RateLimiter.REJECTED, limiter.acquire(0L, SlidingWindowRateLimiter.MAXIMUM_LIMIT, 1L));
+    }
+
+    @Test
+    public void concurrentTest() throws InterruptedException {
+        RateLimiter<String> limiter = new FixedWindowRateLimiter<>(10000, 60000);
+        AtomicInteger acquired = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 5000; j++) {
+                    if (limiter.tryAcquire("a")) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(10000, acquired.get());
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EntropyPoolTest {
+
+    @Test
+    public void tokenTest() {
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            String token = EntropyPool.newToken(32);
+            assertEquals(43, token.length());
+            assertEquals(32, Base64.getUrlDecoder().decode(token).length);
+            assertTrue(tokens.add(token));
+        }
+        assertEquals(ByteEncoding.base64UrlLength(1000), EntropyPool.newToken(1000).length());
+        assertThrows(IllegalArgumentException.class, () -> EntropyPool.newToken(8));
+    }
+
+    @Test
+    public void saltTest() {
+        byte[] first = EntropyPool.nextSalt(16);
+        byte[] second = EntropyPool.nextSalt(16);
+        assertEquals(16, first.length);
+        assertFalse(Arrays.equals(first, second));
+
+        // Crosses the refills of the buffer and the direct generation of large requests
+        byte[] large = new byte[2000];
+        EntropyPool.nextBytes(large, 100, 1800);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, large[i]);
+        }
+    }
+
+    @Test
+    public void urlEncodingTest() {
+        Random random = new Random(11);
+        for (int length = 0; length < 50; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            String encoded = ByteEncoding.toBase64Url(bytes);
+            assertEquals(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes), encoded);
+
+            byte[] decoded = new byte[length + 3];
+            assertEquals(length, ByteEncoding.decodeBase64Url(encoded, 0, encoded.length(), decoded, 0));
+            assertArrayEquals(bytes, Arrays.copyOf(decoded, length));
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HasherTest {
+
+    private static final String[] VALUES = {"", "token", "pässwörd ✓", "emoji 😀", "lone \uD800 surrogate \uDC00",
+            new String(new char[3000]).replace('\0', 'é')};
+
+    @Test
+    public void encodingTest() {
+        Random random = new Random(7);
+        for (int length = 0; length < 100; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+
+            String base64 = Base64.getEncoder().encodeToString(bytes);
+            assertEquals(base64, ByteEncoding.toBase64(bytes));
+            byte[] decoded = new byte[length + 3];
+            assertEquals(length, ByteEncoding.decodeBase64(base64, 0, base64.length(), decoded, 0));
+            assertArrayEquals(bytes, Arrays.copyOf(decoded, length));
+            String unpadded = base64.replace("=", "");
+            assertEquals(length, ByteEncoding.decodeBase64(unpadded, 0, unpadded.length(), decoded, 0));
+            assertArrayEquals(bytes, Arrays.copyOf(decoded, length));
+
+            String hex = ByteEncoding.toHex(bytes);
+            assertEquals(length, ByteEncoding.decodeHex(hex.toUpperCase(), decoded, 0));
+            assertArrayEquals(bytes, Arrays.copyOf(decoded, length));
+        }
+
+        byte[] out = new byte[8];
+        assertEquals(-1, ByteEncoding.decodeBase64("QQ=", 0, 3, out, 0));
+        assertEquals(-1, ByteEncoding.decodeBase64("Q", 0, 1, out, 0));
+        assertEquals(-1, ByteEncoding.decodeBase64("QU\nJD", 0, 5, out, 0));
+        assertEquals(-1, ByteEncoding.decodeHex("zz", out, 0));
+    }
+
+    @Test
+    public void tokenTest() throws Exception {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        for (String value : VALUES) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            StringBuilder expected = new StringBuilder();
+            for (byte b : sha256.digest(bytes)) {
+                expected.append(String.format("%02x", b));
+            }
+
+            assertEquals(expected.toString(), TokenHasher.hash(value));
+            assertEquals(expected.toString(), TokenHasher.hash(new StringBuilder(value)));
+            assertEquals(expected.toString(), TokenHasher.hash(bytes));
+            assertEquals(expected.toString(), TokenHasher.hash(ByteBuffer.wrap(bytes)));
+            assertTrue(TokenHasher.matches(value, expected));
+            assertTrue(TokenHasher.matches(bytes, expected));
+            assertFalse(TokenHasher.matches(value + "x", expected));
+            assertFalse(TokenHasher.matches(value, expected.toString().toUpperCase().replace('a', 'b')));
+
+            char[] out = new char[70];
+            assertEquals(64, TokenHasher.hash(value, out, 3));
+            assertEquals(expected.toString(), new String(out, 3, 64));
+        }
+    }
+
+    @Test
+    public void sha256Test() throws Exception {
+        for (String value : VALUES) {
+            String hash = Sha256Hasher.hash(value);
+            assertTrue(Sha256Hasher.matches(value, hash));
+            assertTrue(Sha256Hasher.matches(value.getBytes(StandardCharsets.UTF_8), hash));
+            assertFalse(Sha256Hasher.matches(value + "x", hash));
+            assertTrue(Sha256Hasher.matches(value, Sha256Hasher.hash(value.getBytes(StandardCharsets.UTF_8))));
+
+            // A hash built by the previous implementation
+            byte[] salt = new byte[12];
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(salt);
+            byte[] digest = sha256.digest(value.getBytes(StandardCharsets.UTF_8));
+            String legacy = Base64.getEncoder().encodeToString(salt) + ":" + Base64.getEncoder().encodeToString(digest);
+            assertTrue(Sha256Hasher.matches(value, legacy));
+        }
+        assertFalse(Sha256Hasher.matches("value", "garbage"));
+        assertFalse(Sha256Hasher.matches("value", "AAAA:AAAA"));
+    }
+
+    @Test
+    public void hmacTest() throws Exception {
+        for (String value : VALUES) {
+            for (String secret : new String[]{"secret", "other", "sécret"}) {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+                String expected = Base64.getEncoder().encodeToString(mac.doFinal(value.getBytes(StandardCharsets.UTF_8)));
+
+                assertEquals(expected, HmacHasher.hash(value, secret));
+                assertEquals(expected, HmacHasher.hash(new StringBuilder(value), new StringBuilder(secret)));
+                assertEquals(expected, HmacHasher.hash(value.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8)));
+                assertTrue(HmacHasher.matches(value, secret, expected));
+                assertFalse(HmacHasher.matches(value, secret + "x", expected));
+            }
+        }
+        assertThrows(IllegalStateException.class, () -> HmacHasher.hash("value", ""));
+    }
+
+    @Test
+    public void stringSignaturesTest() throws Exception {
+        // Callers compiled against the String signatures keep linking
+        assertEquals(String.class, TokenHasher.class.getMethod("hash", String.class).getReturnType());
+        assertEquals(boolean.class, TokenHasher.class.getMethod("matches", String.class, String.class).getReturnType());
+        assertEquals(String.class, Sha256Hasher.class.getMethod("hash", String.class).getReturnType());
+        assertEquals(boolean.class, Sha256Hasher.class.getMethod("matches", String.class, String.class).getReturnType());
+        assertEquals(String.class, HmacHasher.class.getMethod("hash", String.class, String.class).getReturnType());
+        assertEquals(boolean.class,
+                HmacHasher.class.getMethod("matches", String.class, String.class, String.class).getReturnType());
+    }
+
+    @Test
+    public void batchTest() throws Exception {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tokens.add("token-" + i);
+        }
+        List<String> tokenHashes = TokenHasher.hashAll(tokens).get(10, TimeUnit.SECONDS);
+        List<String> valueHashes = Sha256Hasher.hashAll(tokens).get(10, TimeUnit.SECONDS);
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(TokenHasher.hash(tokens.get(i)), tokenHashes.get(i));
+            assertTrue(Sha256Hasher.matches(tokens.get(i), valueHashes.get(i)));
+        }
+
+        // Every third token is wrong
+        List<String> candidates = new ArrayList<>(tokens);
+        for (int i = 0; i < candidates.size(); i += 3) {
+            candidates.set(i, "wrong");
+        }
+        BitSet expected = new BitSet();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (i % 3 != 0) {
+                expected.set(i);
+            }
+        }
+
+        AtomicInteger progress = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, TokenHasher.matchesAll(candidates, tokenHashes, pool,
+                    count -> progress.accumulateAndGet(count, Math::max)).get(10, TimeUnit.SECONDS));
+            // Ranges may report out of order, but the batch completes after all of them
+            assertEquals(candidates.size(), progress.get());
+            assertEquals(expected, Sha256Hasher.matchesAll(candidates, valueHashes, pool, null).get(10, TimeUnit.SECONDS));
+
+            // A batch blocked in its first ranges, then cancelled, stops the remaining ones
+            CountDownLatch latch = new CountDownLatch(1);
+            AtomicInteger verified = new AtomicInteger();
+            CompletableFuture<BitSet> future = TokenHasher.matchesAll(candidates, tokenHashes, pool, count -> {
+                verified.set(count);
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(future.cancel(false));
+            latch.countDown();
+            assertThrows(CancellationException.class, future::join);
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue(verified.get() < candidates.size());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(new BitSet(), TokenHasher.matchesAll(new ArrayList<>(), new ArrayList<>()).join());
+        assertThrows(IllegalArgumentException.class, () -> TokenHasher.matchesAll(tokens, new ArrayList<>()));
+    }
+}
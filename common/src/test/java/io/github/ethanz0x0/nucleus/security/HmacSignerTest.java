@@ -0,0 +1,48 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HmacSignerTest {
+
+    @Test
+    public void signTest() throws Exception {
+        byte[] message = "handshake".getBytes(StandardCharsets.UTF_8);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec("secret".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] expected = mac.doFinal(message);
+
+        HmacSigner signer = new HmacSigner("secret");
+        assertArrayEquals(expected, signer.sign(message));
+
+        byte[] packet = new byte[40];
+        assertEquals(32, signer.sign(ByteBuffer.wrap(message), packet, 8));
+        assertArrayEquals(expected, Arrays.copyOfRange(packet, 8, 40));
+        assertTrue(signer.verify(message, packet, 8));
+        assertFalse(signer.verify(message, packet, 9));
+
+        packet[20] ^= 1;
+        assertFalse(signer.verify(message, packet, 8));
+        assertFalse(new HmacSigner("other").verify(message, expected));
+    }
+
+    @Test
+    public void updateTest() {
+        HmacSigner signer = new HmacSigner("secret");
+        byte[] message = "a large payload".getBytes(StandardCharsets.UTF_8);
+
+        HmacSigner.Update update = signer.newUpdate();
+        update.update(message, 0, 2).update(ByteBuffer.wrap(message, 2, message.length - 2));
+        assertArrayEquals(signer.sign(message), update.sign());
+
+        update.update(message);
+        assertTrue(update.verify(signer.sign(message), 0));
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NonceCacheTest {
+
+    @Test
+    public void replayTest() {
+        NonceCache cache = new NonceCache(1, TimeUnit.MINUTES, 10000);
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(cache.checkAndRecord("nonce-" + i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertFalse(cache.checkAndRecord("nonce-" + i));
+        }
+        assertEquals(10000, cache.getReplayCount());
+        assertFalse(cache.checkAndRecord("nonce-0".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void timestampTest() {
+        NonceCache cache = new NonceCache(1, TimeUnit.MINUTES, 100);
+        byte[] nonce = EntropyPool.nextSalt(16);
+        long now = System.currentTimeMillis();
+        assertFalse(cache.checkAndRecord(nonce, now - TimeUnit.MINUTES.toMillis(2)));
+        assertFalse(cache.checkAndRecord(nonce, now + TimeUnit.MINUTES.toMillis(2)));
+        assertTrue(cache.checkAndRecord(nonce, now));
+        assertFalse(cache.checkAndRecord(nonce, now));
+    }
+
+    @Test
+    public void futureTimestampTest() throws InterruptedException {
+        NonceCache cache = new NonceCache(100, TimeUnit.MILLISECONDS, 100, 80);
+        byte[] nonce = EntropyPool.nextSalt(16);
+        long timestamp = System.currentTimeMillis() + 80;
+        assertFalse(cache.checkAndRecord(nonce, timestamp + 100));
+        assertTrue(cache.checkAndRecord(nonce, timestamp));
+
+        // Past the window the timestamp is still fresh, so the nonce must still be known
+        Thread.sleep(140);
+        assertTrue(System.currentTimeMillis() - timestamp <= 100);
+        assertFalse(cache.checkAndRecord(nonce, timestamp));
+        assertEquals(1, cache.getReplayCount());
+    }
+
+    @Test
+    public void expirationTest() throws InterruptedException {
+        NonceCache cache = new NonceCache(150, TimeUnit.MILLISECONDS, 100);
+        assertTrue(cache.checkAndRecord("nonce"));
+        Thread.sleep(50);
+        assertFalse(cache.checkAndRecord("nonce"));
+        Thread.sleep(400);
+        assertTrue(cache.checkAndRecord("nonce"));
+    }
+
+    @Test
+    public void overflowTest() {
+        NonceCache cache = new NonceCache(1, TimeUnit.MINUTES, 30);
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.checkAndRecord("nonce-" + i)) {
+                accepted++;
+            }
+        }
+        // A burst lands in the current bucket, which holds the nonces of a whole window
+        assertEquals(30, accepted);
+        assertEquals(70, cache.getOverflowCount());
+    }
+
+    @Test
+    public void capacityTest() {
+        NonceCache cache = new NonceCache(1, TimeUnit.MINUTES, 1);
+        assertTrue(cache.checkAndRecord("first"));
+        assertFalse(cache.checkAndRecord("second"));
+
+        // The memory of a cache is bounded
+        new NonceCache(1, TimeUnit.MINUTES, 1 << 20);
+        assertThrows(IllegalArgumentException.class, () -> new NonceCache(1, TimeUnit.MINUTES, (1 << 20) + 1));
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordHasherTest {
+
+    @Test
+    public void formatTest() {
+        String hash = PasswordHasher.hash("secret");
+        assertTrue(hash.startsWith("$pbkdf2-sha256$v=1$i=" + PasswordHasher.getIterations() + ",l=256$"));
+        assertTrue(PasswordHasher.matches("secret", hash));
+        assertFalse(PasswordHasher.matches("Secret", hash));
+        assertFalse(PasswordHasher.needsRehash(hash));
+
+        assertFalse(PasswordHasher.matches("secret", "$pbkdf2-sha256$v=1$i=1000$abc"));
+        assertFalse(PasswordHasher.matches("secret", "garbage"));
+        assertTrue(PasswordHasher.needsRehash("garbage"));
+    }
+
+    @Test
+    public void legacyTest() throws Exception {
+        byte[] salt = new byte[16];
+        byte[] digest = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                .generateSecret(new PBEKeySpec("secret".toCharArray(), salt, 120000, 256))
+                .getEncoded();
+        String legacy = Base64.getEncoder().encodeToString(salt) + ":" + Base64.getEncoder().encodeToString(digest);
+
+        assertTrue(PasswordHasher.matches("secret", legacy));
+        assertFalse(PasswordHasher.matches("wrong", legacy));
+        assertTrue(PasswordHasher.needsRehash(legacy));
+        assertFalse(PasswordHasher.matches("secret", Base64.getEncoder().encodeToString(salt) + ":"));
+    }
+
+    @Test
+    public void rehashTest() {
+        int previous = PasswordHasher.getIterations();
+        try {
+            PasswordHasher.setIterations(10000);
+            String hash = PasswordHasher.hash("secret");
+            PasswordHasher.setIterations(20000);
+            assertTrue(PasswordHasher.matches("secret", hash));
+            assertTrue(PasswordHasher.needsRehash(hash));
+        } finally {
+            PasswordHasher.setIterations(previous);
+        }
+
+        int calibrated = PasswordHasher.calibrate(50, TimeUnit.MILLISECONDS);
+        assertTrue(calibrated >= 10000);
+        assertEquals(0, calibrated % 1000);
+    }
+}
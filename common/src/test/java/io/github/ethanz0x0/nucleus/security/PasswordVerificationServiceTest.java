@@ -0,0 +1,54 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordVerificationServiceTest {
+
+    @Test
+    public void verifyTest() throws Exception {
+        PasswordVerificationService service = new PasswordVerificationService(2, 16, 4);
+        String hash = service.hashAsync("secret").get(10, TimeUnit.SECONDS);
+        assertTrue(service.matchesAsync("player", "secret", hash).get(10, TimeUnit.SECONDS));
+        assertFalse(service.matchesAsync("player", "wrong", hash).get(10, TimeUnit.SECONDS));
+        assertEquals(3, service.getCompletedCount());
+        assertTrue(service.getAverageQueueLatency(TimeUnit.NANOSECONDS) >= 0);
+        service.shutdown();
+
+        CompletableFuture<Boolean> future = service.matchesAsync("secret", hash);
+        assertThrows(ExecutionException.class, future::get);
+    }
+
+    @Test
+    public void rejectionTest() throws Exception {
+        PasswordVerificationService service = new PasswordVerificationService(1, 4, 2);
+        String hash = PasswordHasher.hash("secret");
+
+        // The worker takes at most one of these, the caller share allows two more
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[4];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = service.matchesAsync("flooder", "secret", hash);
+        }
+        CompletableFuture<Boolean> other = service.matchesAsync("other", "secret", hash);
+
+        int rejected = 0;
+        for (CompletableFuture<?> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertInstanceOf(RejectedExecutionException.class, e.getCause());
+                rejected++;
+            }
+        }
+        assertTrue(rejected >= 1);
+        assertTrue(other.get(10, TimeUnit.SECONDS));
+        assertEquals(rejected, service.getRejectedCount());
+        service.shutdown();
+    }
+}
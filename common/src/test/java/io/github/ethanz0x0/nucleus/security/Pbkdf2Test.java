@@ -0,0 +1,46 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Pbkdf2Test {
+
+    @Test
+    public void jceTest() throws Exception {
+        Random random = new Random(42);
+        String[] passwords = {"a", "password", "pässwörd ✓", "long password ".concat(new String(new char[80]).replace('\0', 'x'))};
+        int[] saltLengths = {1, 16, 51, 60, 100};
+        int[] iterations = {1, 2, 1000};
+        int[] lengths = {1, 20, 32, 33, 64, 100};
+
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        for (String password : passwords) {
+            for (int saltLength : saltLengths) {
+                byte[] salt = new byte[saltLength];
+                random.nextBytes(salt);
+                for (int iteration : iterations) {
+                    for (int length : lengths) {
+                        byte[] expected = factory
+                                .generateSecret(new PBEKeySpec(password.toCharArray(), salt, iteration, length * 8))
+                                .getEncoded();
+                        byte[] actual = Pbkdf2.deriveSha256(password.getBytes(StandardCharsets.UTF_8), salt, iteration, length);
+                        assertArrayEquals(expected, actual, password + " " + saltLength + " " + iteration + " " + length);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void passwordHasherTest() {
+        String hash = PasswordHasher.hash("secret");
+        assertTrue(PasswordHasher.matches("secret", hash));
+        assertFalse(PasswordHasher.matches("Secret", hash));
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionTokenCodecTest {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] NEXT_SECRET = "fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void verifyTest() {
+        SessionTokenCodec codec = new SessionTokenCodec("k1", SECRET);
+        String token = codec.issue("player-42", 1, TimeUnit.HOURS);
+
+        SessionToken session = codec.verify(token);
+        assertNotNull(session);
+        assertEquals("k1", session.getKeyId());
+        assertEquals("player-42", session.getPayloadString());
+        assertEquals(TimeUnit.HOURS.toMillis(1), session.getExpiresAt() - session.getIssuedAt());
+        assertNotNull(codec.verify(new StringBuilder(token)));
+
+        // Any altered character breaks the token
+        for (int i = 0; i < token.length(); i++) {
+            char[] chars = token.toCharArray();
+            for (char c : new char[]{'A', 'B', '0', '1'}) {
+                if (token.charAt(i) != c) {
+                    chars[i] = c;
+                    assertNull(codec.verify(new String(chars)), "altered at " + i);
+                }
+            }
+        }
+        assertNull(codec.verify(""));
+        assertNull(codec.verify("k1...."));
+        assertNull(new SessionTokenCodec("k1", NEXT_SECRET).verify(token));
+    }
+
+    @Test
+    public void expiryTest() throws InterruptedException {
+        SessionTokenCodec codec = new SessionTokenCodec("k1", SECRET);
+        String token = codec.issue(new byte[]{1, 2, 3}, 50, TimeUnit.MILLISECONDS);
+        assertArrayEquals(new byte[]{1, 2, 3}, codec.verify(token).getPayload());
+
+        Thread.sleep(100);
+        assertNull(codec.verify(token));
+    }
+
+    @Test
+    public void rotationTest() {
+        SessionTokenCodec codec = new SessionTokenCodec("k1", SECRET);
+        String old = codec.issue("a", 1, TimeUnit.HOURS);
+
+        codec.addKey("k2", NEXT_SECRET);
+        codec.setSigningKey("k2");
+        String current = codec.issue("b", 1, TimeUnit.HOURS);
+        assertEquals("k2", codec.verify(current).getKeyId());
+        assertEquals("k1", codec.verify(old).getKeyId());
+
+        assertThrows(IllegalArgumentException.class, () -> codec.removeKey("k2"));
+        assertTrue(codec.removeKey("k1"));
+        assertNull(codec.verify(old));
+        assertNotNull(codec.verify(current));
+        assertThrows(IllegalArgumentException.class, () -> codec.addKey("bad.id", SECRET));
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.ethanz0x0.nucleus.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamHasherTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void hashTest() throws Exception {
+        byte[] content = new byte[300_001];
+        new Random(3).nextBytes(content);
+        Path file = directory.resolve("region.mca");
+        Files.write(file, content);
+
+        String expected = TokenHasher.hash(content);
+        assertEquals(expected, StreamHasher.hash(file));
+        assertEquals(expected, StreamHasher.hash(new ByteArrayInputStream(content)));
+        try (InputStream in = Files.newInputStream(file)) {
+            assertEquals(expected, StreamHasher.hash(Channels.newChannel(in)));
+        }
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertEquals(TokenHasher.hash(Arrays.copyOfRange(content, 10, 1010)), StreamHasher.hash(channel, 10, 1000));
+        }
+    }
+
+    @Test
+    public void reentrantHashTest() throws Exception {
+        byte[] content = new byte[200_000];
+        new Random(5).nextBytes(content);
+        String expected = TokenHasher.hash(content);
+
+        // Streams hashing while they are read, such as a stream verifying its own blocks
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(content)) {
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                TokenHasher.hash("token");
+                StreamHasher.hash(new ByteArrayInputStream(new byte[100]));
+                return super.read(b, off, len);
+            }
+        };
+        assertEquals(expected, StreamHasher.hash(in));
+        assertEquals(expected, StreamHasher.hash(Channels.newChannel(new FilterInputStream(new ByteArrayInputStream(content)) {
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                StreamHasher.hash(Channels.newChannel(new ByteArrayInputStream(new byte[100])));
+                return super.read(b, off, len);
+            }
+        })));
+    }
+
+    @Test
+    public void treeHashTest() throws Exception {
+        byte[] content = new byte[250_000];
+        new Random(5).nextBytes(content);
+        Path file = directory.resolve("pack.zip");
+        Files.write(file, content);
+
+        // Three chunks: the first two are combined, then combined with the third
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        byte[][] leaves = new byte[3][];
+        for (int i = 0; i < 3; i++) {
+            sha256.update((byte) 0);
+            sha256.update(content, i * 100_000, Math.min(100_000, content.length - i * 100_000));
+            leaves[i] = sha256.digest();
+        }
+        sha256.update((byte) 1);
+        sha256.update(leaves[0]);
+        sha256.update(leaves[1]);
+        byte[] node = sha256.digest();
+        sha256.update((byte) 1);
+        sha256.update(node);
+        sha256.update(leaves[2]);
+        String expected = ByteEncoding.toHex(sha256.digest());
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertEquals(expected, StreamHasher.treeHash(channel, 0, channel.size(), 100_000, pool));
+            assertEquals(StreamHasher.treeHash(channel, 0, channel.size(), 100_000, pool),
+                    StreamHasher.treeHash(channel, 0, channel.size(), 100_000, ForkJoinPool.commonPool()));
+        } finally {
+            pool.shutdown();
+        }
+        assertNotEquals(StreamHasher.hash(file), StreamHasher.treeHash(file));
+    }
+}